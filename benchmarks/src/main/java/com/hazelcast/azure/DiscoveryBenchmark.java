@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AzureDiscoveryStrategy} against a {@link SyntheticFleet}: the throughput and the
+ * latency percentiles of a discovery, and with the GC profiler the bytes allocated per discovery.
+ * <p>
+ * The fleet answers from memory, so the figures are the cost of the plugin and the SDK on top of ARM.
+ * Set {@code latencyMillis} to add a simulated round trip to every ARM call, for example
+ * {@code java -jar target/benchmarks.jar -p members=1000 -p latencyMillis=20 -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dhazelcast.logging.type=none"})
+public class DiscoveryBenchmark {
+
+    /**
+     * The number of VMs of the fleet, standalone and scale set instances together
+     */
+    @Param({"10", "1000", "10000"})
+    public int members;
+
+    /**
+     * The number of scale sets the instances are spread over
+     */
+    @Param({"1", "200"})
+    public int scaleSets;
+
+    /**
+     * The share of the members that are standalone VMs
+     */
+    @Param({"0.1"})
+    public double standaloneShare;
+
+    /**
+     * The number of network interfaces per VM
+     */
+    @Param({"1"})
+    public int networkInterfaces;
+
+    /**
+     * The share of the standalone VMs with a public IP address
+     */
+    @Param({"0.5"})
+    public double publicIpShare;
+
+    /**
+     * The share of the VMs that are deallocated
+     */
+    @Param({"0.1"})
+    public double stoppedShare;
+
+    /**
+     * The simulated round trip of every ARM call
+     */
+    @Param({"0"})
+    public int latencyMillis;
+
+    /**
+     * How the addresses are looked up: one call per VM, listings per resource group and scale set,
+     * or listings of the tagged resources only
+     */
+    @Param({"per-vm", "batched", "filtered"})
+    public String lookups;
+
+    /**
+     * The number of listings running at once
+     */
+    @Param({"4"})
+    public int concurrency;
+
+    /**
+     * How the fleet is reached: answered in memory by the HTTP client, or served over loopback HTTP
+     * by an {@link ArmStandIn} the strategy is pointed at with its properties alone
+     */
+    @Param({"in-memory", "stand-in"})
+    public String arm;
+
+    private ArmStandIn standIn;
+    private ComputeManager computeManager;
+    private AzureDiscoveryStrategy strategy;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int standalone = (int) Math.round(members * standaloneShare);
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(standalone)
+                .scaleSets(scaleSets, members - standalone)
+                .networkInterfaces(networkInterfaces)
+                .publicIpShare(publicIpShare)
+                .stoppedShare(stoppedShare)
+                .latencyMillis(latencyMillis)
+                // the first VM is the local member, so its fault domain is found
+                .localAddress(new AzureDiscoveryStrategy(new HashMap<String, Comparable>()).getLocalHostAddress())
+                .build();
+        if ("stand-in".equals(arm)) {
+            standIn = ArmStandIn.start(fleet);
+        } else {
+            computeManager = fleet.computeManager();
+        }
+        strategy = start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        strategy.destroy();
+        if (standIn != null) {
+            standIn.stop();
+        }
+    }
+
+    /**
+     * A full discovery, every call scans the fleet
+     *
+     * @return the discovered nodes
+     */
+    @Benchmark
+    public Iterable<DiscoveryNode> discoverNodes() {
+        return strategy.discoverNodes();
+    }
+
+    /**
+     * The local metadata of a member that just started, which scans the fleet for the local VM
+     *
+     * @param member the started member
+     * @return the metadata
+     */
+    @Benchmark
+    public Map<String, Object> discoverLocalMetadata(StartedMember member) {
+        return member.strategy.discoverLocalMetadata();
+    }
+
+    /**
+     * The local address lookup done for every discovered node
+     *
+     * @return the local address
+     */
+    @Benchmark
+    public String getLocalHostAddress() {
+        return strategy.getLocalHostAddress();
+    }
+
+    AzureDiscoveryStrategy start() {
+        Map<String, Comparable> properties;
+        if (standIn != null) {
+            properties = standIn.properties();
+            // the stand-in is not rate limited
+            properties.put(AzureProperties.ARM_REQUESTS_PER_SECOND.key(), 0);
+        } else {
+            properties = new HashMap<String, Comparable>();
+            properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+            properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+            properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        }
+        properties.put(AzureProperties.DISCOVERY_CONCURRENCY.key(), concurrency);
+        if (!"per-vm".equals(lookups)) {
+            properties.put(AzureProperties.BATCH_NETWORK_LOOKUP.key(), true);
+            properties.put(AzureProperties.BULK_INSTANCE_VIEW.key(), true);
+        }
+        if ("filtered".equals(lookups)) {
+            properties.put(AzureProperties.SERVER_SIDE_TAG_FILTER.key(), true);
+        }
+        AzureDiscoveryStrategy started = standIn != null ? new AzureDiscoveryStrategy(properties)
+                : new AzureDiscoveryStrategy(properties, computeManager);
+        started.start();
+        return started;
+    }
+
+    /**
+     * A strategy started for every invocation, so the metadata is not known yet
+     */
+    @State(Scope.Thread)
+    public static class StartedMember {
+
+        private AzureDiscoveryStrategy strategy;
+
+        @Setup(Level.Invocation)
+        public void start(DiscoveryBenchmark benchmark) {
+            strategy = benchmark.start();
+        }
+
+        @TearDown(Level.Invocation)
+        public void destroy() {
+            strategy.destroy();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DiscoveryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the latency of every ARM call per operation, the method and resource path with the resource
+ * names left out, and per discovery phase. Each attempt of a call is recorded on its own, after any wait
+ * for request quota, so retries of throttled calls show up as separate calls. Server errors the SDK
+ * retries by itself are part of the call they are retried in. Throttled responses are counted by
+ * {@link #throttledCallCounter()}, which sees every attempt including the ones the SDK retries itself.
+ */
+final class ArmCallMetrics implements Interceptor {
+
+    static final String VIRTUAL_MACHINES = "virtual-machines";
+    static final String SCALE_SETS = "scale-sets";
+    static final String SCALE_SET_VMS = "scale-set-vms";
+    static final String NETWORK_INTERFACES = "network-interfaces";
+    static final String PUBLIC_IP_ADDRESSES = "public-ip-addresses";
+    static final String INSTANCE_VIEWS = "instance-views";
+    static final String RESOURCES = "resources";
+    static final String OTHER = "other";
+
+    private static final String NAME = "{name}";
+    private static final String EXPAND = "$expand";
+    private static final int SERVER_ERROR = 500;
+    // the first match wins, so scale set instances come before scale sets and VMs
+    private static final String[][] PHASES_BY_PATH = {
+            {"/networkinterfaces", NETWORK_INTERFACES},
+            {"/publicipaddresses", PUBLIC_IP_ADDRESSES},
+            {"/virtualmachinescalesets/" + NAME + "/virtualmachines", SCALE_SET_VMS},
+            {"/virtualmachinescalesets", SCALE_SETS},
+            {"/virtualmachines", VIRTUAL_MACHINES},
+    };
+
+    private final ConcurrentMap<String, LatencyRecorder> operations = new ConcurrentHashMap<String, LatencyRecorder>();
+    private final ConcurrentMap<String, LatencyRecorder> phases = new ConcurrentHashMap<String, LatencyRecorder>();
+    private final ConcurrentMap<String, String> phaseOfOperation = new ConcurrentHashMap<String, String>();
+    private final AtomicLong throttledCalls = new AtomicLong();
+    private final Interceptor throttledCallCounter = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            if (response.code() == ArmRateLimiter.TOO_MANY_REQUESTS) {
+                throttledCalls.incrementAndGet();
+            }
+            return response;
+        }
+    };
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String operation = operation(request.method(), request.url());
+        long start = System.nanoTime();
+        try {
+            Response response = chain.proceed(request);
+            record(operation, System.nanoTime() - start, response.code() >= SERVER_ERROR);
+            return response;
+        } catch (IOException e) {
+            record(operation, System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the interceptor counting the responses rejected with HTTP 429. It is added as a network
+     * interceptor, below the throttling retries of the SDK that this interceptor cannot see.
+     *
+     * @return the counting interceptor
+     */
+    Interceptor throttledCallCounter() {
+        return throttledCallCounter;
+    }
+
+    /**
+     * @return the number of calls rejected with HTTP 429
+     */
+    long throttledCalls() {
+        return throttledCalls.get();
+    }
+
+    /**
+     * @return the statistics per operation, sorted by operation
+     */
+    Map<String, LatencyStatistics> operations() {
+        return statistics(operations);
+    }
+
+    /**
+     * @return the statistics per discovery phase, sorted by phase
+     */
+    Map<String, LatencyStatistics> phases() {
+        return statistics(phases);
+    }
+
+    private void record(String operation, long nanos, boolean failed) {
+        recorder(operations, operation).record(nanos, failed);
+        String phase = phaseOfOperation.get(operation);
+        if (phase == null) {
+            phase = phase(operation);
+            phaseOfOperation.put(operation, phase);
+        }
+        recorder(phases, phase).record(nanos, failed);
+    }
+
+    private static LatencyRecorder recorder(ConcurrentMap<String, LatencyRecorder> recorders, String key) {
+        LatencyRecorder recorder = recorders.get(key);
+        if (recorder == null) {
+            recorder = new LatencyRecorder();
+            LatencyRecorder existing = recorders.putIfAbsent(key, recorder);
+            recorder = existing != null ? existing : recorder;
+        }
+        return recorder;
+    }
+
+    private static Map<String, LatencyStatistics> statistics(Map<String, LatencyRecorder> recorders) {
+        Map<String, LatencyStatistics> statistics = new TreeMap<String, LatencyStatistics>();
+        for (Map.Entry<String, LatencyRecorder> entry : recorders.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().statistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the operation of a call: its method and the resource types of its path, for example
+     * {@code GET microsoft.compute/virtualmachinescalesets/{name}/virtualmachines}
+     *
+     * @param method the HTTP method
+     * @param url the ARM url
+     * @return the operation, its path in lower case
+     */
+    static String operation(String method, HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        int first = firstTypeSegment(segments);
+        StringBuilder operation = new StringBuilder();
+        for (int i = first; i < segments.size(); i++) {
+            boolean name = i > first && (i - first) % 2 == 0;
+            operation.append(i > first ? "/" : "").append(name ? NAME : segments.get(i));
+        }
+        String expand = url.queryParameter(EXPAND);
+        if (expand != null) {
+            operation.append('?').append(EXPAND).append('=').append(expand);
+        }
+        return method + ' ' + operation.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Skips the subscription, resource group and provider prefix, so the path starts with the
+     * provider namespace followed by pairs of resource type and name
+     */
+    private static int firstTypeSegment(List<String> segments) {
+        int first = 0;
+        int i = 0;
+        while (i < segments.size() - 1) {
+            String segment = segments.get(i);
+            if ("providers".equalsIgnoreCase(segment)) {
+                return i + 1;
+            }
+            if ("subscriptions".equalsIgnoreCase(segment) || "resourceGroups".equalsIgnoreCase(segment)) {
+                first = i + 2;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return Math.min(first, segments.size());
+    }
+
+    /**
+     * Returns the discovery phase of an operation
+     *
+     * @param operation the operation as returned by {@link #operation(String, HttpUrl)}
+     * @return the phase
+     */
+    static String phase(String operation) {
+        String path = operation.substring(operation.indexOf(' ') + 1);
+        if (path.endsWith("/instanceview") || path.endsWith(NAME + "?" + EXPAND + "=instanceview")) {
+            return INSTANCE_VIEWS;
+        }
+        for (String[] phase : PHASES_BY_PATH) {
+            if (path.contains(phase[0])) {
+                return phase[1];
+            }
+        }
+        if (path.startsWith(RESOURCES) || path.endsWith("/" + RESOURCES)) {
+            return RESOURCES;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.AzureResponseBuilder;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import com.microsoft.azure.management.resources.fluentcore.utils.ProviderRegistrationInterceptor;
+import com.microsoft.azure.management.resources.fluentcore.utils.ResourceManagerThrottlingInterceptor;
+import com.microsoft.azure.serializer.AzureJacksonAdapter;
+import com.microsoft.rest.RestClient;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HTTP transport of the ARM clients: one connection pool with bounded idle connections and
+ * keep-alive, connect, read and whole-call deadlines, and counters of the connections opened and
+ * reused. Responses are requested gzip encoded and decoded transparently unless disabled. Calls are
+ * paced by the per subscription buckets of {@link ArmRateLimiter}, which are shared JVM wide, and timed by
+ * {@link ArmCallMetrics}.
+ */
+final class ArmHttpTransport {
+
+    static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 60000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 120000;
+    static final int DEFAULT_REQUESTS_PER_SECOND = 0;
+    static final int DEFAULT_REQUEST_BURST = 20;
+    static final int DEFAULT_THROTTLING_RETRIES = 3;
+
+    private final int maxIdleConnections;
+    private final int keepAliveSeconds;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int callTimeoutMillis;
+    private final boolean gzip;
+    private final ArmRateLimiter rateLimiter;
+    private final ConnectionPool connectionPool;
+    private final ArmCallMetrics callMetrics = new ArmCallMetrics();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    /**
+     * Creates a new transport
+     *
+     * @param maxIdleConnections the maximum number of idle connections kept in the pool
+     * @param keepAliveSeconds how long an idle connection is kept before it is evicted
+     * @param connectTimeoutMillis the connect timeout, 0 for none
+     * @param readTimeoutMillis the read timeout, 0 for none
+     * @param callTimeoutMillis the deadline of a whole call including retries and redirects, 0 for none
+     * @param gzip whether responses are requested gzip encoded
+     * @param rateLimiter the limiter pacing the calls, null to only wait for throttled calls the way the SDK does
+     */
+    ArmHttpTransport(int maxIdleConnections, int keepAliveSeconds, int connectTimeoutMillis, int readTimeoutMillis,
+                     int callTimeoutMillis, boolean gzip, ArmRateLimiter rateLimiter) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.gzip = gzip;
+        this.rateLimiter = rateLimiter;
+        this.connectionPool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates the transport configured by the discovery properties
+     *
+     * @param properties the properties Map provided by Hazelcast
+     * @return the transport
+     */
+    static ArmHttpTransport of(Map<String, Comparable> properties) {
+        return new ArmHttpTransport(
+                AzureProperties.getOrDefault(AzureProperties.HTTP_MAX_IDLE_CONNECTIONS, properties,
+                        DEFAULT_MAX_IDLE_CONNECTIONS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_KEEP_ALIVE_SECONDS, properties,
+                        DEFAULT_KEEP_ALIVE_SECONDS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_CONNECT_TIMEOUT_MILLIS, properties,
+                        DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_READ_TIMEOUT_MILLIS, properties,
+                        DEFAULT_READ_TIMEOUT_MILLIS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_CALL_TIMEOUT_MILLIS, properties, 0),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_GZIP, properties, true),
+                rateLimiter(properties));
+    }
+
+    private static ArmRateLimiter rateLimiter(Map<String, Comparable> properties) {
+        int requestsPerSecond = AzureProperties.getOrDefault(AzureProperties.ARM_REQUESTS_PER_SECOND, properties,
+                DEFAULT_REQUESTS_PER_SECOND);
+        if (requestsPerSecond <= 0) {
+            return null;
+        }
+        return new ArmRateLimiter(requestsPerSecond,
+                AzureProperties.getOrDefault(AzureProperties.ARM_REQUEST_BURST, properties, DEFAULT_REQUEST_BURST),
+                AzureProperties.getOrDefault(AzureProperties.ARM_THROTTLING_RETRIES, properties,
+                        DEFAULT_THROTTLING_RETRIES));
+    }
+
+    /**
+     * Returns the settings of the transport configured by the discovery properties without creating it
+     *
+     * @param properties the properties Map provided by Hazelcast
+     * @return the key of the transport {@link #of(Map)} creates
+     */
+    static String key(Map<String, Comparable> properties) {
+        ArmRateLimiter rateLimiter = rateLimiter(properties);
+        return key(AzureProperties.getOrDefault(AzureProperties.HTTP_MAX_IDLE_CONNECTIONS, properties,
+                        DEFAULT_MAX_IDLE_CONNECTIONS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_KEEP_ALIVE_SECONDS, properties,
+                        DEFAULT_KEEP_ALIVE_SECONDS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_CONNECT_TIMEOUT_MILLIS, properties,
+                        DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_READ_TIMEOUT_MILLIS, properties,
+                        DEFAULT_READ_TIMEOUT_MILLIS),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_CALL_TIMEOUT_MILLIS, properties, 0),
+                AzureProperties.getOrDefault(AzureProperties.HTTP_GZIP, properties, true),
+                rateLimiter == null ? null : rateLimiter.key());
+    }
+
+    /**
+     * @return the settings of this transport, clients are only shared between equal settings
+     */
+    String key() {
+        return key(maxIdleConnections, keepAliveSeconds, connectTimeoutMillis, readTimeoutMillis, callTimeoutMillis,
+                gzip, rateLimiter == null ? null : rateLimiter.key());
+    }
+
+    private static String key(int maxIdleConnections, int keepAliveSeconds, int connectTimeoutMillis,
+                              int readTimeoutMillis, int callTimeoutMillis, boolean gzip, String rateLimiterKey) {
+        return maxIdleConnections + "/" + keepAliveSeconds + "/" + connectTimeoutMillis + "/" + readTimeoutMillis
+                + "/" + callTimeoutMillis + "/" + gzip + "/" + (rateLimiterKey == null ? "unlimited" : rateLimiterKey);
+    }
+
+    /**
+     * Builds an ARM client the same way the SDK does, on top of this transport
+     *
+     * @param credentials the credentials the client authenticates with
+     * @return the client
+     */
+    RestClient restClient(AzureTokenCredentials credentials) {
+        // the builder resets the SDK default timeouts on the http client, so they are set on the builder
+        RestClient.Builder builder = new RestClient.Builder(httpClientBuilder(), new Retrofit.Builder())
+                .withConnectionTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .withReadTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .withSerializerAdapter(new AzureJacksonAdapter())
+                .withResponseBuilderFactory(new AzureResponseBuilder.Factory())
+                .withBaseUrl(credentials.environment(), AzureEnvironment.Endpoint.RESOURCE_MANAGER)
+                .withCredentials(credentials)
+                .withInterceptor(new ProviderRegistrationInterceptor(credentials));
+        if (rateLimiter == null) {
+            builder.withInterceptor(new ResourceManagerThrottlingInterceptor());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a builder of http clients sharing the pool and counters of this transport
+     */
+    OkHttpClient.Builder httpClientBuilder() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS)
+                .eventListener(new ConnectionCounter());
+        if (rateLimiter != null) {
+            builder.addInterceptor(rateLimiter);
+        }
+        // after the limiter, so waiting for quota is not counted as latency
+        builder.addInterceptor(callMetrics);
+        builder.addNetworkInterceptor(callMetrics.throttledCallCounter());
+        if (!gzip) {
+            builder.addInterceptor(new IdentityEncodingInterceptor());
+        }
+        return builder;
+    }
+
+    /**
+     * @return the number of times a call acquired a connection, new or pooled
+     */
+    long connectionsAcquired() {
+        return connectionsAcquired.get();
+    }
+
+    /**
+     * @return the number of connections opened
+     */
+    long connectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return the number of times a call reused a pooled connection
+     */
+    long connectionsReused() {
+        return Math.max(0, connectionsAcquired.get() - connectionsOpened.get());
+    }
+
+    /**
+     * @return the latencies of the calls made through this transport
+     */
+    ArmCallMetrics callMetrics() {
+        return callMetrics;
+    }
+
+    /**
+     * @return the number of connections currently in the pool
+     */
+    int pooledConnections() {
+        return connectionPool.connectionCount();
+    }
+
+    /**
+     * Evicts all idle connections
+     */
+    void close() {
+        connectionPool.evictAll();
+    }
+
+    private final class ConnectionCounter extends EventListener {
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connectionsOpened.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.incrementAndGet();
+        }
+    }
+
+    /**
+     * Asks for uncompressed responses, which also stops OkHttp from negotiating gzip
+     */
+    private static final class IdentityEncodingInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return chain.proceed(chain.request().newBuilder().header("Accept-Encoding", "identity").build());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client side token bucket for the ARM calls of one subscription, which is the scope ARM throttles
+ * reads by. Calls are paced by the bucket and slowed down further once the remaining reads reported by
+ * ARM run low. A throttled call waits for the announced Retry-After, or an exponential backoff if there
+ * is none, plus jitter so members throttled together do not retry together, and is then retried.
+ * <p>
+ * The buckets are kept per JVM, so all members and clients discovering the same subscription from one
+ * JVM draw from the same bucket, whatever transport or credentials they use.
+ */
+final class ArmRateLimiter implements Interceptor {
+
+    static final String REMAINING_READS = "x-ms-ratelimit-remaining-subscription-reads";
+    static final String RETRY_AFTER = "Retry-After";
+    static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Below this many remaining reads the rate is reduced in proportion to the remaining reads
+     */
+    static final int LOW_REMAINING_READS = 1000;
+
+    private static final ILogger LOGGER = Logger.getLogger(ArmRateLimiter.class);
+    private static final Pattern SUBSCRIPTION = Pattern.compile("/subscriptions/([^/?]+)", Pattern.CASE_INSENSITIVE);
+    private static final String GLOBAL = "global";
+    private static final double MIN_RATE_FRACTION = 0.05;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long MIN_JITTER_MILLIS = 250;
+    private static final int JITTER_DIVISOR = 4;
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private static final ConcurrentMap<String, Bucket> BUCKETS = new ConcurrentHashMap<String, Bucket>();
+
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxRetries;
+    private final Random random = new Random();
+
+    /**
+     * Creates a new limiter
+     *
+     * @param requestsPerSecond the sustained rate of calls per subscription
+     * @param burst the number of calls that may be made at once after a quiet period
+     * @param maxRetries how often a throttled call is retried before the throttled response is returned
+     */
+    ArmRateLimiter(double requestsPerSecond, int burst, int maxRetries) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the settings of this limiter
+     */
+    String key() {
+        return requestsPerSecond + "/" + burst + "/" + maxRetries;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Bucket bucket = bucket(subscription(chain.request().url().encodedPath()));
+        for (int attempt = 0;; attempt++) {
+            sleep(bucket.reserve(requestsPerSecond, burst));
+            Response response = chain.proceed(chain.request());
+            Integer remainingReads = parseInt(response.header(REMAINING_READS));
+            if (remainingReads != null) {
+                bucket.remainingReads(remainingReads);
+            }
+            if (response.code() != TOO_MANY_REQUESTS) {
+                return response;
+            }
+            if (attempt >= maxRetries) {
+                LOGGER.warning("ARM kept throttling " + chain.request().url().encodedPath() + " after " + attempt
+                        + " retries");
+                return response;
+            }
+            bucket.pause(delayMillis(parseInt(response.header(RETRY_AFTER)), attempt));
+            response.close();
+        }
+    }
+
+    /**
+     * Returns how long to wait before retrying a throttled call
+     *
+     * @param retryAfterSeconds the Retry-After announced by ARM, null if none
+     * @param attempt the number of retries so far
+     * @return the delay in milliseconds including jitter
+     */
+    long delayMillis(Integer retryAfterSeconds, int attempt) {
+        if (retryAfterSeconds != null) {
+            long retryAfterMillis = TimeUnit.SECONDS.toMillis(Math.max(0, retryAfterSeconds));
+            long jitterMillis = Math.max(MIN_JITTER_MILLIS, retryAfterMillis / JITTER_DIVISOR);
+            return retryAfterMillis + (long) (random.nextDouble() * jitterMillis);
+        }
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, MAX_BACKOFF_SHIFT));
+        return backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+    }
+
+    /**
+     * Returns the current refill rate of a subscription under the settings of this limiter
+     *
+     * @param subscription the subscription id
+     * @return the rate in tokens per second
+     */
+    double rate(String subscription) {
+        return bucket(subscription).rate(requestsPerSecond);
+    }
+
+    /**
+     * Returns the bucket of a subscription
+     *
+     * @param subscription the subscription id
+     * @return the bucket shared by all calls of the subscription in this JVM
+     */
+    static Bucket bucket(String subscription) {
+        Bucket bucket = BUCKETS.get(subscription);
+        if (bucket == null) {
+            bucket = new Bucket();
+            Bucket existing = BUCKETS.putIfAbsent(subscription, bucket);
+            bucket = existing != null ? existing : bucket;
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the subscription an ARM path belongs to, calls outside a subscription share one bucket
+     *
+     * @param path the request path
+     * @return the lower case subscription id
+     */
+    static String subscription(String path) {
+        Matcher matcher = SUBSCRIPTION.matcher(path);
+        return matcher.find() ? matcher.group(1).toLowerCase(Locale.ENGLISH) : GLOBAL;
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for ARM request quota");
+        }
+    }
+
+    /**
+     * The token bucket of one subscription, refilled at the rate of the limiter taking the token
+     */
+    static final class Bucket {
+
+        private double tokens;
+        private boolean used;
+        private long refilledAt = System.nanoTime();
+        private long pausedUntil = refilledAt;
+        private int remainingReads = -1;
+
+        /**
+         * Takes a token, possibly ahead of its refill
+         *
+         * @param requestsPerSecond the sustained rate of the calling limiter
+         * @param burst the burst of the calling limiter
+         * @return how long the caller has to wait before making the call, in nanoseconds
+         */
+        synchronized long reserve(double requestsPerSecond, int burst) {
+            long now = System.nanoTime();
+            double rate = rate(requestsPerSecond);
+            // a new bucket starts full
+            tokens = used ? Math.min(burst, tokens + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1)) : burst;
+            used = true;
+            refilledAt = now;
+            tokens -= 1;
+            long wait = tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+            return Math.max(wait, pausedUntil - now);
+        }
+
+        /**
+         * Records the remaining reads reported by ARM
+         *
+         * @param remaining the remaining reads
+         */
+        synchronized void remainingReads(int remaining) {
+            remainingReads = remaining;
+            tokens = Math.min(tokens, remaining);
+        }
+
+        /**
+         * Holds back all calls of the subscription
+         *
+         * @param millis how long to hold the calls back
+         */
+        synchronized void pause(long millis) {
+            pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        /**
+         * @param requestsPerSecond the sustained rate of the calling limiter
+         * @return the current refill rate in tokens per second
+         */
+        synchronized double rate(double requestsPerSecond) {
+            if (remainingReads < 0 || remainingReads >= LOW_REMAINING_READS) {
+                return requestsPerSecond;
+            }
+            return requestsPerSecond * Math.max(MIN_RATE_FRACTION, (double) remainingReads / LOW_REMAINING_READS);
+        }
+    }
+}
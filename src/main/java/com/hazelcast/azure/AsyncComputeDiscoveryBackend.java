@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.microsoft.azure.Page;
+import com.microsoft.azure.management.compute.VirtualMachineInstanceView;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInstanceViewInner;
+import com.microsoft.azure.management.network.implementation.NetworkInterfaceIPConfigurationInner;
+import com.microsoft.azure.management.network.implementation.NetworkInterfaceInner;
+import com.microsoft.azure.management.network.implementation.NetworkManager;
+import com.microsoft.azure.management.network.implementation.PublicIPAddressInner;
+import com.microsoft.azure.management.resources.fluentcore.arm.ResourceUtils;
+import rx.Observable;
+import rx.Scheduler;
+import rx.exceptions.Exceptions;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Discovers VMs and scale set VMs as a pipeline of the asynchronous ARM calls of the SDK. Each page of
+ * a listing is handed on as soon as it arrives and its running, tagged VMs are resolved to addresses
+ * while the next page is fetched. At most {@link AzureProperties#DISCOVERY_CONCURRENCY} lookups per
+ * listing are in flight, further VMs and pages are only requested as lookups complete.
+ * <p>
+ * The calls run on the Rx IO scheduler, so {@link #discoverNodesAsync(String, String)} does not hold
+ * the calling thread; {@link #discoverNodes(String, String)} waits for the same pipeline.
+ */
+final class AsyncComputeDiscoveryBackend implements DiscoveryBackend {
+
+    static final int DEFAULT_CONCURRENCY = 8;
+
+    private static final String EXPAND_INSTANCE_VIEW = "instanceView";
+
+    private final ComputeManager computeManager;
+    private final NetworkManager networkManager;
+    private final LocalAddressIndex localAddresses;
+    private final int concurrency;
+    private final Scheduler scheduler;
+
+    private volatile Integer localFaultDomain;
+
+    private AsyncComputeDiscoveryBackend(ComputeManager computeManager, LocalAddressIndex localAddresses,
+                                         int concurrency) {
+        this.computeManager = computeManager;
+        this.networkManager = AzureClientHelper.getNetworkManager(computeManager);
+        this.localAddresses = localAddresses;
+        this.concurrency = concurrency;
+        this.scheduler = Schedulers.io();
+    }
+
+    /**
+     * Creates a new asynchronous compute backend
+     *
+     * @param computeManager the compute client
+     * @param localAddresses the addresses identifying the local VM
+     * @param properties the discovery strategy properties
+     * @return the backend
+     */
+    static AsyncComputeDiscoveryBackend of(ComputeManager computeManager, LocalAddressIndex localAddresses,
+                                           Map<String, Comparable> properties) {
+        return new AsyncComputeDiscoveryBackend(computeManager, localAddresses, Math.max(1,
+                AzureProperties.getOrDefault(AzureProperties.DISCOVERY_CONCURRENCY, properties, DEFAULT_CONCURRENCY)));
+    }
+
+    @Override
+    public List<DiscoveryNode> discoverNodes(String resourceGroup, String clusterId) {
+        return discoverNodesAsync(resourceGroup, clusterId).toList().toBlocking().single();
+    }
+
+    /**
+     * Lists the running VMs and scale set VMs of the resource group that carry the cluster id tag.
+     * Nothing is called before the result is subscribed to.
+     *
+     * @param resourceGroup the resource group name
+     * @param clusterId the tag name whose value is the Hazelcast port
+     * @return the discovered nodes, in no particular order
+     */
+    Observable<DiscoveryNode> discoverNodesAsync(String resourceGroup, String clusterId) {
+        return Observable.merge(virtualMachines(resourceGroup, clusterId), scaleSetVirtualMachines(resourceGroup, clusterId));
+    }
+
+    @Override
+    public Integer localFaultDomain() {
+        return localFaultDomain;
+    }
+
+    @Override
+    public void invalidate(String resourceId) {
+        // every discovery lists the whole resource group
+    }
+
+    private Observable<DiscoveryNode> virtualMachines(String resourceGroup, final String clusterId) {
+        return async(computeManager.inner().virtualMachines().listByResourceGroupAsync(resourceGroup))
+                .flatMapIterable(AsyncComputeDiscoveryBackend.<VirtualMachineInner>items(), 1)
+                .flatMap(new Func1<VirtualMachineInner, Observable<DiscoveryNode>>() {
+                    @Override
+                    public Observable<DiscoveryNode> call(VirtualMachineInner vm) {
+                        Integer port = port(vm.getTags(), clusterId);
+                        return port == null ? Observable.<DiscoveryNode>empty() : virtualMachine(vm, port);
+                    }
+                }, concurrency);
+    }
+
+    private Observable<DiscoveryNode> virtualMachine(final VirtualMachineInner vm, final int port) {
+        Observable<VirtualMachineInstanceView> instanceView = vm.instanceView() != null
+                ? Observable.just(vm.instanceView())
+                : async(computeManager.inner().virtualMachines().instanceViewAsync(
+                        ResourceUtils.groupFromResourceId(vm.id()), vm.name()));
+        return instanceView.concatMap(new Func1<VirtualMachineInstanceView, Observable<DiscoveryNode>>() {
+            @Override
+            public Observable<DiscoveryNode> call(VirtualMachineInstanceView view) {
+                if (view == null || !InstanceState.of(view).isRunning()) {
+                    return Observable.empty();
+                }
+                String networkInterfaceId = ScaleSetNetworkInterfaceIndex.primaryNetworkInterfaceId(vm.networkProfile());
+                if (networkInterfaceId == null) {
+                    return Observable.empty();
+                }
+                return networkInterfaceNode(networkInterfaceId, port, NodeLocation.zone(vm.zones()),
+                        view.platformFaultDomain());
+            }
+        });
+    }
+
+    private Observable<DiscoveryNode> networkInterfaceNode(String networkInterfaceId, final int port,
+                                                           final String zone, final Integer faultDomain) {
+        return async(networkManager.inner().networkInterfaces().getByResourceGroupAsync(
+                ResourceUtils.groupFromResourceId(networkInterfaceId), ResourceUtils.nameFromResourceId(networkInterfaceId)))
+                .concatMap(new Func1<NetworkInterfaceInner, Observable<DiscoveryNode>>() {
+                    @Override
+                    public Observable<DiscoveryNode> call(NetworkInterfaceInner networkInterface) {
+                        NetworkInterfaceIPConfigurationInner ipConfiguration = primaryIpConfiguration(networkInterface);
+                        if (ipConfiguration == null) {
+                            return Observable.empty();
+                        }
+                        String privateIp = ipConfiguration.privateIPAddress();
+                        PublicIPAddressInner publicIp = ipConfiguration.publicIPAddress();
+                        if (publicIp == null || publicIp.id() == null) {
+                            return Observable.just(node(privateIp, null, port, zone, faultDomain));
+                        }
+                        return publicAddressNode(privateIp, publicIp.id(), port, zone, faultDomain);
+                    }
+                });
+    }
+
+    private Observable<DiscoveryNode> publicAddressNode(final String privateIp, String publicIpId, final int port,
+                                                        final String zone, final Integer faultDomain) {
+        return async(networkManager.inner().publicIPAddresses().getByResourceGroupAsync(
+                ResourceUtils.groupFromResourceId(publicIpId), ResourceUtils.nameFromResourceId(publicIpId)))
+                .map(new Func1<PublicIPAddressInner, DiscoveryNode>() {
+                    @Override
+                    public DiscoveryNode call(PublicIPAddressInner publicIp) {
+                        return node(privateIp, publicIp == null ? null : publicIp.ipAddress(), port, zone, faultDomain);
+                    }
+                });
+    }
+
+    private Observable<DiscoveryNode> scaleSetVirtualMachines(final String resourceGroup, final String clusterId) {
+        return async(computeManager.inner().virtualMachineScaleSets().listByResourceGroupAsync(resourceGroup))
+                .flatMapIterable(AsyncComputeDiscoveryBackend.<VirtualMachineScaleSetInner>items(), 1)
+                .flatMap(new Func1<VirtualMachineScaleSetInner, Observable<DiscoveryNode>>() {
+                    @Override
+                    public Observable<DiscoveryNode> call(VirtualMachineScaleSetInner scaleSet) {
+                        Integer port = port(scaleSet.getTags(), clusterId);
+                        return port == null ? Observable.<DiscoveryNode>empty()
+                                : scaleSet(ResourceUtils.groupFromResourceId(scaleSet.id()), scaleSet.name(), port,
+                                        NodeLocation.zone(scaleSet.zones()));
+                    }
+                }, concurrency);
+    }
+
+    private Observable<DiscoveryNode> scaleSet(final String resourceGroup, final String scaleSet, final int port,
+                                               final String zone) {
+        return async(computeManager.inner().virtualMachineScaleSetVMs().listAsync(resourceGroup, scaleSet, null, null,
+                EXPAND_INSTANCE_VIEW))
+                .flatMapIterable(AsyncComputeDiscoveryBackend.<VirtualMachineScaleSetVMInner>items(), 1)
+                .flatMap(new Func1<VirtualMachineScaleSetVMInner, Observable<DiscoveryNode>>() {
+                    @Override
+                    public Observable<DiscoveryNode> call(VirtualMachineScaleSetVMInner vm) {
+                        return scaleSetVirtualMachine(resourceGroup, scaleSet, vm, port, zone);
+                    }
+                }, concurrency);
+    }
+
+    private Observable<DiscoveryNode> scaleSetVirtualMachine(final String resourceGroup, final String scaleSet,
+                                                             final VirtualMachineScaleSetVMInner vm, final int port,
+                                                             final String zone) {
+        Observable<InstanceState> state = vm.instanceView() != null
+                ? Observable.just(InstanceState.of(vm.instanceView()))
+                : async(computeManager.inner().virtualMachineScaleSetVMs().getInstanceViewAsync(resourceGroup, scaleSet,
+                        vm.instanceId())).map(new Func1<VirtualMachineScaleSetVMInstanceViewInner, InstanceState>() {
+                            @Override
+                            public InstanceState call(VirtualMachineScaleSetVMInstanceViewInner instanceView) {
+                                return InstanceState.of(instanceView);
+                            }
+                        });
+        return state.concatMap(new Func1<InstanceState, Observable<DiscoveryNode>>() {
+            @Override
+            public Observable<DiscoveryNode> call(final InstanceState instanceState) {
+                String networkInterfaceId = ScaleSetNetworkInterfaceIndex.primaryNetworkInterfaceId(vm.networkProfile());
+                if (!instanceState.isRunning() || networkInterfaceId == null) {
+                    return Observable.empty();
+                }
+                return async(networkManager.inner().networkInterfaces().getVirtualMachineScaleSetNetworkInterfaceAsync(
+                        resourceGroup, scaleSet, vm.instanceId(), ResourceUtils.nameFromResourceId(networkInterfaceId)))
+                        .concatMap(new Func1<NetworkInterfaceInner, Observable<DiscoveryNode>>() {
+                            @Override
+                            public Observable<DiscoveryNode> call(NetworkInterfaceInner networkInterface) {
+                                NetworkInterfaceIPConfigurationInner ipConfiguration =
+                                        primaryIpConfiguration(networkInterface);
+                                return ipConfiguration == null ? Observable.<DiscoveryNode>empty() : Observable.just(
+                                        node(ipConfiguration.privateIPAddress(), null, port, zone,
+                                                instanceState.faultDomain()));
+                            }
+                        });
+            }
+        });
+    }
+
+    private <T> Observable<T> async(Observable<T> call) {
+        return call.subscribeOn(scheduler);
+    }
+
+    private DiscoveryNode node(String privateIp, String publicIp, int port, String zone, Integer faultDomain) {
+        if (localAddresses.contains(privateIp) || (publicIp != null && localAddresses.contains(publicIp))) {
+            if (faultDomain != null) {
+                localFaultDomain = faultDomain;
+            }
+        }
+        try {
+            Address publicAddress = publicIp == null ? null : new Address(publicIp, port);
+            return NodeLocation.node(new Address(privateIp, port), publicAddress, zone, faultDomain);
+        } catch (UnknownHostException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static NetworkInterfaceIPConfigurationInner primaryIpConfiguration(NetworkInterfaceInner networkInterface) {
+        List<NetworkInterfaceIPConfigurationInner> ipConfigurations = networkInterface == null ? null
+                : networkInterface.ipConfigurations();
+        if (ipConfigurations == null || ipConfigurations.isEmpty()) {
+            return null;
+        }
+        for (NetworkInterfaceIPConfigurationInner ipConfiguration : ipConfigurations) {
+            if (Boolean.TRUE.equals(ipConfiguration.primary())) {
+                return ipConfiguration;
+            }
+        }
+        return ipConfigurations.get(0);
+    }
+
+    /**
+     * A tag is required with the hazelcast cluster id and the value should be the port number
+     */
+    private static Integer port(Map<String, String> tags, String clusterId) {
+        String port = tags == null ? null : tags.get(clusterId);
+        return port == null ? null : Integer.valueOf(port);
+    }
+
+    private static <T> Func1<Page<T>, Iterable<T>> items() {
+        return new Func1<Page<T>, Iterable<T>>() {
+            @Override
+            public Iterable<T> call(Page<T> page) {
+                return page.items();
+            }
+        };
+    }
+}
@@ -18,16 +18,25 @@ package com.hazelcast.azure;
 
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.logging.Logger;
+import com.microsoft.azure.AzureEnvironment;
 import com.microsoft.azure.credentials.ApplicationTokenCredentials;
 import com.microsoft.azure.credentials.AzureTokenCredentials;
 import com.microsoft.azure.credentials.MSICredentials;
 import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.azure.management.network.implementation.NetworkManager;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import static com.hazelcast.azure.AzureProperties.ACTIVE_DIRECTORY_ENDPOINT;
 import static com.hazelcast.azure.AzureProperties.CLIENT_ID;
 import static com.hazelcast.azure.AzureProperties.CLIENT_SECRET;
+import static com.hazelcast.azure.AzureProperties.MANAGED_IDENTITY_PORT;
+import static com.hazelcast.azure.AzureProperties.MANAGEMENT_AUDIENCE;
+import static com.hazelcast.azure.AzureProperties.MANAGEMENT_ENDPOINT;
 import static com.hazelcast.azure.AzureProperties.TENANT_ID;
 import static com.hazelcast.azure.AzureProperties.SUBSCRIPTION_ID;
 
@@ -42,23 +51,107 @@ public final class AzureClientHelper {
     }
 
     /**
-     * Create a compute manager client to manage compute resources
+     * Returns a compute manager client to manage compute resources. Clients are shared by all callers
+     * using the same subscription and credentials and keep their access token refreshed in the background.
      *
      * @param properties the properties Map provided by Hazelcast
-     * @return ComputeManager a client to manage compute resources
+     * @return ComputeManager a client to manage compute resources, to be handed back with
+     * {@link #releaseComputeManager(ComputeManager)}
      */
-    public static ComputeManager getComputeManager(Map<String, Comparable> properties) {
-        AzureTokenCredentials atc;
-        String clientId = AzureProperties.getOrNull(CLIENT_ID, properties);
-        if (StringUtils.isBlank(clientId)) {
+    public static ComputeManager getComputeManager(final Map<String, Comparable> properties) {
+        final String clientId = AzureProperties.getOrNull(CLIENT_ID, properties);
+        final String tenantId = AzureProperties.getOrNull(TENANT_ID, properties);
+        final String clientSecret = AzureProperties.getOrNull(CLIENT_SECRET, properties);
+        final boolean managedIdentity = StringUtils.isBlank(clientId);
+        String subscriptionId = AzureProperties.getOrNull(SUBSCRIPTION_ID, properties);
+        if (managedIdentity) {
             LOGGER.info("Using managed system identity credentials");
-            atc = new MSICredentials();
-        } else {
-            atc = new ApplicationTokenCredentials(
-                    clientId,
-                    AzureProperties.<String>getOrNull(TENANT_ID, properties),
-                    AzureProperties.<String>getOrNull(CLIENT_SECRET, properties), null);
         }
-        return ComputeManager.authenticate(atc, AzureProperties.<String>getOrNull(SUBSCRIPTION_ID, properties));
+
+        // the secret is part of the identity, so a rotated secret gets its own client
+        final AzureEnvironment environment = environment(properties);
+        final Integer managedIdentityPort = AzureProperties.getOrNull(MANAGED_IDENTITY_PORT, properties);
+        String key = (managedIdentity ? "msi|" + managedIdentityPort + "|" + subscriptionId
+                : subscriptionId + "|" + tenantId + "|" + clientId + "|" + DigestUtils.sha256Hex(String.valueOf(clientSecret)))
+                + "|" + environment.resourceManagerEndpoint() + "|" + environment.activeDirectoryEndpoint()
+                + "|" + environment.managementEndpoint() + "|" + ArmHttpTransport.key(properties);
+        try {
+            return ComputeManagerRegistry.instance().acquire(key, subscriptionId,
+                    new Callable<ArmHttpTransport>() {
+                        @Override
+                        public ArmHttpTransport call() {
+                            return ArmHttpTransport.of(properties);
+                        }
+                    },
+                    new Callable<AzureTokenCredentials>() {
+                        @Override
+                        public AzureTokenCredentials call() {
+                            if (managedIdentity) {
+                                return managedIdentityPort != null
+                                        ? new ManagedIdentityExtensionCredentials(environment, managedIdentityPort)
+                                        : new MSICredentials(environment);
+                            }
+                            return new ApplicationTokenCredentials(clientId, tenantId, clientSecret, environment);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create Azure credentials", e);
+        }
+    }
+
+    /**
+     * Returns the public Azure cloud with the Resource Manager endpoint, the Active Directory endpoint and
+     * the token audience replaced by the configured ones. Each one left unset keeps its public cloud value.
+     *
+     * @param properties the properties Map provided by Hazelcast
+     * @return the environment the clients are built for
+     */
+    static AzureEnvironment environment(Map<String, Comparable> properties) {
+        String managementEndpoint = AzureProperties.getOrNull(MANAGEMENT_ENDPOINT, properties);
+        String activeDirectoryEndpoint = AzureProperties.getOrNull(ACTIVE_DIRECTORY_ENDPOINT, properties);
+        String managementAudience = AzureProperties.getOrNull(MANAGEMENT_AUDIENCE, properties);
+        if (StringUtils.isBlank(managementEndpoint) && StringUtils.isBlank(activeDirectoryEndpoint)
+                && StringUtils.isBlank(managementAudience)) {
+            return AzureEnvironment.AZURE;
+        }
+        Map<String, String> endpoints = new HashMap<String, String>(AzureEnvironment.AZURE.endpoints());
+        if (!StringUtils.isBlank(managementEndpoint)) {
+            endpoints.put("resourceManagerEndpointUrl", withTrailingSlash(managementEndpoint));
+        }
+        if (!StringUtils.isBlank(activeDirectoryEndpoint)) {
+            endpoints.put("activeDirectoryEndpointUrl", withTrailingSlash(activeDirectoryEndpoint));
+        }
+        if (!StringUtils.isBlank(managementAudience)) {
+            // the audience is an identifier rather than a URL, Azure Stack ones end in a GUID
+            endpoints.put("managementEndpointUrl", managementAudience);
+        }
+        return new AzureEnvironment(endpoints);
+    }
+
+    private static String withTrailingSlash(String url) {
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    /**
+     * Hands back a compute manager returned by {@link #getComputeManager(Map)}
+     *
+     * @param computeManager the compute manager, may be null
+     */
+    public static void releaseComputeManager(ComputeManager computeManager) {
+        if (computeManager != null) {
+            ComputeManagerRegistry.instance().release(computeManager);
+        }
+    }
+
+    /**
+     * Create a network manager client sharing the HTTP stack and credentials of the given compute manager
+     *
+     * @param computeManager the authenticated compute manager
+     * @return NetworkManager a client to manage network resources
+     */
+    public static NetworkManager getNetworkManager(ComputeManager computeManager) {
+        return NetworkManager.authenticate(computeManager.inner().restClient(), computeManager.subscriptionId());
     }
 }
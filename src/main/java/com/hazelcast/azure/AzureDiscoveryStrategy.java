@@ -19,31 +19,31 @@ package com.hazelcast.azure;
 
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.logging.Logger;
-import com.hazelcast.nio.Address;
 import com.hazelcast.spi.discovery.AbstractDiscoveryStrategy;
 import com.hazelcast.spi.discovery.DiscoveryNode;
 import com.hazelcast.spi.discovery.DiscoveryStrategy;
-import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
 import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
 import com.microsoft.azure.CloudException;
-import com.microsoft.azure.PagedList;
-import com.microsoft.azure.management.compute.PowerState;
-import com.microsoft.azure.management.compute.VirtualMachine;
-import com.microsoft.azure.management.compute.VirtualMachineScaleSet;
-import com.microsoft.azure.management.compute.VirtualMachineScaleSetVM;
 import com.microsoft.azure.management.compute.implementation.ComputeManager;
-import com.microsoft.azure.management.network.NetworkInterface;
-import com.microsoft.azure.management.network.NicIPConfiguration;
-import com.microsoft.azure.management.network.PublicIPAddress;
-import com.microsoft.azure.management.network.VirtualMachineScaleSetNetworkInterface;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -52,11 +52,39 @@ import java.util.Map;
 public class AzureDiscoveryStrategy extends AbstractDiscoveryStrategy {
 
     private static final ILogger LOGGER = Logger.getLogger(AzureDiscoveryStrategy.class);
+    private static final long LOCAL_ADDRESS_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int DEFAULT_GROUP_TIMEOUT_SECONDS = 30;
 
     private final Map<String, Comparable> properties;
-    private final Map<String, Object> memberMetaData = new HashMap<String, Object>();
+    private final ComputeManager providedComputeManager;
+    private final LocalAddressIndex localAddresses = new LocalAddressIndex(LOCAL_ADDRESS_REFRESH_MILLIS);
+    private final SingleFlight<List<DiscoveryNode>> scans = new SingleFlight<List<DiscoveryNode>>(
+            new Callable<List<DiscoveryNode>>() {
+                @Override
+                public List<DiscoveryNode> call() {
+                    return scanNodes();
+                }
+            });
+
+    private final DiscoveryMetrics metrics = new DiscoveryMetrics();
+    private final List<ComputeManager> subscriptionManagers = new ArrayList<ComputeManager>();
+
+    // replaced, never mutated, so it can be handed out and read without locking
+    private volatile Map<String, Object> memberMetaData = Collections.emptyMap();
 
     private ComputeManager computeManager;
+    private DiscoveryBackend backend;
+    private DiscoveryExecutor discoveryExecutor;
+    private ExecutorService refreshExecutor;
+    private DiscoveryNodeCache nodeCache;
+    private InstanceMetadataResolver instanceMetadataResolver;
+    private LivenessProbe livenessProbe;
+    private EventGridListener eventGridListener;
+    private TopologySnapshotFile topologySnapshot;
+    private EarlySeeds earlySeeds;
+    private volatile boolean localMetadataScanned;
+    private volatile List<DiscoveryNode> warmNodes;
+    private final AtomicBoolean reconciling = new AtomicBoolean();
 
     /**
      * Instantiates a new AzureDiscoveryStrategy
@@ -64,195 +92,419 @@ public class AzureDiscoveryStrategy extends AbstractDiscoveryStrategy {
      * @param properties the discovery strategy properties
      */
     public AzureDiscoveryStrategy(Map<String, Comparable> properties) {
+        this(properties, null);
+    }
+
+    /**
+     * Instantiates a new AzureDiscoveryStrategy using a compute client owned by the caller
+     *
+     * @param properties the discovery strategy properties
+     * @param computeManager the compute client, null to use the shared client of the configured credentials
+     */
+    AzureDiscoveryStrategy(Map<String, Comparable> properties, ComputeManager computeManager) {
         super(LOGGER, properties);
         this.properties = properties;
+        this.providedComputeManager = computeManager;
     }
 
     @Override
     public void start() {
+        int concurrency = AzureProperties.getOrDefault(AzureProperties.DISCOVERY_CONCURRENCY, properties, 1);
+        discoveryExecutor = new DiscoveryExecutor(concurrency);
+        backend = createBackend();
+
+        if (AzureProperties.getOrDefault(AzureProperties.USE_INSTANCE_METADATA, properties, false)) {
+            instanceMetadataResolver = new InstanceMetadataResolver(AzureProperties.getOrDefault(
+                    AzureProperties.INSTANCE_METADATA_ENDPOINT, properties, InstanceMetadataResolver.DEFAULT_ENDPOINT));
+        }
+        livenessProbe = LivenessProbe.of(properties, localAddresses);
+
+        int cacheTtlSeconds = AzureProperties.getOrDefault(AzureProperties.DISCOVERY_CACHE_TTL_SECONDS, properties, 0);
+        String snapshotFile = AzureProperties.getOrNull(AzureProperties.TOPOLOGY_SNAPSHOT_FILE, properties);
+        if (cacheTtlSeconds > 0 || snapshotFile != null) {
+            refreshExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("hz-azure-discovery-refresh"));
+        }
+        if (cacheTtlSeconds > 0) {
+            nodeCache = new DiscoveryNodeCache(TimeUnit.SECONDS.toMillis(cacheTtlSeconds),
+                    new Callable<List<DiscoveryNode>>() {
+                        @Override
+                        public List<DiscoveryNode> call() {
+                            return scan();
+                        }
+                    }, refreshExecutor);
+        }
+        if (backend != null) {
+            eventGridListener = EventGridListener.of(properties, backend, nodeCache);
+        }
+        boolean warm = false;
+        if (snapshotFile != null) {
+            topologySnapshot = new TopologySnapshotFile(new File(snapshotFile));
+            warm = warmStart(topologySnapshot.read());
+        }
+        startEarlySeeds(warm);
+        startMetrics();
+    }
+
+    /**
+     * Early seeds only help a member that starts without a known topology
+     */
+    private void startEarlySeeds(boolean warm) {
+        int count = AzureProperties.getOrDefault(AzureProperties.EARLY_SEED_COUNT, properties, 0);
+        if (count <= 0 || warm) {
+            return;
+        }
+        if (backend instanceof AsyncComputeDiscoveryBackend) {
+            earlySeeds = EarlySeeds.of(count);
+        } else {
+            LOGGER.warning("Early seeds need the " + DiscoveryBackend.COMPUTE_ASYNC + " discovery backend, ignoring "
+                    + AzureProperties.EARLY_SEED_COUNT.key());
+        }
+    }
+
+    private void startMetrics() {
+        ArmHttpTransport transport = ComputeManagerRegistry.instance().transport(computeManager);
+        metrics.callMetrics(transport == null ? null : transport.callMetrics());
+        metrics.cache(nodeCache);
+        if (AzureProperties.getOrDefault(AzureProperties.JMX_METRICS, properties, false)) {
+            String clusterId = AzureProperties.getOrNull(AzureProperties.CLUSTER_ID, properties);
+            metrics.register(clusterId);
+        }
+    }
+
+    /**
+     * Serves the last known topology until the first scan completed
+     *
+     * @return whether a topology was loaded
+     */
+    private boolean warmStart(TopologySnapshotFile.Snapshot snapshot) {
+        if (snapshot == null) {
+            return false;
+        }
+        LOGGER.info("Azure Discovery SPI starting with " + snapshot.nodes().size() + " nodes of the last known topology");
+        if (snapshot.localZone() != null) {
+            memberMetaData = Collections.<String, Object>singletonMap(PartitionGroupMetaData.PARTITION_GROUP_ZONE,
+                    snapshot.localZone());
+        }
+        List<DiscoveryNode> nodes = localFirst(snapshot.nodes());
+        if (nodeCache != null) {
+            nodeCache.seed(nodes);
+        } else {
+            warmNodes = nodes;
+        }
+        return true;
+    }
+
+    private DiscoveryBackend createBackend() {
+        List<String> subscriptionIds = AzureProperties.getList(AzureProperties.SUBSCRIPTION_ID, properties);
+        List<String> resourceGroups = AzureProperties.getList(AzureProperties.GROUP_NAME, properties);
         try {
-            computeManager = AzureClientHelper.getComputeManager(properties);
+            if (subscriptionIds.size() > 1 || resourceGroups.size() > 1) {
+                return createMultiGroupBackend(subscriptionIds, resourceGroups);
+            }
+            computeManager = providedComputeManager != null ? providedComputeManager
+                    : AzureClientHelper.getComputeManager(properties);
+            return createBackend(computeManager);
         } catch (CloudException e) {
-            LOGGER.severe("Failed to start Azure SPI", e);
+            releaseComputeManagers();
+            shutdownExecutors();
+            throw new IllegalStateException("Failed to start the Azure Discovery SPI for subscriptions " + subscriptionIds
+                    + " and resource groups " + resourceGroups + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * One client is acquired per subscription and shared by the backends of its resource groups
+     */
+    private DiscoveryBackend createMultiGroupBackend(List<String> subscriptionIds, List<String> resourceGroups) {
+        List<MultiGroupDiscoveryBackend.Group> groups = new ArrayList<MultiGroupDiscoveryBackend.Group>();
+        for (String subscriptionId : subscriptionIds) {
+            ComputeManager subscriptionManager;
+            if (computeManager == null) {
+                subscriptionManager = providedComputeManager != null ? providedComputeManager
+                        : AzureClientHelper.getComputeManager(subscriptionProperties(subscriptionId));
+                computeManager = subscriptionManager;
+            } else {
+                subscriptionManager = AzureClientHelper.getComputeManager(subscriptionProperties(subscriptionId));
+                subscriptionManagers.add(subscriptionManager);
+            }
+            for (String resourceGroup : resourceGroups) {
+                groups.add(MultiGroupDiscoveryBackend.group(subscriptionId, resourceGroup,
+                        createBackend(subscriptionManager)));
+            }
         }
+        int timeoutSeconds = AzureProperties.getOrDefault(AzureProperties.GROUP_TIMEOUT_SECONDS, properties,
+                DEFAULT_GROUP_TIMEOUT_SECONDS);
+        LOGGER.info("Azure Discovery SPI discovering " + resourceGroups.size() + " resource groups in "
+                + subscriptionIds.size() + " subscriptions");
+        return MultiGroupDiscoveryBackend.of(groups, TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    }
+
+    private Map<String, Comparable> subscriptionProperties(String subscriptionId) {
+        Map<String, Comparable> subscriptionProperties = new HashMap<String, Comparable>(properties);
+        subscriptionProperties.put(AzureProperties.SUBSCRIPTION_ID.key(), subscriptionId);
+        return subscriptionProperties;
+    }
+
+    private DiscoveryBackend createBackend(ComputeManager computeManager) {
+        String backendName = AzureProperties.getOrDefault(AzureProperties.DISCOVERY_BACKEND, properties,
+                DiscoveryBackend.COMPUTE);
+        if (DiscoveryBackend.RESOURCE_GRAPH.equals(backendName)) {
+            return ResourceGraphDiscoveryBackend.of(computeManager, localAddresses);
+        }
+        if (DiscoveryBackend.COMPUTE_ASYNC.equals(backendName)) {
+            return AsyncComputeDiscoveryBackend.of(computeManager, localAddresses, properties);
+        }
+        if (!DiscoveryBackend.COMPUTE.equals(backendName)) {
+            LOGGER.warning("Unknown discovery backend " + backendName + ", using " + DiscoveryBackend.COMPUTE);
+        }
+        return new ComputeDiscoveryBackend(computeManager, discoveryExecutor, localAddresses, properties);
     }
 
     @Override
     public Map<String, Object> discoverLocalMetadata() {
-        if (memberMetaData.size() == 0) {
-            discoverNodes();
+        if (memberMetaData.isEmpty() && backend != null) {
+            // an asynchronous discovery may have found the local VM already
+            updateVirtualMachineMetaData(backend.localFaultDomain());
+        }
+        if (memberMetaData.isEmpty() && instanceMetadataResolver != null) {
+            InstanceMetadata instanceMetadata = instanceMetadataResolver.resolve();
+            if (instanceMetadata != null && instanceMetadata.faultDomain() != null) {
+                memberMetaData = Collections.<String, Object>singletonMap(PartitionGroupMetaData.PARTITION_GROUP_ZONE,
+                        instanceMetadata.faultDomain());
+            }
+        }
+        // a successful scan that found no fault domain is not repeated on every call
+        if (memberMetaData.isEmpty() && !localMetadataScanned) {
+            // Hazelcast asks for the metadata before joining, the early seeds are kept for the join
+            localMetadataScanned = (earlySeeds != null ? scan() : discoverNodes()) != null;
         }
         return memberMetaData;
     }
 
     @Override
     public Iterable<DiscoveryNode> discoverNodes() {
-        try {
+        if (earlySeeds != null) {
+            List<DiscoveryNode> streamed = streamedNodes();
+            if (streamed != null) {
+                return streamed;
+            }
+        }
+        if (nodeCache != null) {
+            return nodeCache.get();
+        }
+        List<DiscoveryNode> warm = warmNodes;
+        if (warm != null) {
+            reconcile();
+            return warm;
+        }
+        return scan();
+    }
+
+    /**
+     * Discovers the nodes without holding the calling thread. With the {@value DiscoveryBackend#COMPUTE_ASYNC}
+     * backend each node is emitted as soon as its address is resolved and the discovery is neither cached nor
+     * shared, otherwise the nodes of {@link #discoverNodes()} are emitted from an IO thread.
+     *
+     * @return the discovered nodes, failing if the discovery failed
+     */
+    public Observable<DiscoveryNode> discoverNodesAsync() {
+        if (backend instanceof AsyncComputeDiscoveryBackend) {
             String resourceGroup = AzureProperties.getOrNull(AzureProperties.GROUP_NAME, properties);
             String clusterId = AzureProperties.getOrNull(AzureProperties.CLUSTER_ID, properties);
+            return metrics.record(((AsyncComputeDiscoveryBackend) backend).discoverNodesAsync(resourceGroup, clusterId));
+        }
+        return Observable.defer(new Func0<Observable<DiscoveryNode>>() {
+            @Override
+            public Observable<DiscoveryNode> call() {
+                Iterable<DiscoveryNode> nodes = discoverNodes();
+                if (nodes == null) {
+                    return Observable.error(new IllegalStateException("Failed to discover nodes with Azure SPI"));
+                }
+                return Observable.from(nodes);
+            }
+        }).subscribeOn(Schedulers.io());
+    }
 
-            ArrayList<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+    /**
+     * Serves the first nodes of the first discovery before it completed, then its full list once
+     */
+    private List<DiscoveryNode> streamedNodes() {
+        List<DiscoveryNode> nodes = earlySeeds.remainder();
+        if (nodes == null) {
+            // the seeds are probed and ordered like a full list, so the first join attempts go to live,
+            // close members
+            List<DiscoveryNode> seeds = earlySeeds.seeds(discoverNodesAsync());
+            return seeds == null ? null : Collections.unmodifiableList(localFirst(live(seeds)));
+        }
+        nodes = localFirst(live(nodes));
+        saveTopology(nodes, backend.localFaultDomain());
+        if (nodeCache != null) {
+            nodeCache.put(nodes);
+        }
+        return Collections.unmodifiableList(nodes);
+    }
 
-            nodes.addAll(discoverVMs(resourceGroup, clusterId));
-            nodes.addAll(discoverScaleSetVMs(resourceGroup, clusterId));
+    /**
+     * Replaces the last known topology with a fresh scan in the background
+     */
+    private void reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (scan() != null) {
+                            warmNodes = null;
+                        }
+                    } finally {
+                        reconciling.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reconciling.set(false);
+            LOGGER.finest("Topology reconciliation rejected", e);
+        }
+    }
 
-            LOGGER.info("Azure Discovery SPI Discovered " + nodes.size() + " nodes");
-            return nodes;
+    /**
+     * Scans on the calling thread unless a scan is already running, in which case its result is shared
+     */
+    private List<DiscoveryNode> scan() {
+        try {
+            return scans.run();
         } catch (Exception e) {
             LOGGER.finest("Failed to discover nodes with Azure SPI", e);
             return null;
         }
     }
 
-    private List<DiscoveryNode> discoverScaleSetVMs(String resourceGroup, String clusterId)
-            throws UnknownHostException {
-        PagedList<VirtualMachineScaleSet> scaleSets = computeManager.virtualMachineScaleSets()
-                .listByResourceGroup(resourceGroup);
-        ArrayList<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
-
-        for (VirtualMachineScaleSet scaleSet : scaleSets) {
-            Map<String, String> tags = scaleSet.tags();
-            // a tag is required with the hazelcast clusterid
-            // and the value should be the port number
-            if (tags.get(clusterId) == null) {
-                continue;
-            }
-            int port = Integer.parseInt(tags.get(clusterId));
-
-            PagedList<VirtualMachineScaleSetVM> vms = scaleSet.virtualMachines().list();
-
-            for (VirtualMachineScaleSetVM vm : vms) {
-                if (!PowerState.RUNNING.equals(vm.powerState())) {
-                    continue;
-                }
+    private List<DiscoveryNode> scanNodes() {
+        long start = System.nanoTime();
+        try {
+            String resourceGroup = AzureProperties.getOrNull(AzureProperties.GROUP_NAME, properties);
+            String clusterId = AzureProperties.getOrNull(AzureProperties.CLUSTER_ID, properties);
+            List<DiscoveryNode> nodes = localFirst(live(backend.discoverNodes(resourceGroup, clusterId)));
 
-                String primaryNetworkInterfaceId = vm.primaryNetworkInterfaceId();
-                if (primaryNetworkInterfaceId != null) {
-                    VirtualMachineScaleSetNetworkInterface networkInterface =
-                            vm.getNetworkInterface(primaryNetworkInterfaceId);
-                    nodes.add(buildDiscoveryNode(port, vm, networkInterface));
-                } else {
-                    PagedList<VirtualMachineScaleSetNetworkInterface> networkInterfaces = vm.listNetworkInterfaces();
-                    if (networkInterfaces.size() > 0) {
-                        VirtualMachineScaleSetNetworkInterface networkInterface = networkInterfaces.get(0);
-                        nodes.add(buildDiscoveryNode(port, vm, networkInterface));
-                    }
-                }
-            }
+            LOGGER.info("Azure Discovery SPI Discovered " + nodes.size() + " nodes");
+            metrics.discovered(nodes.size(), System.nanoTime() - start);
+            logTransportStatistics();
+            saveTopology(nodes, backend.localFaultDomain());
+            return Collections.unmodifiableList(nodes);
+        } catch (Exception e) {
+            metrics.failed(System.nanoTime() - start);
+            LOGGER.finest("Failed to discover nodes with Azure SPI", e);
+            return null;
+        } finally {
+            // the local VM may have been found even if another listing failed
+            updateVirtualMachineMetaData(backend.localFaultDomain());
         }
-        return nodes;
     }
 
-    private List<DiscoveryNode> discoverVMs(String resourceGroup, String clusterId) throws UnknownHostException {
-        PagedList<VirtualMachine> virtualMachines = computeManager.virtualMachines().listByResourceGroup(resourceGroup);
-        ArrayList<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
-
-        for (VirtualMachine vm : virtualMachines) {
-            Map<String, String> tags = vm.tags();
-            // a tag is required with the hazelcast clusterid
-            // and the value should be the port number
-            if (tags.get(clusterId) == null) {
-                continue;
-            }
+    /**
+     * Drops the nodes that do not accept connections when the liveness probe is enabled
+     */
+    private List<DiscoveryNode> live(List<DiscoveryNode> nodes) {
+        return livenessProbe == null ? nodes : livenessProbe.probe(nodes);
+    }
 
-            if (!PowerState.RUNNING.equals(vm.powerState())) {
-                continue;
-            }
+    /**
+     * Puts the members of the local zone first, so join handshakes and the first partition table fetch
+     * go to the closest ones. The local VM is looked up among the nodes, then in the instance metadata.
+     */
+    private List<DiscoveryNode> localFirst(List<DiscoveryNode> nodes) {
+        NodeLocation local = NodeLocation.local(nodes, localAddresses);
+        if (local == null && instanceMetadataResolver != null) {
+            InstanceMetadata instanceMetadata = instanceMetadataResolver.resolve();
+            local = instanceMetadata == null ? null
+                    : NodeLocation.of(instanceMetadata.zone(), instanceMetadata.faultDomain());
+        }
+        return NodeLocation.localFirst(nodes, local);
+    }
 
-            Integer faultDomainId = vm.instanceView().platformFaultDomain();
-            if (faultDomainId != null) {
-                memberMetaData.put(PartitionGroupMetaData.PARTITION_GROUP_ZONE, faultDomainId.toString());
-            }
-            int port = Integer.parseInt(tags.get(clusterId));
-            DiscoveryNode node = buildDiscoveryNode(faultDomainId, vm, port);
+    private void saveTopology(List<DiscoveryNode> nodes, Integer localFaultDomain) {
+        if (topologySnapshot == null) {
+            return;
+        }
+        Object localZone = localFaultDomain != null ? localFaultDomain.toString()
+                : memberMetaData.get(PartitionGroupMetaData.PARTITION_GROUP_ZONE);
+        try {
+            topologySnapshot.write(nodes, localZone == null ? null : localZone.toString());
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save the topology snapshot: " + e.getMessage());
+        }
+    }
 
-            if (node != null) {
-                nodes.add(node);
-            }
+    private void logTransportStatistics() {
+        ArmHttpTransport transport = ComputeManagerRegistry.instance().transport(computeManager);
+        if (transport != null && LOGGER.isFinestEnabled()) {
+            LOGGER.finest("ARM connections opened: " + transport.connectionsOpened() + ", reused: "
+                    + transport.connectionsReused() + ", pooled: " + transport.pooledConnections());
         }
-        return nodes;
+    }
+
+    /**
+     * @return the discovery metrics of this strategy
+     */
+    DiscoveryMetrics metrics() {
+        return metrics;
     }
 
     @Override
     public void destroy() {
-        // no native resources were allocated so nothing to do here
+        metrics.unregister();
+        if (eventGridListener != null) {
+            eventGridListener.stop();
+        }
+        releaseComputeManagers();
+        if (backend instanceof MultiGroupDiscoveryBackend) {
+            ((MultiGroupDiscoveryBackend) backend).shutdown();
+        }
+        shutdownExecutors();
     }
 
-    private SimpleDiscoveryNode buildDiscoveryNode(int port, VirtualMachineScaleSetVM vm,
-                                                   VirtualMachineScaleSetNetworkInterface networkInterface)
-            throws UnknownHostException {
-        String privateIP = networkInterface.primaryPrivateIP();
-        String localHostAddress = getLocalHostAddress();
-        if (localHostAddress != null && privateIP.equals(localHostAddress)) {
-            Integer faultDomainId = vm.instanceView().platformFaultDomain();
-            updateVirtualMachineMetaData(faultDomainId);
-        }
-        Address privateAddress = new Address(privateIP, port);
-        return new SimpleDiscoveryNode(privateAddress);
+    private void releaseComputeManagers() {
+        if (providedComputeManager == null) {
+            AzureClientHelper.releaseComputeManager(computeManager);
+        }
+        computeManager = null;
+        for (ComputeManager subscriptionManager : subscriptionManagers) {
+            AzureClientHelper.releaseComputeManager(subscriptionManager);
+        }
+        subscriptionManagers.clear();
     }
 
-    /**
-     * Builds a discovery node
-     *
-     * @param faultDomainId
-     * @param vm
-     * @param port
-     * @return DiscoveryNode the Hazelcast DiscoveryNode
-     */
-    private DiscoveryNode buildDiscoveryNode(Integer faultDomainId, VirtualMachine vm, int port)
-            throws UnknownHostException {
-        NetworkInterface networkInterface = vm.getPrimaryNetworkInterface();
-        for (NicIPConfiguration ipConfiguration : networkInterface.ipConfigurations().values()) {
-            PublicIPAddress publicIPAddress = ipConfiguration.getPublicIPAddress();
-            String privateIP = ipConfiguration.privateIPAddress();
-            Address privateAddress = new Address(privateIP, port);
-            String localHostAddress = getLocalHostAddress();
-            if (publicIPAddress != null) {
-                String publicIP = publicIPAddress.ipAddress();
-                Address publicAddress = new Address(publicIP, port);
-
-                if (localHostAddress != null && publicIP.equals(localHostAddress)) {
-                    updateVirtualMachineMetaData(faultDomainId);
-                }
-                return new SimpleDiscoveryNode(privateAddress, publicAddress);
-            }
-            if (localHostAddress != null && privateIP.equals(localHostAddress)) {
-                //In private address there is no host name so we are passing null.
-                updateVirtualMachineMetaData(faultDomainId);
-            }
-            return new SimpleDiscoveryNode(privateAddress);
+    private void shutdownExecutors() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+        if (discoveryExecutor != null) {
+            discoveryExecutor.shutdown();
         }
-
-        // no node found;
-        return null;
     }
 
     private void updateVirtualMachineMetaData(Integer faultDomain) {
         if (faultDomain != null) {
-            memberMetaData.put(PartitionGroupMetaData.PARTITION_GROUP_ZONE, faultDomain.toString());
+            memberMetaData = Collections.<String, Object>singletonMap(PartitionGroupMetaData.PARTITION_GROUP_ZONE,
+                    faultDomain.toString());
         }
     }
 
+    /**
+     * Returns the address the local member most likely binds to
+     *
+     * @return the first site local address of the local interfaces, otherwise the first
+     * non loopback one, otherwise the address the JDK resolves for the local host
+     */
     public String getLocalHostAddress() {
+        String preferredAddress = localAddresses.preferredAddress();
+        if (preferredAddress != null) {
+            return preferredAddress;
+        }
         try {
-            InetAddress candidateAddress = null;
-            // Iterate all NICs (network interface cards)...
-            for (Enumeration ifaces = java.net.NetworkInterface.getNetworkInterfaces(); ifaces.hasMoreElements(); ) {
-                java.net.NetworkInterface iface = (java.net.NetworkInterface) ifaces.nextElement();
-                for (Enumeration inetAddrs = iface.getInetAddresses(); inetAddrs.hasMoreElements(); ) {
-                    InetAddress inetAddr = (InetAddress) inetAddrs.nextElement();
-                    if (!inetAddr.isLoopbackAddress()) {
-                        if (inetAddr.isSiteLocalAddress()) {
-                            return inetAddr.getHostAddress();
-                        } else if (candidateAddress == null) {
-                            candidateAddress = inetAddr;
-                        }
-                    }
-                }
-            }
-            if (candidateAddress != null) {
-                return candidateAddress.getHostAddress();
-            }
             InetAddress jdkSuppliedAddress = InetAddress.getLocalHost();
             if (jdkSuppliedAddress == null) {
                 throw new UnknownHostException("The JDK InetAddress.getLocalHost() method unexpectedly returned null.");
@@ -24,6 +24,7 @@ import com.hazelcast.spi.discovery.DiscoveryStrategyFactory;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -45,9 +46,44 @@ public class AzureDiscoveryStrategyFactory implements DiscoveryStrategyFactory {
         REQUIRED_PROPERTY_DEFINITIONS = Collections.unmodifiableCollection(requiredPropertyDefinitions);
 
         List<PropertyDefinition> allPropertyDefinitions = new ArrayList<PropertyDefinition>(requiredPropertyDefinitions);
-        allPropertyDefinitions.add(AzureProperties.CLIENT_ID);
-        allPropertyDefinitions.add(AzureProperties.CLIENT_SECRET);
-        allPropertyDefinitions.add(AzureProperties.TENANT_ID);
+        allPropertyDefinitions.addAll(Arrays.asList(
+                AzureProperties.CLIENT_ID,
+                AzureProperties.CLIENT_SECRET,
+                AzureProperties.TENANT_ID,
+                AzureProperties.DISCOVERY_CACHE_TTL_SECONDS,
+                AzureProperties.DISCOVERY_CONCURRENCY,
+                AzureProperties.BATCH_NETWORK_LOOKUP,
+                AzureProperties.BULK_INSTANCE_VIEW,
+                AzureProperties.USE_INSTANCE_METADATA,
+                AzureProperties.INSTANCE_METADATA_ENDPOINT,
+                AzureProperties.DISCOVERY_BACKEND,
+                AzureProperties.SERVER_SIDE_TAG_FILTER,
+                AzureProperties.INCREMENTAL_DISCOVERY,
+                AzureProperties.HTTP_MAX_IDLE_CONNECTIONS,
+                AzureProperties.HTTP_KEEP_ALIVE_SECONDS,
+                AzureProperties.HTTP_CONNECT_TIMEOUT_MILLIS,
+                AzureProperties.HTTP_READ_TIMEOUT_MILLIS,
+                AzureProperties.HTTP_CALL_TIMEOUT_MILLIS,
+                AzureProperties.HTTP_GZIP,
+                AzureProperties.ARM_REQUESTS_PER_SECOND,
+                AzureProperties.ARM_REQUEST_BURST,
+                AzureProperties.ARM_THROTTLING_RETRIES,
+                AzureProperties.TOPOLOGY_SNAPSHOT_FILE,
+                AzureProperties.JMX_METRICS,
+                AzureProperties.MANAGEMENT_ENDPOINT,
+                AzureProperties.ACTIVE_DIRECTORY_ENDPOINT,
+                AzureProperties.MANAGEMENT_AUDIENCE,
+                AzureProperties.MANAGED_IDENTITY_PORT,
+                AzureProperties.EARLY_SEED_COUNT,
+                AzureProperties.GROUP_TIMEOUT_SECONDS,
+                AzureProperties.LIVENESS_PROBE_TIMEOUT_MILLIS,
+                AzureProperties.LIVENESS_PROBE_DEAD_TTL_SECONDS,
+                AzureProperties.LIVENESS_PROBE_ALIVE_TTL_SECONDS,
+                AzureProperties.EVENT_GRID_PORT,
+                AzureProperties.EVENT_GRID_KEY,
+                AzureProperties.EVENT_GRID_BIND_ADDRESS,
+                AzureProperties.SCALE_SET_POWER_SUMMARY,
+                AzureProperties.INCREMENTAL_DISCOVERY_MAX_AGE_SECONDS));
         ALL_PROPERTY_DEFINITIONS = Collections.unmodifiableCollection(allPropertyDefinitions);
     }
 
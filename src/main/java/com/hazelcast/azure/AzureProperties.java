@@ -22,8 +22,12 @@ import com.hazelcast.config.properties.SimplePropertyDefinition;
 import com.hazelcast.config.properties.ValidationException;
 import com.hazelcast.config.properties.ValueValidator;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import static com.hazelcast.config.properties.PropertyTypeConverter.BOOLEAN;
+import static com.hazelcast.config.properties.PropertyTypeConverter.INTEGER;
 import static com.hazelcast.config.properties.PropertyTypeConverter.STRING;
 
 /**
@@ -44,6 +48,7 @@ public final class AzureProperties {
 
     /**
      * The constant SUBSCRIPTION_ID.
+     * One subscription id or a comma separated list of them
      */
     public static final PropertyDefinition SUBSCRIPTION_ID = property("subscription-id", STRING);
 
@@ -59,9 +64,223 @@ public final class AzureProperties {
 
     /**
      * The constant GROUP_NAME.
+     * One resource group name or a comma separated list of them, discovered in every subscription
      */
     public static final PropertyDefinition GROUP_NAME = property("group-name", STRING);
 
+    /**
+     * The constant DISCOVERY_CACHE_TTL_SECONDS.
+     * How long a discovered node list is served before a background refresh is triggered, 0 disables caching
+     */
+    public static final PropertyDefinition DISCOVERY_CACHE_TTL_SECONDS = property("discovery-cache-ttl-seconds", INTEGER);
+
+    /**
+     * The constant DISCOVERY_CONCURRENCY.
+     * Maximum number of ARM listings run in parallel during one discovery, 1 runs them sequentially
+     */
+    public static final PropertyDefinition DISCOVERY_CONCURRENCY = property("discovery-concurrency", INTEGER);
+
+    /**
+     * The constant BATCH_NETWORK_LOOKUP.
+     * Lists network interfaces and public IP addresses in bulk and joins them with the VMs in memory
+     * instead of one lookup per VM
+     */
+    public static final PropertyDefinition BATCH_NETWORK_LOOKUP = property("batch-network-lookup", BOOLEAN);
+
+    /**
+     * The constant BULK_INSTANCE_VIEW.
+     * Reads power state and fault domain from listings with the instance view expanded
+     * instead of fetching the instance view of every VM
+     */
+    public static final PropertyDefinition BULK_INSTANCE_VIEW = property("bulk-instance-view", BOOLEAN);
+
+    /**
+     * The constant USE_INSTANCE_METADATA.
+     * Resolves the local fault domain from the Azure Instance Metadata Service instead of an ARM scan
+     */
+    public static final PropertyDefinition USE_INSTANCE_METADATA = property("use-instance-metadata", BOOLEAN);
+
+    /**
+     * The constant INSTANCE_METADATA_ENDPOINT.
+     * The Instance Metadata Service URL, only needs to be changed for testing
+     */
+    public static final PropertyDefinition INSTANCE_METADATA_ENDPOINT = property("instance-metadata-endpoint", STRING);
+
+    /**
+     * The constant DISCOVERY_BACKEND.
+     * The API the VMs are discovered with, one of compute, compute-async or resource-graph
+     */
+    public static final PropertyDefinition DISCOVERY_BACKEND = property("discovery-backend", STRING);
+
+    /**
+     * The constant SERVER_SIDE_TAG_FILTER.
+     * Lists only the resources tagged with the cluster id using an ARM tag filter,
+     * instead of listing every VM and scale set of the resource group
+     */
+    public static final PropertyDefinition SERVER_SIDE_TAG_FILTER = property("server-side-tag-filter", BOOLEAN);
+
+    /**
+     * The constant INCREMENTAL_DISCOVERY.
+     * Reuses the nodes of scale sets whose capacity and provisioning state did not change
+     * since the previous discovery instead of listing their instances again
+     */
+    public static final PropertyDefinition INCREMENTAL_DISCOVERY = property("incremental-discovery", BOOLEAN);
+
+    /**
+     * The constant HTTP_MAX_IDLE_CONNECTIONS.
+     * Maximum number of idle connections to ARM kept open for reuse
+     */
+    public static final PropertyDefinition HTTP_MAX_IDLE_CONNECTIONS = property("http-max-idle-connections", INTEGER);
+
+    /**
+     * The constant HTTP_KEEP_ALIVE_SECONDS.
+     * How long an idle connection to ARM is kept open before it is evicted from the pool
+     */
+    public static final PropertyDefinition HTTP_KEEP_ALIVE_SECONDS = property("http-keep-alive-seconds", INTEGER);
+
+    /**
+     * The constant HTTP_CONNECT_TIMEOUT_MILLIS.
+     * Timeout of opening a connection to ARM, 0 for none
+     */
+    public static final PropertyDefinition HTTP_CONNECT_TIMEOUT_MILLIS = property("http-connect-timeout-millis", INTEGER);
+
+    /**
+     * The constant HTTP_READ_TIMEOUT_MILLIS.
+     * Timeout of each read from an ARM connection, 0 for none
+     */
+    public static final PropertyDefinition HTTP_READ_TIMEOUT_MILLIS = property("http-read-timeout-millis", INTEGER);
+
+    /**
+     * The constant HTTP_CALL_TIMEOUT_MILLIS.
+     * Deadline of a whole ARM call including connecting, redirects and reading the response, 0 for none
+     */
+    public static final PropertyDefinition HTTP_CALL_TIMEOUT_MILLIS = property("http-call-timeout-millis", INTEGER);
+
+    /**
+     * The constant HTTP_GZIP.
+     * Requests gzip encoded ARM responses, which are decoded transparently
+     */
+    public static final PropertyDefinition HTTP_GZIP = property("http-gzip", BOOLEAN);
+
+    /**
+     * The constant ARM_REQUESTS_PER_SECOND.
+     * Sustained rate of ARM calls per subscription shared by all members of the JVM, the default 0 leaves
+     * throttled calls to the retries of the Azure SDK
+     */
+    public static final PropertyDefinition ARM_REQUESTS_PER_SECOND = property("arm-requests-per-second", INTEGER);
+
+    /**
+     * The constant ARM_REQUEST_BURST.
+     * Number of ARM calls per subscription that may be made at once after a quiet period
+     */
+    public static final PropertyDefinition ARM_REQUEST_BURST = property("arm-request-burst", INTEGER);
+
+    /**
+     * The constant ARM_THROTTLING_RETRIES.
+     * How often an ARM call answered with 429 is retried after the announced Retry-After
+     */
+    public static final PropertyDefinition ARM_THROTTLING_RETRIES = property("arm-throttling-retries", INTEGER);
+
+    /**
+     * The constant TOPOLOGY_SNAPSHOT_FILE.
+     * File the last discovered topology is saved to and served from at start until a fresh scan completed
+     */
+    public static final PropertyDefinition TOPOLOGY_SNAPSHOT_FILE = property("topology-snapshot-file", STRING);
+
+    /**
+     * The constant JMX_METRICS.
+     * Whether the discovery metrics are registered as an MBean in the platform MBean server
+     */
+    public static final PropertyDefinition JMX_METRICS = property("jmx-metrics", BOOLEAN);
+
+    /**
+     * The constant MANAGEMENT_ENDPOINT.
+     * The Azure Resource Manager URL the clients call, for a sovereign cloud, Azure Stack or a local stand-in
+     */
+    public static final PropertyDefinition MANAGEMENT_ENDPOINT = property("management-endpoint", STRING);
+
+    /**
+     * The constant ACTIVE_DIRECTORY_ENDPOINT.
+     * The Azure Active Directory URL service principals request their tokens from
+     */
+    public static final PropertyDefinition ACTIVE_DIRECTORY_ENDPOINT = property("active-directory-endpoint", STRING);
+
+    /**
+     * The constant MANAGEMENT_AUDIENCE.
+     * The resource the Resource Manager tokens are requested for
+     */
+    public static final PropertyDefinition MANAGEMENT_AUDIENCE = property("management-audience", STRING);
+
+    /**
+     * The constant MANAGED_IDENTITY_PORT.
+     * Port of the managed identity VM extension on localhost, used instead of the Instance Metadata Service
+     */
+    public static final PropertyDefinition MANAGED_IDENTITY_PORT = property("managed-identity-port", INTEGER);
+
+    /**
+     * The constant EARLY_SEED_COUNT.
+     * Number of nodes the first discovery of a joining member returns before the listing completed
+     */
+    public static final PropertyDefinition EARLY_SEED_COUNT = property("early-seed-count", INTEGER);
+
+    /**
+     * The constant GROUP_TIMEOUT_SECONDS.
+     * How long a discovery over several resource groups waits for a slow group before leaving it out, 0 to wait
+     */
+    public static final PropertyDefinition GROUP_TIMEOUT_SECONDS = property("group-timeout-seconds", INTEGER);
+
+    /**
+     * The constant LIVENESS_PROBE_TIMEOUT_MILLIS.
+     * How long the discovered nodes are probed for a listening port before they are returned, 0 to not probe.
+     * Every probe is logged by the probed member as an accepted and closed connection.
+     */
+    public static final PropertyDefinition LIVENESS_PROBE_TIMEOUT_MILLIS = property("liveness-probe-timeout-millis", INTEGER);
+
+    /**
+     * The constant LIVENESS_PROBE_DEAD_TTL_SECONDS.
+     * How long a node that failed the liveness probe is dropped without being probed again
+     */
+    public static final PropertyDefinition LIVENESS_PROBE_DEAD_TTL_SECONDS = property("liveness-probe-dead-ttl-seconds",
+            INTEGER);
+
+    /**
+     * The constant LIVENESS_PROBE_ALIVE_TTL_SECONDS.
+     * How long a node that passed the liveness probe is kept without being probed again
+     */
+    public static final PropertyDefinition LIVENESS_PROBE_ALIVE_TTL_SECONDS = property(
+            "liveness-probe-alive-ttl-seconds", INTEGER);
+
+    /**
+     * The constant EVENT_GRID_PORT.
+     * Port of the listener for Event Grid notifications that invalidate the discovered topology, not set to not listen
+     */
+    public static final PropertyDefinition EVENT_GRID_PORT = property("event-grid-port", INTEGER);
+
+    /**
+     * The constant EVENT_GRID_KEY.
+     * Key the Event Grid notifications must carry as the key query parameter, required to listen
+     */
+    public static final PropertyDefinition EVENT_GRID_KEY = property("event-grid-key", STRING);
+
+    /**
+     * The constant EVENT_GRID_BIND_ADDRESS.
+     * Local address the Event Grid listener binds to, all interfaces if not set
+     */
+    public static final PropertyDefinition EVENT_GRID_BIND_ADDRESS = property("event-grid-bind-address", STRING);
+
+    /**
+     * The constant SCALE_SET_POWER_SUMMARY.
+     * Reads how many instances of a scale set run from one scale set instance view before listing them
+     */
+    public static final PropertyDefinition SCALE_SET_POWER_SUMMARY = property("scale-set-power-summary", BOOLEAN);
+
+    /**
+     * The constant INCREMENTAL_DISCOVERY_MAX_AGE_SECONDS.
+     * How long incremental discovery reuses the nodes of an unchanged scale set before listing its instances again
+     */
+    public static final PropertyDefinition INCREMENTAL_DISCOVERY_MAX_AGE_SECONDS = property(
+            "incremental-discovery-max-age-seconds", INTEGER);
+
     private static final int MIN_PORT = 0;
     private static final int MAX_PORT = 65535;
 
@@ -126,7 +345,16 @@ public final class AzureProperties {
         return getOrDefault(property, properties, null);
     }
 
-    private static <T extends Comparable> T getOrDefault(PropertyDefinition property,
+    /**
+     * Returns a Comparable type for the specified property definition in the provided
+     * property map or the given default value if the property is not set
+     *
+     * @param property the PropertyDefinition to use provided by
+     * @param properties the properties map to retrieve the property from
+     * @param defaultValue the value to return if the property is not set
+     * @return the value or defaultValue
+     */
+    public static <T extends Comparable> T getOrDefault(PropertyDefinition property,
       Map<String, Comparable> properties, T defaultValue) {
 
         if (properties == null || property == null) {
@@ -140,4 +368,27 @@ public final class AzureProperties {
 
         return (T) value;
     }
+
+    /**
+     * Returns the values of a property holding a comma separated list, trimmed and without blank
+     * or repeated values
+     *
+     * @param property the PropertyDefinition to use provided by
+     * @param properties the properties map to retrieve the property from
+     * @return the values in the order given, empty if the property is not set
+     */
+    public static List<String> getList(PropertyDefinition property, Map<String, Comparable> properties) {
+        List<String> values = new ArrayList<String>();
+        Comparable value = getOrNull(property, properties);
+        if (value == null) {
+            return values;
+        }
+        for (String item : value.toString().split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.length() > 0 && !values.contains(trimmed)) {
+                values.add(trimmed);
+            }
+        }
+        return values;
+    }
 }
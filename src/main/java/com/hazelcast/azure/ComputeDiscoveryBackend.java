@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.microsoft.azure.PagedList;
+import com.microsoft.azure.management.compute.PowerState;
+import com.microsoft.azure.management.compute.VirtualMachine;
+import com.microsoft.azure.management.compute.VirtualMachineInstanceView;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSet;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSetVM;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMsInner;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.NicIPConfiguration;
+import com.microsoft.azure.management.network.PublicIPAddress;
+import com.microsoft.azure.management.network.VirtualMachineScaleSetNetworkInterface;
+import com.microsoft.azure.management.network.implementation.NetworkManager;
+import com.microsoft.azure.management.resources.implementation.GenericResourceInner;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovers VMs and scale set VMs with the compute management API, following up
+ * with network lookups for the addresses of every running tagged VM. Listings are read
+ * page by page, each page is filtered as it arrives and is not kept once it was read.
+ */
+final class ComputeDiscoveryBackend implements DiscoveryBackend {
+
+    private static final String VIRTUAL_MACHINE_TYPE = "Microsoft.Compute/virtualMachines";
+    private static final String SCALE_SET_TYPE = "Microsoft.Compute/virtualMachineScaleSets";
+
+    private final ComputeManager computeManager;
+    private final NetworkManager networkManager;
+    private final DiscoveryExecutor discoveryExecutor;
+    private final LocalAddressIndex localAddresses;
+    private final boolean batchNetworkLookup;
+    private final boolean bulkInstanceView;
+    private final boolean powerSummary;
+    private final boolean serverSideTagFilter;
+    private final ScaleSetNodeCache scaleSetNodes;
+
+    private volatile Integer localFaultDomain;
+
+    /**
+     * Creates a new compute backend
+     *
+     * @param computeManager the compute client
+     * @param discoveryExecutor the executor running the listings
+     * @param localAddresses the addresses identifying the local VM
+     * @param properties the discovery strategy properties selecting the listing modes
+     */
+    ComputeDiscoveryBackend(ComputeManager computeManager, DiscoveryExecutor discoveryExecutor,
+                            LocalAddressIndex localAddresses, Map<String, Comparable> properties) {
+        this.computeManager = computeManager;
+        this.discoveryExecutor = discoveryExecutor;
+        this.localAddresses = localAddresses;
+        this.batchNetworkLookup = AzureProperties.getOrDefault(AzureProperties.BATCH_NETWORK_LOOKUP, properties, false);
+        this.bulkInstanceView = AzureProperties.getOrDefault(AzureProperties.BULK_INSTANCE_VIEW, properties, false);
+        this.powerSummary = AzureProperties.getOrDefault(AzureProperties.SCALE_SET_POWER_SUMMARY, properties, false);
+        this.serverSideTagFilter = AzureProperties.getOrDefault(AzureProperties.SERVER_SIDE_TAG_FILTER, properties, false);
+        this.scaleSetNodes = AzureProperties.getOrDefault(AzureProperties.INCREMENTAL_DISCOVERY, properties, false)
+                ? new ScaleSetNodeCache(TimeUnit.SECONDS.toMillis(AzureProperties.getOrDefault(
+                AzureProperties.INCREMENTAL_DISCOVERY_MAX_AGE_SECONDS, properties,
+                ScaleSetNodeCache.DEFAULT_MAX_AGE_SECONDS))) : null;
+        this.networkManager = batchNetworkLookup && computeManager != null
+                ? AzureClientHelper.getNetworkManager(computeManager) : null;
+    }
+
+    @Override
+    public List<DiscoveryNode> discoverNodes(final String resourceGroup, final String clusterId) throws Exception {
+        if (serverSideTagFilter) {
+            return discoverTaggedResources(resourceGroup, clusterId);
+        }
+        List<Callable<List<DiscoveryNode>>> listings = new ArrayList<Callable<List<DiscoveryNode>>>(2);
+        listings.add(new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                return discoverVMs(resourceGroup, clusterId);
+            }
+        });
+        listings.add(new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                return discoverScaleSetVMs(resourceGroup, clusterId);
+            }
+        });
+        return discoveryExecutor.fanOut(listings);
+    }
+
+    @Override
+    public Integer localFaultDomain() {
+        return localFaultDomain;
+    }
+
+    @Override
+    public void invalidate(String resourceId) {
+        if (scaleSetNodes != null) {
+            scaleSetNodes.invalidate(resourceId);
+        }
+    }
+
+    private List<DiscoveryNode> discoverScaleSetVMs(String resourceGroup, String clusterId) throws Exception {
+        PagedList<VirtualMachineScaleSet> scaleSets = computeManager.virtualMachineScaleSets()
+                .listByResourceGroup(resourceGroup);
+        List<Callable<List<DiscoveryNode>>> listings = new ArrayList<Callable<List<DiscoveryNode>>>();
+        List<String> scaleSetIds = new ArrayList<String>();
+
+        for (final VirtualMachineScaleSet scaleSet : PageStream.of(scaleSets)) {
+            Map<String, String> tags = scaleSet.tags();
+            // a tag is required with the hazelcast clusterid
+            // and the value should be the port number
+            if (tags.get(clusterId) == null) {
+                continue;
+            }
+            final int port = Integer.parseInt(tags.get(clusterId));
+            scaleSetIds.add(scaleSet.id());
+
+            listings.add(new Callable<List<DiscoveryNode>>() {
+                @Override
+                public List<DiscoveryNode> call() throws Exception {
+                    return discoverScaleSetVMs(scaleSet, port);
+                }
+            });
+        }
+        retainScaleSets(scaleSetIds);
+        return discoveryExecutor.fanOut(listings);
+    }
+
+    /**
+     * In incremental mode the instances of a scale set are only listed again when its capacity or
+     * provisioning state changed, otherwise the nodes of the previous cycle are reused
+     */
+    private List<DiscoveryNode> discoverScaleSetVMs(VirtualMachineScaleSet scaleSet, int port)
+            throws UnknownHostException {
+        if (scaleSetNodes == null) {
+            return listScaleSetVMs(scaleSet, port);
+        }
+        List<DiscoveryNode> nodes = scaleSetNodes.get(scaleSet, port);
+        if (nodes == null) {
+            nodes = listScaleSetVMs(scaleSet, port);
+            scaleSetNodes.put(scaleSet, port, nodes);
+        }
+        return nodes;
+    }
+
+    private void retainScaleSets(List<String> scaleSetIds) {
+        if (scaleSetNodes != null) {
+            scaleSetNodes.retainAll(scaleSetIds);
+        }
+    }
+
+    private List<DiscoveryNode> listScaleSetVMs(VirtualMachineScaleSet scaleSet, int port)
+            throws UnknownHostException {
+        if (powerSummary || bulkInstanceView) {
+            return discoverExpandedScaleSetVMs(scaleSet, port, readPowerSummary(scaleSet));
+        }
+        PagedList<VirtualMachineScaleSetVM> vms = scaleSet.virtualMachines().list();
+        ArrayList<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+        ScaleSetNetworkInterfaceIndex networkInterfaces = null;
+        String zone = NodeLocation.zone(scaleSet.availabilityZones());
+
+        for (VirtualMachineScaleSetVM vm : PageStream.of(vms)) {
+            if (!PowerState.RUNNING.equals(vm.powerState())) {
+                continue;
+            }
+
+            VirtualMachineScaleSetNetworkInterface networkInterface = null;
+            if (batchNetworkLookup) {
+                if (networkInterfaces == null) {
+                    networkInterfaces = ScaleSetNetworkInterfaceIndex.of(scaleSet);
+                }
+                networkInterface = networkInterfaces.primaryOf(vm);
+            }
+            if (networkInterface == null) {
+                networkInterface = ScaleSetNetworkInterfaceIndex.lookUpPrimary(vm);
+            }
+            if (networkInterface != null) {
+                nodes.add(buildDiscoveryNode(port, vm, networkInterface, zone));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Lists the scale set VMs with their instance views expanded, so power state and fault domain
+     * come with the listing instead of one instance view request per VM. With the power summary, a scale set
+     * without running instances is not listed at all, and one running all of them is listed without the
+     * instance views, leaving the fault domains of its VMs but the local one unknown.
+     */
+    private List<DiscoveryNode> discoverExpandedScaleSetVMs(VirtualMachineScaleSet scaleSet, int port,
+                                                            ScaleSetPowerSummary summary) throws UnknownHostException {
+        if (summary == ScaleSetPowerSummary.NONE_RUNNING) {
+            return new ArrayList<DiscoveryNode>();
+        }
+        VirtualMachineScaleSetVMsInner client = scaleSet.virtualMachines().inner();
+        PagedList<VirtualMachineScaleSetVMInner> vms = summary.listVMs(client, scaleSet);
+        ArrayList<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+        ScaleSetNetworkInterfaceIndex networkInterfaces = null;
+        String zone = NodeLocation.zone(scaleSet.availabilityZones());
+
+        for (VirtualMachineScaleSetVMInner vm : PageStream.of(vms)) {
+            InstanceState state = summary.instanceState(client, scaleSet, vm);
+            if (!state.isRunning()) {
+                continue;
+            }
+
+            String primaryNetworkInterfaceId = ScaleSetNetworkInterfaceIndex.primaryNetworkInterfaceId(vm.networkProfile());
+            VirtualMachineScaleSetNetworkInterface networkInterface = null;
+            if (batchNetworkLookup) {
+                if (networkInterfaces == null) {
+                    networkInterfaces = ScaleSetNetworkInterfaceIndex.of(scaleSet);
+                }
+                networkInterface = networkInterfaces.primaryOf(vm.id(), primaryNetworkInterfaceId);
+            }
+            if (networkInterface == null) {
+                networkInterface = ScaleSetNetworkInterfaceIndex.of(scaleSet.listNetworkInterfacesByInstanceId(
+                        vm.instanceId())).primaryOf(vm.id(), primaryNetworkInterfaceId);
+            }
+            if (networkInterface != null) {
+                String privateIP = networkInterface.primaryPrivateIP();
+                nodes.add(buildDiscoveryNode(port, privateIP, zone, ScaleSetPowerSummary.faultDomain(client, scaleSet, vm,
+                        state, localAddresses.contains(privateIP))));
+            }
+        }
+        return nodes;
+    }
+
+    private ScaleSetPowerSummary readPowerSummary(VirtualMachineScaleSet scaleSet) {
+        return powerSummary ? ScaleSetPowerSummary.of(computeManager, scaleSet) : ScaleSetPowerSummary.UNKNOWN;
+    }
+
+    private List<DiscoveryNode> discoverVMs(String resourceGroup, String clusterId) throws UnknownHostException {
+        PagedList<VirtualMachine> virtualMachines = computeManager.virtualMachines().listByResourceGroup(resourceGroup);
+        ArrayList<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+        ResourceGroupNetworkIndex networkIndex = null;
+
+        for (VirtualMachine vm : PageStream.of(virtualMachines)) {
+            Map<String, String> tags = vm.tags();
+            // a tag is required with the hazelcast clusterid
+            // and the value should be the port number
+            if (tags.get(clusterId) == null) {
+                continue;
+            }
+
+            VirtualMachineInstanceView listedInstanceView = listedInstanceView(vm);
+            if (!isRunning(vm, listedInstanceView)) {
+                continue;
+            }
+
+            int port = Integer.parseInt(tags.get(clusterId));
+            if (batchNetworkLookup && networkIndex == null) {
+                networkIndex = ResourceGroupNetworkIndex.of(networkManager, resourceGroup);
+            }
+            DiscoveryNode node = discoverVM(vm, listedInstanceView, port, networkIndex);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private DiscoveryNode discoverVM(VirtualMachine vm, VirtualMachineInstanceView listedInstanceView, int port,
+                                     ResourceGroupNetworkIndex networkIndex) throws UnknownHostException {
+        // the power state check already loaded the instance view
+        VirtualMachineInstanceView instanceView = listedInstanceView != null ? listedInstanceView : vm.instanceView();
+        Integer faultDomain = instanceView == null ? null : instanceView.platformFaultDomain();
+        DiscoveryNode node = buildDiscoveryNode(vm, port, networkIndex,
+                NodeLocation.zone(vm.availabilityZones()), faultDomain);
+        if (node != null && isLocalNode(node)) {
+            updateVirtualMachineMetaData(faultDomain);
+        }
+        return node;
+    }
+
+    /**
+     * Lists only the resources carrying the cluster id tag with one filtered ARM call, then loads
+     * the matching VMs and scale sets by id instead of listing every VM and scale set of the group
+     */
+    private List<DiscoveryNode> discoverTaggedResources(String resourceGroup, String clusterId) throws Exception {
+        PagedList<GenericResourceInner> resources = computeManager.resourceManager().inner().resources()
+                .listByResourceGroup(resourceGroup, tagFilter(clusterId), null, null);
+        List<GenericResourceInner> vms = new ArrayList<GenericResourceInner>();
+        List<GenericResourceInner> scaleSets = new ArrayList<GenericResourceInner>();
+        for (GenericResourceInner resource : PageStream.of(resources)) {
+            if (port(resource, clusterId) == null) {
+                continue;
+            }
+            if (VIRTUAL_MACHINE_TYPE.equalsIgnoreCase(resource.type())) {
+                vms.add(resource);
+            } else if (SCALE_SET_TYPE.equalsIgnoreCase(resource.type())) {
+                scaleSets.add(resource);
+            }
+        }
+
+        ResourceGroupNetworkIndex networkIndex = batchNetworkLookup && !vms.isEmpty()
+                ? ResourceGroupNetworkIndex.of(networkManager, resourceGroup) : null;
+        // standalone VMs come first, as with the unfiltered listing
+        List<Callable<List<DiscoveryNode>>> lookups = new ArrayList<Callable<List<DiscoveryNode>>>();
+        for (GenericResourceInner vm : vms) {
+            lookups.add(vmLookup(vm.id(), port(vm, clusterId), networkIndex));
+        }
+        lookups.addAll(scaleSetListings(scaleSets, clusterId));
+        return discoveryExecutor.fanOut(lookups);
+    }
+
+    private List<Callable<List<DiscoveryNode>>> scaleSetListings(List<GenericResourceInner> scaleSets, String clusterId) {
+        List<Callable<List<DiscoveryNode>>> listings = new ArrayList<Callable<List<DiscoveryNode>>>(scaleSets.size());
+        List<String> scaleSetIds = new ArrayList<String>(scaleSets.size());
+        for (GenericResourceInner scaleSet : scaleSets) {
+            scaleSetIds.add(scaleSet.id());
+            listings.add(scaleSetListing(scaleSet.id(), port(scaleSet, clusterId)));
+        }
+        retainScaleSets(scaleSetIds);
+        return listings;
+    }
+
+    private static Integer port(GenericResourceInner resource, String clusterId) {
+        Map<String, String> tags = resource.getTags();
+        String port = tags == null ? null : tags.get(clusterId);
+        return port == null ? null : Integer.valueOf(port);
+    }
+
+    private Callable<List<DiscoveryNode>> vmLookup(final String id, final int port,
+                                                   final ResourceGroupNetworkIndex networkIndex) {
+        return new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                VirtualMachine vm = computeManager.virtualMachines().getById(id);
+                if (vm == null) {
+                    return Collections.emptyList();
+                }
+                VirtualMachineInstanceView listedInstanceView = listedInstanceView(vm);
+                if (!isRunning(vm, listedInstanceView)) {
+                    return Collections.emptyList();
+                }
+                DiscoveryNode node = discoverVM(vm, listedInstanceView, port, networkIndex);
+                return node == null ? Collections.<DiscoveryNode>emptyList() : Collections.singletonList(node);
+            }
+        };
+    }
+
+    private Callable<List<DiscoveryNode>> scaleSetListing(final String id, final int port) {
+        return new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                VirtualMachineScaleSet scaleSet = computeManager.virtualMachineScaleSets().getById(id);
+                if (scaleSet == null) {
+                    return Collections.emptyList();
+                }
+                return discoverScaleSetVMs(scaleSet, port);
+            }
+        };
+    }
+
+    /**
+     * ARM cannot combine a tag filter with other predicates, so the resource type is checked on the client
+     *
+     * @param clusterId the tag name
+     * @return the OData filter matching resources with the tag
+     */
+    static String tagFilter(String clusterId) {
+        return "tagName eq '" + clusterId.replace("'", "''") + "'";
+    }
+
+    /**
+     * With bulk instance views the listing may already carry the state,
+     * otherwise the instance view is fetched (and cached by the SDK) per VM
+     */
+    private VirtualMachineInstanceView listedInstanceView(VirtualMachine vm) {
+        if (!bulkInstanceView || vm.inner() == null) {
+            return null;
+        }
+        return vm.inner().instanceView();
+    }
+
+    private static boolean isRunning(VirtualMachine vm, VirtualMachineInstanceView listedInstanceView) {
+        if (listedInstanceView != null) {
+            return InstanceState.of(listedInstanceView).isRunning();
+        }
+        return PowerState.RUNNING.equals(vm.powerState());
+    }
+
+
+    private DiscoveryNode buildDiscoveryNode(int port, VirtualMachineScaleSetVM vm,
+                                             VirtualMachineScaleSetNetworkInterface networkInterface, String zone)
+            throws UnknownHostException {
+        // the power state check already loaded the instance view
+        VirtualMachineInstanceView instanceView = vm.instanceView();
+        Integer faultDomainId = instanceView == null ? null : instanceView.platformFaultDomain();
+        return buildDiscoveryNode(port, networkInterface.primaryPrivateIP(), zone, faultDomainId);
+    }
+
+    private DiscoveryNode buildDiscoveryNode(int port, String privateIP, String zone, Integer faultDomainId)
+            throws UnknownHostException {
+        if (localAddresses.contains(privateIP)) {
+            updateVirtualMachineMetaData(faultDomainId);
+        }
+        return NodeLocation.node(new Address(privateIP, port), null, zone, faultDomainId);
+    }
+
+    /**
+     * Builds a discovery node
+     *
+     * @param vm
+     * @param port
+     * @param networkIndex the network resources listed for this cycle, null to look them up per VM
+     * @param zone the availability zone of the VM, null if it is not zonal
+     * @param faultDomain the platform fault domain of the VM, null if unknown
+     * @return DiscoveryNode the Hazelcast DiscoveryNode
+     */
+    private DiscoveryNode buildDiscoveryNode(VirtualMachine vm, int port, ResourceGroupNetworkIndex networkIndex,
+                                             String zone, Integer faultDomain) throws UnknownHostException {
+        NetworkInterface networkInterface = null;
+        if (networkIndex != null) {
+            networkInterface = networkIndex.networkInterface(vm.primaryNetworkInterfaceId());
+        }
+        if (networkInterface == null) {
+            networkInterface = vm.getPrimaryNetworkInterface();
+        }
+        for (NicIPConfiguration ipConfiguration : networkInterface.ipConfigurations().values()) {
+            PublicIPAddress publicIPAddress = getPublicIPAddress(ipConfiguration, networkIndex);
+            Address privateAddress = new Address(ipConfiguration.privateIPAddress(), port);
+            if (publicIPAddress != null) {
+                Address publicAddress = new Address(publicIPAddress.ipAddress(), port);
+                return NodeLocation.node(privateAddress, publicAddress, zone, faultDomain);
+            }
+            //In private address there is no host name so we are passing null.
+            return NodeLocation.node(privateAddress, null, zone, faultDomain);
+        }
+
+        // no node found;
+        return null;
+    }
+
+    private boolean isLocalNode(DiscoveryNode node) {
+        Address publicAddress = node.getPublicAddress();
+        return localAddresses.contains(node.getPrivateAddress().getHost())
+                || (publicAddress != null && localAddresses.contains(publicAddress.getHost()));
+    }
+
+    private PublicIPAddress getPublicIPAddress(NicIPConfiguration ipConfiguration, ResourceGroupNetworkIndex networkIndex) {
+        if (networkIndex != null) {
+            String publicIPAddressId = ipConfiguration.publicIPAddressId();
+            if (publicIPAddressId == null) {
+                return null;
+            }
+            PublicIPAddress publicIPAddress = networkIndex.publicIPAddress(publicIPAddressId);
+            if (publicIPAddress != null) {
+                return publicIPAddress;
+            }
+        }
+        return ipConfiguration.getPublicIPAddress();
+    }
+
+
+    private void updateVirtualMachineMetaData(Integer faultDomain) {
+        if (faultDomain != null) {
+            localFaultDomain = faultDomain;
+        }
+    }
+}
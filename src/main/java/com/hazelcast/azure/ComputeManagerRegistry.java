@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Shares one authenticated {@link ComputeManager}, with its HTTP stack and token cache, between
+ * all discovery strategies of the JVM that use the same subscription and credentials.
+ * Clients are reference counted, the last release drops the client and stops its token refresh.
+ */
+final class ComputeManagerRegistry {
+
+    /**
+     * Creates the client for a new registry entry
+     */
+    interface ClientFactory {
+
+        /**
+         * Authenticates a new compute client
+         *
+         * @param credentials the credentials the client authenticates with
+         * @param subscriptionId the subscription of the client
+         * @param transport the HTTP transport of the client
+         * @return the client
+         */
+        ComputeManager create(AzureTokenCredentials credentials, String subscriptionId, ArmHttpTransport transport);
+    }
+
+    private static final ComputeManagerRegistry INSTANCE = new ComputeManagerRegistry(new ClientFactory() {
+        @Override
+        public ComputeManager create(AzureTokenCredentials credentials, String subscriptionId,
+                                     ArmHttpTransport transport) {
+            return ComputeManager.authenticate(transport.restClient(credentials), subscriptionId);
+        }
+    });
+
+    private final ClientFactory clientFactory;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<ComputeManager, Entry> entriesByClient = new IdentityHashMap<ComputeManager, Entry>();
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Creates a new registry
+     *
+     * @param clientFactory the factory authenticating new clients
+     */
+    ComputeManagerRegistry(ClientFactory clientFactory) {
+        this.clientFactory = clientFactory;
+    }
+
+    /**
+     * @return the registry shared by the JVM
+     */
+    static ComputeManagerRegistry instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the client for the given identity, creating it on first use
+     *
+     * @param key the subscription, credential identity and transport settings the client is shared by
+     * @param subscriptionId the subscription of the client
+     * @param transportFactory creates the HTTP transport, only called if the client is created
+     * @param credentialsFactory creates the credentials, called again for every token refresh
+     * @return the shared client, to be handed back with {@link #release(ComputeManager)}
+     * @throws Exception if the credentials could not be created
+     */
+    synchronized ComputeManager acquire(String key, String subscriptionId, Callable<ArmHttpTransport> transportFactory,
+                                        Callable<AzureTokenCredentials> credentialsFactory) throws Exception {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            ArmHttpTransport transport = transportFactory.call();
+            RefreshingTokenCredentials credentials = new RefreshingTokenCredentials(credentialsFactory.call(),
+                    credentialsFactory, scheduler());
+            entry = new Entry(key, clientFactory.create(credentials, subscriptionId, transport), credentials, transport);
+            // the first discovery should not wait on the identity endpoint either
+            credentials.prefetch(credentials.environment().managementEndpoint());
+            entries.put(key, entry);
+            entriesByClient.put(entry.computeManager, entry);
+        }
+        entry.references++;
+        return entry.computeManager;
+    }
+
+    /**
+     * Hands back a client returned by {@link #acquire(String, String, Callable, Callable)}
+     *
+     * @param computeManager the client, ignored if it is not owned by this registry
+     */
+    synchronized void release(ComputeManager computeManager) {
+        Entry entry = entriesByClient.get(computeManager);
+        if (entry == null || --entry.references > 0) {
+            return;
+        }
+        entries.remove(entry.key);
+        entriesByClient.remove(computeManager);
+        entry.credentials.close();
+        entry.transport.close();
+        if (entries.isEmpty() && scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the HTTP transport of a client returned by {@link #acquire(String, String, Callable, Callable)}
+     *
+     * @param computeManager the client
+     * @return the transport or null if the client is not owned by this registry
+     */
+    synchronized ArmHttpTransport transport(ComputeManager computeManager) {
+        Entry entry = entriesByClient.get(computeManager);
+        return entry == null ? null : entry.transport;
+    }
+
+    /**
+     * @return the number of shared clients
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("hz-azure-token-refresh"));
+        }
+        return scheduler;
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final ComputeManager computeManager;
+        private final RefreshingTokenCredentials credentials;
+        private final ArmHttpTransport transport;
+        private int references;
+
+        private Entry(String key, ComputeManager computeManager, RefreshingTokenCredentials credentials,
+                      ArmHttpTransport transport) {
+            this.key = key;
+            this.computeManager = computeManager;
+            this.credentials = credentials;
+            this.transport = transport;
+        }
+    }
+}
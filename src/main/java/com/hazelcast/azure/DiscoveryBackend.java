@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.List;
+
+/**
+ * Source of the running, tagged VMs of a resource group
+ */
+interface DiscoveryBackend {
+
+    /**
+     * The value of {@link AzureProperties#DISCOVERY_BACKEND} selecting {@link ComputeDiscoveryBackend}
+     */
+    String COMPUTE = "compute";
+
+    /**
+     * The value of {@link AzureProperties#DISCOVERY_BACKEND} selecting {@link ResourceGraphDiscoveryBackend}
+     */
+    String RESOURCE_GRAPH = "resource-graph";
+
+    /**
+     * The value of {@link AzureProperties#DISCOVERY_BACKEND} selecting {@link AsyncComputeDiscoveryBackend}
+     */
+    String COMPUTE_ASYNC = "compute-async";
+
+    /**
+     * Lists the running VMs and scale set VMs of the resource group that carry the cluster id tag
+     *
+     * @param resourceGroup the resource group name
+     * @param clusterId the tag name whose value is the Hazelcast port
+     * @return the discovered nodes
+     * @throws Exception if the listing failed
+     */
+    List<DiscoveryNode> discoverNodes(String resourceGroup, String clusterId) throws Exception;
+
+    /**
+     * Returns the fault domain of the local VM found by the last successful discovery
+     *
+     * @return the fault domain or null if the local VM was not discovered
+     */
+    Integer localFaultDomain();
+
+    /**
+     * Forgets what earlier discoveries kept about a resource that changed, so the next one reads it again
+     *
+     * @param resourceId the id of the changed VM, scale set, scale set VM or network resource
+     */
+    void invalidate(String resourceId);
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs independent ARM listings on a bounded pool and merges their results in submission order.
+ * The calling thread helps out by running any task no pool thread has picked up yet, so nested
+ * fan-outs cannot deadlock and a concurrency of 1 simply runs everything inline.
+ */
+final class DiscoveryExecutor {
+
+    private static final ILogger LOGGER = Logger.getLogger(DiscoveryExecutor.class);
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new executor
+     *
+     * @param concurrency the maximum number of pool threads, values below 2 disable the pool
+     */
+    DiscoveryExecutor(int concurrency) {
+        if (concurrency > 1) {
+            executor = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("hz-azure-discovery"));
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Runs all tasks and concatenates their results in the order the tasks were given
+     *
+     * @param tasks the listings to run
+     * @return the merged results
+     * @throws Exception the failure of the first failed task
+     */
+    <T> List<T> fanOut(List<? extends Callable<List<T>>> tasks) throws Exception {
+        List<FutureTask<List<T>>> futures = new ArrayList<FutureTask<List<T>>>(tasks.size());
+        for (Callable<List<T>> task : tasks) {
+            FutureTask<List<T>> future = new FutureTask<List<T>>(task);
+            futures.add(future);
+            submit(future);
+        }
+
+        List<T> merged = new ArrayList<T>();
+        for (FutureTask<List<T>> future : futures) {
+            // no-op if a pool thread already ran or is running the task
+            future.run();
+            try {
+                merged.addAll(future.get());
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Stops the pool threads
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(Runnable task) {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // the calling thread runs the task while collecting results
+            LOGGER.finest("Discovery task rejected, running it on the calling thread", e);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the discoveries of a strategy and combines them with the cache statistics and the ARM call
+ * latencies of its client. Recording is lock free, the statistics are only assembled when read.
+ */
+final class DiscoveryMetrics implements DiscoveryMetricsMXBean {
+
+    static final String DOMAIN = "com.hazelcast.azure";
+
+    private static final ILogger LOGGER = Logger.getLogger(DiscoveryMetrics.class);
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final LatencyRecorder discoveryLatency = new LatencyRecorder();
+    private final AtomicLong discoveries = new AtomicLong();
+    private volatile long lastSuccessTime;
+    private volatile int discoveredNodes;
+    private volatile DiscoveryNodeCache cache;
+    private volatile ArmCallMetrics callMetrics;
+    private ObjectName objectName;
+
+    /**
+     * Records a successful discovery
+     *
+     * @param nodes the number of discovered nodes
+     * @param nanos the duration of the discovery
+     */
+    void discovered(int nodes, long nanos) {
+        discoveryLatency.record(nanos, false);
+        discoveries.incrementAndGet();
+        discoveredNodes = nodes;
+        lastSuccessTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a failed discovery
+     *
+     * @param nanos the duration of the discovery
+     */
+    void failed(long nanos) {
+        discoveryLatency.record(nanos, true);
+    }
+
+    /**
+     * Records the discovery run by every subscription to an asynchronous discovery
+     *
+     * @param discovery the discovered nodes
+     * @return the discovered nodes, recorded when they are complete or failed
+     */
+    Observable<DiscoveryNode> record(final Observable<DiscoveryNode> discovery) {
+        return Observable.defer(new Func0<Observable<DiscoveryNode>>() {
+            @Override
+            public Observable<DiscoveryNode> call() {
+                final long start = System.nanoTime();
+                final AtomicInteger nodes = new AtomicInteger();
+                return discovery.doOnNext(new Action1<DiscoveryNode>() {
+                    @Override
+                    public void call(DiscoveryNode node) {
+                        nodes.incrementAndGet();
+                    }
+                }).doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        discovered(nodes.get(), System.nanoTime() - start);
+                    }
+                }).doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable e) {
+                        failed(System.nanoTime() - start);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param cache the discovery cache whose hits are reported, null without cache
+     */
+    void cache(DiscoveryNodeCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param callMetrics the ARM call latencies of the client, null if they are not recorded
+     */
+    void callMetrics(ArmCallMetrics callMetrics) {
+        this.callMetrics = callMetrics;
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server, failures are logged and otherwise ignored
+     *
+     * @param clusterId the cluster id the strategy discovers, to tell the strategies of a JVM apart
+     */
+    synchronized void register(String clusterId) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Discovery,cluster=" + ObjectName.quote(String.valueOf(clusterId))
+                    + ",instance=" + INSTANCES.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            LOGGER.warning("Failed to register the Azure discovery metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server if they were registered
+     */
+    synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.finest("Failed to unregister the Azure discovery metrics", e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return the name these metrics are registered under, null if they are not registered
+     */
+    synchronized ObjectName objectName() {
+        return objectName;
+    }
+
+    @Override
+    public long getDiscoveries() {
+        return discoveries.get();
+    }
+
+    @Override
+    public long getFailedDiscoveries() {
+        return discoveryLatency.count() - discoveries.get();
+    }
+
+    @Override
+    public long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+
+    @Override
+    public int getDiscoveredNodes() {
+        return discoveredNodes;
+    }
+
+    @Override
+    public LatencyStatistics getDiscoveryLatency() {
+        return discoveryLatency.statistics();
+    }
+
+    @Override
+    public long getCacheHits() {
+        DiscoveryNodeCache current = cache;
+        return current == null ? 0 : current.hits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        DiscoveryNodeCache current = cache;
+        return current == null ? 0 : current.misses();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = getCacheHits();
+        long total = hits + getCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getThrottledCalls() {
+        ArmCallMetrics current = callMetrics;
+        return current == null ? 0 : current.throttledCalls();
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getPhases() {
+        ArmCallMetrics current = callMetrics;
+        return current == null ? Collections.<String, LatencyStatistics>emptyMap() : current.phases();
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getOperations() {
+        ArmCallMetrics current = callMetrics;
+        return current == null ? Collections.<String, LatencyStatistics>emptyMap() : current.operations();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import java.util.Map;
+
+/**
+ * Discovery metrics of an {@link AzureDiscoveryStrategy}, registered in the platform MBean server
+ * when {@link AzureProperties#JMX_METRICS} is enabled.
+ * <p>
+ * ARM calls are counted by the client shared by all strategies with the same subscription and credentials.
+ */
+public interface DiscoveryMetricsMXBean {
+
+    /**
+     * @return the number of successful discoveries
+     */
+    long getDiscoveries();
+
+    /**
+     * @return the number of discoveries that failed
+     */
+    long getFailedDiscoveries();
+
+    /**
+     * @return the time of the last successful discovery in milliseconds since the epoch, 0 if none
+     */
+    long getLastSuccessTime();
+
+    /**
+     * @return the number of nodes found by the last successful discovery
+     */
+    int getDiscoveredNodes();
+
+    /**
+     * @return the latencies of the discoveries, failed ones included
+     */
+    LatencyStatistics getDiscoveryLatency();
+
+    /**
+     * @return the number of discoveries answered by the discovery cache
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of discoveries the discovery cache had to wait for a scan for
+     */
+    long getCacheMisses();
+
+    /**
+     * @return the share of the discoveries answered by the discovery cache, 0 without cache
+     */
+    double getCacheHitRatio();
+
+    /**
+     * @return the number of ARM calls rejected with HTTP 429
+     */
+    long getThrottledCalls();
+
+    /**
+     * @return the latencies of the ARM calls per discovery phase, such as listing VMs or looking up network interfaces
+     */
+    Map<String, LatencyStatistics> getPhases();
+
+    /**
+     * @return the latencies of the ARM calls per operation, the method and resource path with the names left out
+     */
+    Map<String, LatencyStatistics> getOperations();
+}
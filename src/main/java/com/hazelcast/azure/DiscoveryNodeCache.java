@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the result of a discovery scan for a bounded time.
+ * Once the TTL expires the stale result is still returned while a single background
+ * refresh rebuilds it, so callers only block when nothing has been loaded yet. When no refresh
+ * succeeded for longer than the maximum staleness, {@link #MAX_STALE_TTLS} TTLs by default, the result
+ * is no longer served: callers scan again themselves and get no nodes if that fails too, like without a cache.
+ */
+final class DiscoveryNodeCache {
+
+    /**
+     * How many TTLs a result is served for after the last successful scan
+     */
+    static final int MAX_STALE_TTLS = 5;
+
+    private static final ILogger LOGGER = Logger.getLogger(DiscoveryNodeCache.class);
+
+    private final long ttlMillis;
+    private final long maxStaleMillis;
+    private final Callable<List<DiscoveryNode>> loader;
+    private final Executor refreshExecutor;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicBoolean invalidated = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicBoolean expiredWarned = new AtomicBoolean();
+
+    private volatile List<DiscoveryNode> nodes;
+    private volatile long loadedAt;
+    // unlike loadedAt never reset by an invalidation
+    private volatile long succeededAt;
+
+    /**
+     * Creates a new cache
+     *
+     * @param ttlMillis how long a loaded result is considered fresh
+     * @param loader the scan to run, returning null when discovery failed
+     * @param refreshExecutor the executor running background refreshes
+     */
+    DiscoveryNodeCache(long ttlMillis, Callable<List<DiscoveryNode>> loader, Executor refreshExecutor) {
+        this(ttlMillis, ttlMillis * MAX_STALE_TTLS, loader, refreshExecutor);
+    }
+
+    /**
+     * Creates a new cache
+     *
+     * @param ttlMillis how long a loaded result is considered fresh
+     * @param maxStaleMillis how long a result is served after the last successful scan
+     * @param loader the scan to run, returning null when discovery failed
+     * @param refreshExecutor the executor running background refreshes
+     */
+    DiscoveryNodeCache(long ttlMillis, long maxStaleMillis, Callable<List<DiscoveryNode>> loader,
+                       Executor refreshExecutor) {
+        this.ttlMillis = ttlMillis;
+        this.maxStaleMillis = maxStaleMillis;
+        this.loader = loader;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the cached nodes, loading them on the calling thread only if nothing was cached yet
+     *
+     * @return the discovered nodes or null if no scan succeeded within the maximum staleness
+     */
+    List<DiscoveryNode> get() {
+        List<DiscoveryNode> cached = nodes;
+        if (cached == null) {
+            misses.incrementAndGet();
+            return load();
+        }
+        long now = System.currentTimeMillis();
+        if (now - succeededAt > maxStaleMillis) {
+            misses.incrementAndGet();
+            return loadExpired(now);
+        }
+        hits.incrementAndGet();
+        if (now - loadedAt >= ttlMillis) {
+            scheduleRefresh();
+        }
+        return cached;
+    }
+
+    /**
+     * @return the number of calls answered from the cache, stale results included
+     */
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of calls that waited for a scan because nothing was cached
+     */
+    long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Serves the given nodes until the first load completed, which starts on the next get
+     *
+     * @param seed the nodes to serve meanwhile
+     */
+    void seed(List<DiscoveryNode> seed) {
+        loadedAt = 0;
+        succeededAt = System.currentTimeMillis();
+        nodes = Collections.unmodifiableList(seed);
+    }
+
+    /**
+     * Stores nodes discovered outside the cache as a fresh load
+     *
+     * @param loaded the discovered nodes
+     */
+    void put(List<DiscoveryNode> loaded) {
+        loadedAt = System.currentTimeMillis();
+        succeededAt = loadedAt;
+        expiredWarned.set(false);
+        nodes = Collections.unmodifiableList(loaded);
+    }
+
+    /**
+     * Marks the cached nodes stale and refreshes them in the background, serving the stale ones meanwhile.
+     * An invalidation during a running refresh starts another one once it completed, since that refresh
+     * may have read the resources before they changed.
+     */
+    void invalidate() {
+        invalidated.set(true);
+        loadedAt = 0;
+        if (nodes != null) {
+            scheduleRefresh();
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        invalidated.set(false);
+                        load();
+                    } finally {
+                        refreshing.set(false);
+                    }
+                    if (invalidated.get()) {
+                        scheduleRefresh();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            LOGGER.finest("Discovery cache refresh rejected", e);
+        }
+    }
+
+    private List<DiscoveryNode> loadExpired(long now) {
+        List<DiscoveryNode> loaded = load();
+        if (loaded != null && succeededAt >= now) {
+            return loaded;
+        }
+        if (expiredWarned.compareAndSet(false, true)) {
+            LOGGER.warning("No discovery scan succeeded for " + (now - succeededAt) + " ms, no longer serving the "
+                    + "cached nodes until one does");
+        }
+        return null;
+    }
+
+    private List<DiscoveryNode> load() {
+        List<DiscoveryNode> loaded;
+        try {
+            loaded = loader.call();
+        } catch (Exception e) {
+            LOGGER.finest("Failed to refresh the discovery cache", e);
+            loaded = null;
+        }
+        if (loaded == null) {
+            // keep serving the last good result
+            return nodes;
+        }
+        List<DiscoveryNode> snapshot = Collections.unmodifiableList(loaded);
+        loadedAt = System.currentTimeMillis();
+        succeededAt = loadedAt;
+        expiredWarned.set(false);
+        nodes = snapshot;
+        return snapshot;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import rx.Observable;
+import rx.functions.Action1;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers the first discovery of a joining member with the first nodes of a streamed discovery.
+ * The discovery is not cancelled once the seeds were found, it continues in the background and
+ * its full list answers the next discovery, so the resource group is listed only once.
+ */
+final class EarlySeeds {
+
+    private static final ILogger LOGGER = Logger.getLogger(EarlySeeds.class);
+
+    private final int count;
+    private final AtomicBoolean pending = new AtomicBoolean(true);
+
+    private volatile Observable<List<DiscoveryNode>> remainder;
+
+    private EarlySeeds(int count) {
+        this.count = count;
+    }
+
+    /**
+     * @param count the number of nodes to return early
+     * @return the early seeds of one strategy
+     */
+    static EarlySeeds of(int count) {
+        return new EarlySeeds(count);
+    }
+
+    /**
+     * Starts the discovery and waits for its first nodes. Only the first call returns seeds.
+     *
+     * @param discovery the streamed discovery, not subscribed yet
+     * @return the first nodes, all of them if fewer were found, or null if the seeds were already
+     * served or the discovery failed before returning them
+     */
+    List<DiscoveryNode> seeds(Observable<DiscoveryNode> discovery) {
+        if (!pending.compareAndSet(true, false)) {
+            return null;
+        }
+        Observable<DiscoveryNode> shared = discovery.cache();
+        Observable<List<DiscoveryNode>> all = shared.toList().cache();
+        all.subscribe(new Action1<List<DiscoveryNode>>() {
+            @Override
+            public void call(List<DiscoveryNode> nodes) {
+                LOGGER.info("Azure Discovery SPI Discovered " + nodes.size() + " nodes");
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable e) {
+                LOGGER.finest("Failed to discover nodes with Azure SPI", e);
+            }
+        });
+        remainder = all;
+        try {
+            List<DiscoveryNode> seeds = shared.take(count).toList().toBlocking().single();
+            LOGGER.info("Azure Discovery SPI returning " + seeds.size() + " early seed nodes");
+            return seeds;
+        } catch (RuntimeException e) {
+            remainder = null;
+            return null;
+        }
+    }
+
+    /**
+     * Waits for the full list of the discovery that returned the seeds. Only the first call after the
+     * seeds were served returns it, later discoveries run as usual.
+     *
+     * @return the discovered nodes or null if no seeds were served or the discovery failed
+     */
+    List<DiscoveryNode> remainder() {
+        Observable<List<DiscoveryNode>> all = remainder;
+        if (all == null) {
+            return null;
+        }
+        remainder = null;
+        try {
+            return all.toBlocking().single();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.microsoft.azure.management.resources.fluentcore.arm.ResourceUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives Azure Event Grid resource notifications over HTTP, so changes of the cluster VMs invalidate the
+ * discovered topology right away instead of waiting for the next poll of Azure Resource Manager.
+ * <p>
+ * An Event Grid subscription on the resource group delivers its events with the Event Grid or the CloudEvents
+ * schema, answered here with the validation handshake of either. The successful writes, deletes and actions
+ * (start, deallocate, ...) of VMs, scale sets, scale set VMs, network interfaces and public IP addresses of the
+ * configured resource groups invalidate what the backend kept about the resource and refresh the cached nodes
+ * in the background, at most once per {@link #MIN_REFRESH_INTERVAL_MILLIS} so a burst of events costs one more
+ * scan. Other events are acknowledged and ignored. Requests must carry the configured key as the {@code key}
+ * query parameter of the subscription endpoint.
+ */
+final class EventGridListener {
+
+    static final String VALIDATION_EVENT = "Microsoft.EventGrid.SubscriptionValidationEvent";
+    static final long MIN_REFRESH_INTERVAL_MILLIS = 5000;
+
+    private static final ILogger LOGGER = Logger.getLogger(EventGridListener.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final List<String> RESOURCE_EVENTS = Arrays.asList("Microsoft.Resources.ResourceWriteSuccess",
+            "Microsoft.Resources.ResourceDeleteSuccess", "Microsoft.Resources.ResourceActionSuccess");
+    private static final List<String> RESOURCE_TYPES = Arrays.asList("/providers/microsoft.compute/virtualmachines/",
+            "/providers/microsoft.compute/virtualmachinescalesets/", "/providers/microsoft.network/networkinterfaces/",
+            "/providers/microsoft.network/publicipaddresses/");
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_UNAUTHORIZED = 401;
+    private static final int HTTP_BAD_METHOD = 405;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] key;
+    private final Set<String> resourceGroups = new LinkedHashSet<String>();
+    private final DiscoveryBackend backend;
+    private final DiscoveryNodeCache nodeCache;
+    private final long minRefreshIntervalMillis;
+    private final HttpServer server;
+    private final ScheduledExecutorService executor;
+
+    // only touched by the listener thread
+    private long nextRefreshAt;
+    private boolean refreshScheduled;
+
+    private EventGridListener(InetSocketAddress address, String key, long minRefreshIntervalMillis,
+                              List<String> resourceGroups, DiscoveryBackend backend, DiscoveryNodeCache nodeCache)
+            throws IOException {
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("An Event Grid key is required");
+        }
+        this.key = key.getBytes(UTF8);
+        this.minRefreshIntervalMillis = minRefreshIntervalMillis;
+        for (String resourceGroup : resourceGroups) {
+            this.resourceGroups.add(resourceGroup.toLowerCase(Locale.ENGLISH));
+        }
+        this.backend = backend;
+        this.nodeCache = nodeCache;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("hz-azure-event-grid"));
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Starts a listener on the given address
+     *
+     * @param address the address to listen on, port 0 for an ephemeral one
+     * @param key the key requests must carry
+     * @param minRefreshIntervalMillis the minimum time between two refreshes of the cached nodes
+     * @param resourceGroups the resource groups whose events are handled
+     * @param backend the backend to invalidate changed resources of
+     * @param nodeCache the cached nodes to refresh on a change, null if nodes are not cached
+     * @return the running listener
+     * @throws IOException if the address cannot be bound
+     */
+    static EventGridListener start(InetSocketAddress address, String key, long minRefreshIntervalMillis,
+                                   List<String> resourceGroups, DiscoveryBackend backend, DiscoveryNodeCache nodeCache)
+            throws IOException {
+        return new EventGridListener(address, key, minRefreshIntervalMillis, resourceGroups, backend, nodeCache);
+    }
+
+    /**
+     * Starts the listener configured by {@link AzureProperties#EVENT_GRID_PORT}
+     *
+     * @param properties the discovery strategy properties
+     * @param backend the backend to invalidate changed resources of
+     * @param nodeCache the cached nodes to refresh on a change, null if nodes are not cached
+     * @return the running listener, null if none is configured, no key is configured, nothing would be invalidated
+     * by the events or the port cannot be bound
+     */
+    static EventGridListener of(Map<String, Comparable> properties, DiscoveryBackend backend,
+                                DiscoveryNodeCache nodeCache) {
+        Integer port = AzureProperties.getOrNull(AzureProperties.EVENT_GRID_PORT, properties);
+        if (port == null) {
+            return null;
+        }
+        String key = AzureProperties.getOrNull(AzureProperties.EVENT_GRID_KEY, properties);
+        if (key == null || key.trim().length() == 0) {
+            LOGGER.warning("Not listening for Event Grid notifications on port " + port + " without an event-grid-key");
+            return null;
+        }
+        if (nodeCache == null && !AzureProperties.getOrDefault(AzureProperties.INCREMENTAL_DISCOVERY, properties, false)) {
+            LOGGER.warning("Not listening for Event Grid notifications on port " + port
+                    + ", neither discovery-cache-ttl-seconds nor incremental-discovery is configured");
+            return null;
+        }
+        String bindAddress = AzureProperties.getOrNull(AzureProperties.EVENT_GRID_BIND_ADDRESS, properties);
+        try {
+            EventGridListener listener = start(bindAddress == null ? new InetSocketAddress(port)
+                            : new InetSocketAddress(bindAddress, port), key, MIN_REFRESH_INTERVAL_MILLIS,
+                    AzureProperties.getList(AzureProperties.GROUP_NAME, properties), backend, nodeCache);
+            LOGGER.info("Azure Discovery SPI listening for Event Grid notifications on port " + listener.port());
+            return listener;
+        } catch (IOException e) {
+            LOGGER.warning("Failed to listen for Event Grid notifications on port " + port + ", relying on polling", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the address the listener is bound to
+     */
+    InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return the port the listener is bound to
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops listening
+     */
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        if (!MessageDigest.isEqual(key, queryKey(exchange))) {
+            send(exchange, HTTP_UNAUTHORIZED, null);
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        if ("OPTIONS".equals(method)) {
+            // the CloudEvents webhook validation
+            String origin = exchange.getRequestHeaders().getFirst("WebHook-Request-Origin");
+            exchange.getResponseHeaders().add("WebHook-Allowed-Origin", origin == null ? "*" : origin);
+            send(exchange, HTTP_OK, null);
+            return;
+        }
+        if (!"POST".equals(method)) {
+            send(exchange, HTTP_BAD_METHOD, null);
+            return;
+        }
+        JsonNode events = readEvents(exchange);
+        if (events == null) {
+            send(exchange, HTTP_BAD_REQUEST, null);
+            return;
+        }
+        send(exchange, HTTP_OK, handle(events));
+    }
+
+    /**
+     * @return the events of an Event Grid batch or a single CloudEvent, null if the body holds neither
+     */
+    private JsonNode readEvents(HttpExchange exchange) {
+        JsonNode events;
+        try {
+            events = objectMapper.readTree(exchange.getRequestBody());
+        } catch (IOException e) {
+            return null;
+        }
+        if (events == null || events.isArray()) {
+            return events;
+        }
+        return events.isObject() ? objectMapper.createArrayNode().add(events) : null;
+    }
+
+    /**
+     * @return the validation response if the events hold a validation event, otherwise null
+     */
+    private String handle(JsonNode events) throws IOException {
+        List<String> changed = new ArrayList<String>();
+        for (JsonNode event : events) {
+            String type = event.has("eventType") ? event.path("eventType").asText() : event.path("type").asText();
+            if (VALIDATION_EVENT.equals(type)) {
+                ObjectNode response = objectMapper.createObjectNode();
+                response.put("validationResponse", event.path("data").path("validationCode").asText());
+                return objectMapper.writeValueAsString(response);
+            }
+            String resourceId = event.path("subject").asText();
+            if (RESOURCE_EVENTS.contains(type) && isClusterResource(resourceId) && !changed.contains(resourceId)) {
+                changed.add(resourceId);
+            }
+        }
+        if (!changed.isEmpty()) {
+            LOGGER.fine("Event Grid notified changes of " + changed);
+            for (String resourceId : changed) {
+                backend.invalidate(resourceId);
+            }
+            refreshNodes();
+        }
+        return null;
+    }
+
+    /**
+     * Refreshes the cached nodes now, or once the minimum interval since the last refresh passed
+     */
+    private void refreshNodes() {
+        if (nodeCache == null || refreshScheduled) {
+            return;
+        }
+        long delay = nextRefreshAt - System.currentTimeMillis();
+        if (delay <= 0) {
+            refresh();
+            return;
+        }
+        refreshScheduled = true;
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refreshScheduled = false;
+                refresh();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        nextRefreshAt = System.currentTimeMillis() + minRefreshIntervalMillis;
+        nodeCache.invalidate();
+    }
+
+    private boolean isClusterResource(String resourceId) {
+        String id = resourceId.toLowerCase(Locale.ENGLISH);
+        String resourceGroup = ResourceUtils.groupFromResourceId(id);
+        if (resourceGroup == null || !resourceGroups.contains(resourceGroup)) {
+            return false;
+        }
+        for (String resourceType : RESOURCE_TYPES) {
+            if (id.contains(resourceType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] queryKey(HttpExchange exchange) throws UnsupportedEncodingException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("key=")) {
+                    return URLDecoder.decode(parameter.substring("key=".length()), "UTF-8").getBytes(UTF8);
+                }
+            }
+        }
+        return new byte[0];
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(UTF8);
+        if (body != null) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+}
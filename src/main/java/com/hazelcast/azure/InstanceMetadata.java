@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Identity of the local VM as reported by the Azure Instance Metadata Service
+ */
+final class InstanceMetadata {
+
+    private final String vmId;
+    private final String zone;
+    private final String faultDomain;
+    private final String updateDomain;
+    private final List<String> privateIPAddresses;
+
+    /**
+     * Creates a new instance metadata
+     *
+     * @param vmId the unique id of the VM
+     * @param zone the availability zone, null if the VM is not zonal
+     * @param faultDomain the platform fault domain
+     * @param updateDomain the platform update domain
+     * @param privateIPAddresses the private IP addresses of all network interfaces
+     */
+    InstanceMetadata(String vmId, String zone, String faultDomain, String updateDomain,
+                     List<String> privateIPAddresses) {
+        this.vmId = vmId;
+        this.zone = zone;
+        this.faultDomain = faultDomain;
+        this.updateDomain = updateDomain;
+        this.privateIPAddresses = Collections.unmodifiableList(privateIPAddresses);
+    }
+
+    /**
+     * @return the unique id of the VM
+     */
+    String vmId() {
+        return vmId;
+    }
+
+    /**
+     * @return the availability zone, null if the VM is not zonal
+     */
+    String zone() {
+        return zone;
+    }
+
+    /**
+     * @return the platform fault domain, null if unknown
+     */
+    String faultDomain() {
+        return faultDomain;
+    }
+
+    /**
+     * @return the platform update domain, null if unknown
+     */
+    String updateDomain() {
+        return updateDomain;
+    }
+
+    /**
+     * @return the private IP addresses of all network interfaces
+     */
+    List<String> privateIPAddresses() {
+        return privateIPAddresses;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the identity of the local VM with one call to the Azure Instance Metadata Service.
+ * The result is resolved at most once, a failed or missing result is remembered as well
+ * so later calls never go back to the endpoint.
+ */
+final class InstanceMetadataResolver {
+
+    /**
+     * The Instance Metadata Service endpoint reachable from every Azure VM
+     */
+    static final String DEFAULT_ENDPOINT = "http://169.254.169.254/metadata/instance?api-version=2017-12-01";
+
+    private static final ILogger LOGGER = Logger.getLogger(InstanceMetadataResolver.class);
+    private static final int TIMEOUT_MILLIS = 2000;
+    private static final int HTTP_OK = 200;
+
+    private final String endpoint;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private boolean resolved;
+    private InstanceMetadata metadata;
+
+    /**
+     * Creates a new resolver
+     *
+     * @param endpoint the instance metadata URL
+     */
+    InstanceMetadataResolver(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Returns the metadata of the local VM, calling the endpoint on first use only
+     *
+     * @return the metadata or null if the endpoint was not reachable or returned no usable result
+     */
+    synchronized InstanceMetadata resolve() {
+        if (!resolved) {
+            metadata = fetch();
+            resolved = true;
+        }
+        return metadata;
+    }
+
+    private InstanceMetadata fetch() {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(endpoint).openConnection();
+            connection.setRequestProperty("Metadata", "true");
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setUseCaches(false);
+            if (connection.getResponseCode() != HTTP_OK) {
+                LOGGER.finest("Instance metadata endpoint returned " + connection.getResponseCode());
+                return null;
+            }
+            InputStream in = connection.getInputStream();
+            try {
+                return parse(objectMapper.readTree(in));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.finest("Instance metadata endpoint is not available", e);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Reads the instance metadata document
+     *
+     * @param document the parsed response of the instance endpoint
+     * @return the metadata or null if the document carries no compute section
+     */
+    static InstanceMetadata parse(JsonNode document) {
+        JsonNode compute = document.path("compute");
+        if (compute.isMissingNode()) {
+            return null;
+        }
+        List<String> privateIPAddresses = new ArrayList<String>();
+        for (JsonNode networkInterface : document.path("network").path("interface")) {
+            addPrivateIPAddresses(networkInterface.path("ipv4").path("ipAddress"), privateIPAddresses);
+            addPrivateIPAddresses(networkInterface.path("ipv6").path("ipAddress"), privateIPAddresses);
+        }
+        return new InstanceMetadata(text(compute, "vmId"), text(compute, "zone"),
+                text(compute, "platformFaultDomain"), text(compute, "platformUpdateDomain"), privateIPAddresses);
+    }
+
+    private static void addPrivateIPAddresses(JsonNode ipAddresses, List<String> privateIPAddresses) {
+        for (JsonNode ipAddress : ipAddresses) {
+            String privateIPAddress = text(ipAddress, "privateIpAddress");
+            if (privateIPAddress != null) {
+                privateIPAddresses.add(privateIPAddress);
+            }
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        String value = node.path(field).asText();
+        // the service returns empty strings for values that do not apply to the VM
+        return value.length() == 0 ? null : value;
+    }
+}
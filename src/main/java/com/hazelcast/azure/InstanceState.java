@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.management.compute.InstanceViewStatus;
+import com.microsoft.azure.management.compute.PowerState;
+import com.microsoft.azure.management.compute.VirtualMachineInstanceView;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInstanceViewInner;
+
+import java.util.List;
+
+/**
+ * The parts of a VM instance view used by discovery: power state and fault domain
+ */
+final class InstanceState {
+
+    private static final String POWER_STATE_PREFIX = "PowerState/";
+
+    private final PowerState powerState;
+    private final Integer faultDomain;
+
+    /**
+     * Creates a new instance state
+     *
+     * @param powerState the power state, null if unknown
+     * @param faultDomain the platform fault domain, null if unknown
+     */
+    InstanceState(PowerState powerState, Integer faultDomain) {
+        this.powerState = powerState;
+        this.faultDomain = faultDomain;
+    }
+
+    /**
+     * Reads the state from a VM instance view
+     *
+     * @param instanceView the instance view
+     * @return the instance state
+     */
+    static InstanceState of(VirtualMachineInstanceView instanceView) {
+        return new InstanceState(powerState(instanceView.statuses()), instanceView.platformFaultDomain());
+    }
+
+    /**
+     * Reads the state from a scale set VM instance view
+     *
+     * @param instanceView the instance view
+     * @return the instance state
+     */
+    static InstanceState of(VirtualMachineScaleSetVMInstanceViewInner instanceView) {
+        return new InstanceState(powerState(instanceView.statuses()), instanceView.platformFaultDomain());
+    }
+
+    /**
+     * @return true if the VM is running
+     */
+    boolean isRunning() {
+        return PowerState.RUNNING.equals(powerState);
+    }
+
+    /**
+     * @return the platform fault domain, null if unknown
+     */
+    Integer faultDomain() {
+        return faultDomain;
+    }
+
+    private static PowerState powerState(List<InstanceViewStatus> statuses) {
+        if (statuses == null) {
+            return null;
+        }
+        for (InstanceViewStatus status : statuses) {
+            String code = status.code();
+            if (code != null && code.startsWith(POWER_STATE_PREFIX)) {
+                return PowerState.fromString(code);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with power of two microsecond buckets, cheap enough to record
+ * every ARM call and discovery. Percentiles are reported as the upper bound of their bucket,
+ * so they are accurate within a factor of two.
+ */
+final class LatencyRecorder {
+
+    private static final int BUCKETS = 40;
+    private static final double MICROS_PER_MILLI = 1000d;
+    private static final double P50 = 0.5;
+    private static final double P90 = 0.9;
+    private static final double P99 = 0.99;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records one call
+     *
+     * @param nanos the duration of the call
+     * @param failed whether the call failed
+     */
+    void record(long nanos, boolean failed) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded calls
+     */
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * @return a snapshot of the recorded calls
+     */
+    LatencyStatistics statistics() {
+        long calls = count.get();
+        double mean = calls == 0 ? 0 : totalMicros.get() / MICROS_PER_MILLI / calls;
+        return new LatencyStatistics(calls, failures.get(), mean, maxMicros.get() / MICROS_PER_MILLI,
+                percentileMillis(P50), percentileMillis(P90), percentileMillis(P99));
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile
+     *
+     * @param quantile the percentile between 0 and 1
+     * @return the percentile in milliseconds, 0 if nothing was recorded
+     */
+    double percentileMillis(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(1L << (i + 1), Math.max(1, maxMicros.get())) / MICROS_PER_MILLI;
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long micros) {
+        int bucket = Long.SIZE - 1 - Long.numberOfLeadingZeros(Math.max(1, micros));
+        return Math.min(BUCKETS - 1, bucket);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the latencies of a discovery phase or ARM operation, as exposed over JMX
+ */
+public final class LatencyStatistics {
+
+    private final long count;
+    private final long failures;
+    private final double meanMillis;
+    private final double maxMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+
+    /**
+     * Creates a new snapshot
+     *
+     * @param count the number of calls
+     * @param failures the number of failed calls
+     * @param meanMillis the mean latency
+     * @param maxMillis the highest latency
+     * @param p50Millis the median latency
+     * @param p90Millis the 90th percentile latency
+     * @param p99Millis the 99th percentile latency
+     */
+    @ConstructorProperties({ "count", "failures", "meanMillis", "maxMillis", "p50Millis", "p90Millis", "p99Millis" })
+    public LatencyStatistics(long count, long failures, double meanMillis, double maxMillis, double p50Millis,
+                             double p90Millis, double p99Millis) {
+        this.count = count;
+        this.failures = failures;
+        this.meanMillis = meanMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+    }
+
+    /**
+     * @return the number of calls
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of failed calls
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the mean latency in milliseconds
+     */
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    /**
+     * @return the highest latency in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return the median latency in milliseconds
+     */
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    /**
+     * @return the 90th percentile latency in milliseconds
+     */
+    public double getP90Millis() {
+        return p90Millis;
+    }
+
+    /**
+     * @return the 99th percentile latency in milliseconds
+     */
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", failures=" + failures + ", mean=" + meanMillis + "ms, p50=" + p50Millis
+                + "ms, p90=" + p90Millis + "ms, p99=" + p99Millis + "ms, max=" + maxMillis + "ms";
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops discovered nodes nobody listens on before they are returned, so a member does not spend a connection
+ * timeout on every VM whose Hazelcast process is down or still booting.
+ * <p>
+ * The private addresses of all nodes are connected to at once with non-blocking channels on one selector,
+ * waiting at most the timeout for all of them together. An address that refused the connection or did not
+ * answer in time is remembered as dead and dropped without a new attempt until its TTL expired. An address that
+ * accepted is remembered as alive and kept without a new attempt until its own TTL expired, since every probe
+ * shows up in the log of the member as an accepted and closed connection. The local member is never probed,
+ * and if no node answered the list is returned unprobed.
+ */
+final class LivenessProbe {
+
+    private static final ILogger LOGGER = Logger.getLogger(LivenessProbe.class);
+    private static final int DEFAULT_DEAD_TTL_SECONDS = 30;
+    private static final int DEFAULT_ALIVE_TTL_SECONDS = 60;
+
+    private final long timeoutMillis;
+    private final long deadTtlMillis;
+    private final long aliveTtlMillis;
+    private final LocalAddressIndex localAddresses;
+    private final ConcurrentMap<Address, Long> deadUntil = new ConcurrentHashMap<Address, Long>();
+    private final ConcurrentMap<Address, Long> aliveUntil = new ConcurrentHashMap<Address, Long>();
+
+    /**
+     * Creates a new probe
+     *
+     * @param timeoutMillis how long a probe waits for all nodes together
+     * @param deadTtlMillis how long an address that failed a probe is not probed again
+     * @param aliveTtlMillis how long an address that passed a probe is not probed again
+     * @param localAddresses the addresses identifying the local VM
+     */
+    LivenessProbe(long timeoutMillis, long deadTtlMillis, long aliveTtlMillis, LocalAddressIndex localAddresses) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadTtlMillis = deadTtlMillis;
+        this.aliveTtlMillis = aliveTtlMillis;
+        this.localAddresses = localAddresses;
+    }
+
+    /**
+     * @param properties the discovery strategy properties
+     * @param localAddresses the addresses identifying the local VM
+     * @return the configured probe, null if probing is disabled
+     */
+    static LivenessProbe of(Map<String, Comparable> properties, LocalAddressIndex localAddresses) {
+        int timeoutMillis = AzureProperties.getOrDefault(AzureProperties.LIVENESS_PROBE_TIMEOUT_MILLIS, properties, 0);
+        if (timeoutMillis <= 0) {
+            return null;
+        }
+        int deadTtlSeconds = AzureProperties.getOrDefault(AzureProperties.LIVENESS_PROBE_DEAD_TTL_SECONDS, properties,
+                DEFAULT_DEAD_TTL_SECONDS);
+        int aliveTtlSeconds = AzureProperties.getOrDefault(AzureProperties.LIVENESS_PROBE_ALIVE_TTL_SECONDS, properties,
+                DEFAULT_ALIVE_TTL_SECONDS);
+        return new LivenessProbe(timeoutMillis, TimeUnit.SECONDS.toMillis(deadTtlSeconds),
+                TimeUnit.SECONDS.toMillis(aliveTtlSeconds), localAddresses);
+    }
+
+    /**
+     * @param nodes the discovered nodes
+     * @return the nodes that accepted a connection now or within the alive TTL and the local one, in their
+     * original order
+     */
+    List<DiscoveryNode> probe(List<DiscoveryNode> nodes) {
+        long now = System.currentTimeMillis();
+        Set<Address> probed = addressesToProbe(nodes, now);
+        Set<Address> alive;
+        try {
+            alive = connect(probed);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to probe the discovered nodes, returning them unprobed: " + e.getMessage());
+            return nodes;
+        }
+
+        List<DiscoveryNode> live = new ArrayList<DiscoveryNode>(nodes.size());
+        for (DiscoveryNode node : nodes) {
+            Address address = node.getPrivateAddress();
+            if (alive.contains(address)) {
+                aliveUntil.put(address, now + aliveTtlMillis);
+                live.add(node);
+            } else if (isLocal(address) || aliveUntil.containsKey(address)) {
+                live.add(node);
+            } else if (probed.contains(address)) {
+                deadUntil.put(address, now + deadTtlMillis);
+            }
+        }
+        if (live.isEmpty() && !nodes.isEmpty()) {
+            LOGGER.warning("None of the " + nodes.size() + " discovered nodes accepted a connection, returning them all");
+            return nodes;
+        }
+        LOGGER.fine("Dropped " + (nodes.size() - live.size()) + " of " + nodes.size()
+                + " discovered nodes that did not accept a connection");
+        return live;
+    }
+
+    private Set<Address> addressesToProbe(List<DiscoveryNode> nodes, long now) {
+        Set<Address> addresses = new HashSet<Address>();
+        for (DiscoveryNode node : nodes) {
+            Address address = node.getPrivateAddress();
+            if (!isLocal(address) && !isRemembered(deadUntil, address, now) && !isRemembered(aliveUntil, address, now)) {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
+    private boolean isLocal(Address address) {
+        return localAddresses.contains(address.getHost());
+    }
+
+    private static boolean isRemembered(ConcurrentMap<Address, Long> remembered, Address address, long now) {
+        Long until = remembered.get(address);
+        if (until == null) {
+            return false;
+        }
+        if (until > now) {
+            return true;
+        }
+        remembered.remove(address, until);
+        return false;
+    }
+
+    private Set<Address> connect(Set<Address> addresses) throws IOException {
+        Set<Address> alive = new HashSet<Address>();
+        if (addresses.isEmpty()) {
+            return alive;
+        }
+        Selector selector = Selector.open();
+        List<SocketChannel> channels = new ArrayList<SocketChannel>(addresses.size());
+        try {
+            for (Address address : addresses) {
+                SocketChannel channel = SocketChannel.open();
+                channels.add(channel);
+                channel.configureBlocking(false);
+                startConnect(channel, address, selector, alive);
+            }
+            awaitConnects(selector, alive);
+        } finally {
+            for (SocketChannel channel : channels) {
+                closeQuietly(channel);
+            }
+            selector.close();
+        }
+        return alive;
+    }
+
+    private static void startConnect(SocketChannel channel, Address address, Selector selector, Set<Address> alive) {
+        try {
+            if (channel.connect(address.getInetSocketAddress())) {
+                alive.add(address);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, address);
+            }
+        } catch (IOException e) {
+            // unreachable right away, the address is dead
+            LOGGER.finest("Probe of " + address + " failed: " + e.getMessage());
+        }
+    }
+
+    private void awaitConnects(Selector selector, Set<Address> alive) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int pending = selector.keys().size();
+        while (pending > 0) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return;
+            }
+            selector.select(remainingMillis);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (finishConnect(key, alive)) {
+                    key.cancel();
+                    pending--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the connection attempt is over, successful or not
+     */
+    private static boolean finishConnect(SelectionKey key, Set<Address> alive) {
+        Address address = (Address) key.attachment();
+        try {
+            if (((SocketChannel) key.channel()).finishConnect()) {
+                alive.add(address);
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            LOGGER.finest("Probe of " + address + " failed: " + e.getMessage());
+            return true;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.finest("Failed to close a probe channel", e);
+        }
+    }
+}
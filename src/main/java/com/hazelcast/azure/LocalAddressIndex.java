@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * All IPv4 and IPv6 addresses of the local network interfaces, enumerated once and kept in
+ * a hash set so checking whether a discovered VM is the local one does not touch the OS.
+ * The interfaces are enumerated again at most once per refresh interval, and the set is
+ * only replaced when the addresses actually changed.
+ */
+final class LocalAddressIndex {
+
+    private static final ILogger LOGGER = Logger.getLogger(LocalAddressIndex.class);
+
+    private final long refreshIntervalMillis;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a new index, the interfaces are enumerated on first use
+     *
+     * @param refreshIntervalMillis the minimum time between two enumerations of the local interfaces
+     */
+    LocalAddressIndex(long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    /**
+     * Checks whether the given address belongs to one of the local network interfaces
+     *
+     * @param address the IPv4 or IPv6 address, may be null
+     * @return true if the address is local
+     */
+    boolean contains(String address) {
+        return address != null && current().addresses.contains(normalize(address));
+    }
+
+    /**
+     * Returns the address the local member most likely binds to: the first site local address,
+     * otherwise the first non loopback address
+     *
+     * @return the address or null if no interface has a non loopback address
+     */
+    String preferredAddress() {
+        return current().preferredAddress;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.enumeratedAt < refreshIntervalMillis) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || now - current.enumeratedAt >= refreshIntervalMillis) {
+                Snapshot enumerated = enumerate(now);
+                snapshot = current != null && current.addresses.equals(enumerated.addresses)
+                        ? new Snapshot(current.addresses, current.preferredAddress, now) : enumerated;
+            }
+            return snapshot;
+        }
+    }
+
+    private static Snapshot enumerate(long now) {
+        Set<String> addresses = new HashSet<String>();
+        String siteLocalAddress = null;
+        String candidateAddress = null;
+        try {
+            for (Enumeration<NetworkInterface> ifaces = NetworkInterface.getNetworkInterfaces();
+                 ifaces != null && ifaces.hasMoreElements(); ) {
+                for (Enumeration<InetAddress> inetAddrs = ifaces.nextElement().getInetAddresses();
+                     inetAddrs.hasMoreElements(); ) {
+                    InetAddress inetAddr = inetAddrs.nextElement();
+                    if (inetAddr.isLoopbackAddress()) {
+                        continue;
+                    }
+                    String hostAddress = normalize(inetAddr.getHostAddress());
+                    addresses.add(hostAddress);
+                    if (siteLocalAddress == null && inetAddr.isSiteLocalAddress()) {
+                        siteLocalAddress = hostAddress;
+                    } else if (candidateAddress == null) {
+                        candidateAddress = hostAddress;
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            LOGGER.warning("Failed to enumerate the local network interfaces: " + e);
+        }
+        String preferredAddress = siteLocalAddress != null ? siteLocalAddress : candidateAddress;
+        return new Snapshot(Collections.unmodifiableSet(addresses), preferredAddress, now);
+    }
+
+    /**
+     * IPv6 addresses have several textual forms and the JDK appends the interface scope,
+     * so they are compared in the canonical JDK form without scope
+     *
+     * @param address the address literal
+     * @return the form used as set key
+     */
+    static String normalize(String address) {
+        if (address.indexOf(':') < 0) {
+            return address;
+        }
+        int scope = address.indexOf('%');
+        String literal = scope < 0 ? address : address.substring(0, scope);
+        try {
+            // a literal is parsed without any name service lookup
+            return InetAddress.getByName(literal).getHostAddress();
+        } catch (UnknownHostException e) {
+            return literal;
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final Set<String> addresses;
+        private final String preferredAddress;
+        private final long enumeratedAt;
+
+        private Snapshot(Set<String> addresses, String preferredAddress, long enumeratedAt) {
+            this.addresses = addresses;
+            this.preferredAddress = preferredAddress;
+            this.enumeratedAt = enumeratedAt;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * Acquires managed identity tokens from the managed identity VM extension listening on a port of localhost,
+ * for the VMs that still run it instead of reaching the Instance Metadata Service. Every call requests a new
+ * token, {@link RefreshingTokenCredentials} keeps them.
+ */
+final class ManagedIdentityExtensionCredentials extends AzureTokenCredentials {
+
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final int HTTP_OK = 200;
+
+    private final int port;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Creates new credentials
+     *
+     * @param environment the Azure environment the tokens are used in
+     * @param port the port of the VM extension on localhost
+     */
+    ManagedIdentityExtensionCredentials(AzureEnvironment environment, int port) {
+        super(environment, null);
+        this.port = port;
+    }
+
+    @Override
+    public String getToken(String resource) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/oauth2/token")
+                .openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Metadata", "true");
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setUseCaches(false);
+            connection.setDoOutput(true);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(("resource=" + URLEncoder.encode(resource, "UTF-8")).getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (connection.getResponseCode() != HTTP_OK) {
+                throw new IOException("Managed identity extension on port " + port + " returned "
+                        + connection.getResponseCode());
+            }
+            InputStream in = connection.getInputStream();
+            try {
+                JsonNode accessToken = objectMapper.readTree(in).path("access_token");
+                if (!accessToken.isTextual()) {
+                    throw new IOException("Managed identity extension on port " + port + " returned no access token");
+                }
+                return accessToken.asText();
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
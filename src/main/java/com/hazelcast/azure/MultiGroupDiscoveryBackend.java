@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Discovers a cluster spread over several resource groups or subscriptions by running the backend of
+ * every (subscription, resource group) pair in parallel. The backends of one subscription share its
+ * authenticated client. A node found in several groups is returned once, in the order the groups were
+ * configured. A group that fails or does not answer in time is left out of the result, the discovery
+ * only fails if no group answered. A call that did not answer in time is interrupted, but HTTP calls may
+ * ignore the interrupt, so the pool grows instead of queueing later discoveries behind hung calls.
+ */
+final class MultiGroupDiscoveryBackend implements DiscoveryBackend {
+
+    private static final ILogger LOGGER = Logger.getLogger(MultiGroupDiscoveryBackend.class);
+
+    private final List<Group> groups;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+
+    private MultiGroupDiscoveryBackend(List<Group> groups, long timeoutMillis) {
+        this.groups = groups;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("hz-azure-discovery-group"));
+    }
+
+    /**
+     * @param groups the pairs to discover
+     * @param timeoutMillis how long to wait for the slowest group, 0 to wait for all of them
+     * @return the backend, to be shut down once it is no longer used
+     */
+    static MultiGroupDiscoveryBackend of(List<Group> groups, long timeoutMillis) {
+        return new MultiGroupDiscoveryBackend(new ArrayList<Group>(groups), timeoutMillis);
+    }
+
+    /**
+     * @param subscriptionId the subscription of the resource group
+     * @param resourceGroup the resource group name
+     * @param backend the backend discovering the group with the client of the subscription
+     * @return the pair
+     */
+    static Group group(String subscriptionId, String resourceGroup, DiscoveryBackend backend) {
+        return new Group(subscriptionId, resourceGroup, backend);
+    }
+
+    /**
+     * Discovers every configured pair; the resource group argument is ignored
+     */
+    @Override
+    public List<DiscoveryNode> discoverNodes(String resourceGroup, final String clusterId) throws Exception {
+        List<Future<List<DiscoveryNode>>> futures = new ArrayList<Future<List<DiscoveryNode>>>(groups.size());
+        for (final Group group : groups) {
+            futures.add(executor.submit(new Callable<List<DiscoveryNode>>() {
+                @Override
+                public List<DiscoveryNode> call() throws Exception {
+                    return group.backend.discoverNodes(group.resourceGroup, clusterId);
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<Address, DiscoveryNode> nodes = new LinkedHashMap<Address, DiscoveryNode>();
+        Exception failure = null;
+        int answered = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                for (DiscoveryNode node : await(futures.get(i), deadline)) {
+                    if (!nodes.containsKey(node.getPrivateAddress())) {
+                        nodes.put(node.getPrivateAddress(), node);
+                    }
+                }
+                answered++;
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                LOGGER.warning("Discovery of " + groups.get(i) + " did not complete in time, leaving it out");
+                failure = failure == null ? e : failure;
+            } catch (ExecutionException e) {
+                LOGGER.warning("Discovery of " + groups.get(i) + " failed, leaving it out: " + e.getCause());
+                failure = failure == null ? unwrap(e) : failure;
+            }
+        }
+        if (answered == 0 && failure != null) {
+            throw failure;
+        }
+        return new ArrayList<DiscoveryNode>(nodes.values());
+    }
+
+    @Override
+    public Integer localFaultDomain() {
+        for (Group group : groups) {
+            Integer faultDomain = group.backend.localFaultDomain();
+            if (faultDomain != null) {
+                return faultDomain;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void invalidate(String resourceId) {
+        for (Group group : groups) {
+            group.backend.invalidate(resourceId);
+        }
+    }
+
+    /**
+     * Stops the threads discovering the groups
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private List<DiscoveryNode> await(Future<List<DiscoveryNode>> future, long deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (timeoutMillis <= 0) {
+            return future.get();
+        }
+        return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    /**
+     * A resource group of one subscription with the backend discovering it
+     */
+    static final class Group {
+
+        private final String subscriptionId;
+        private final String resourceGroup;
+        private final DiscoveryBackend backend;
+
+        private Group(String subscriptionId, String resourceGroup, DiscoveryBackend backend) {
+            this.subscriptionId = subscriptionId;
+            this.resourceGroup = resourceGroup;
+            this.backend = backend;
+        }
+
+        @Override
+        public String toString() {
+            return "resource group " + resourceGroup + " of subscription " + subscriptionId;
+        }
+    }
+}
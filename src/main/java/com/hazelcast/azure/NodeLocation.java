@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where a discovered node runs: its availability zone and platform fault domain, carried as
+ * {@link DiscoveryNode} properties. The fault domain goes under {@link PartitionGroupMetaData#PARTITION_GROUP_ZONE},
+ * the key the member metadata and the topology snapshot already use for it.
+ */
+final class NodeLocation {
+
+    /**
+     * The property holding the availability zone of a node, absent if the VM is not zonal
+     */
+    static final String AVAILABILITY_ZONE = "azure.availability-zone";
+
+    /**
+     * The property holding the platform fault domain of a node, absent if unknown
+     */
+    static final String FAULT_DOMAIN = PartitionGroupMetaData.PARTITION_GROUP_ZONE;
+
+    private final String zone;
+    private final String faultDomain;
+
+    private NodeLocation(String zone, String faultDomain) {
+        this.zone = zone;
+        this.faultDomain = faultDomain;
+    }
+
+    /**
+     * @param zone the availability zone, null if the VM is not zonal
+     * @param faultDomain the platform fault domain, null if unknown
+     * @return the location, null if both are unknown
+     */
+    static NodeLocation of(String zone, Object faultDomain) {
+        if (zone == null && faultDomain == null) {
+            return null;
+        }
+        return new NodeLocation(zone, faultDomain == null ? null : faultDomain.toString());
+    }
+
+    /**
+     * @param node the node
+     * @return the location the node was tagged with, null if it carries none
+     */
+    static NodeLocation of(DiscoveryNode node) {
+        Map<String, Object> properties = node.getProperties();
+        if (properties == null) {
+            return null;
+        }
+        Object zone = properties.get(AVAILABILITY_ZONE);
+        return of(zone == null ? null : zone.toString(), properties.get(FAULT_DOMAIN));
+    }
+
+    /**
+     * @param nodes the discovered nodes
+     * @param localAddresses the addresses identifying the local VM
+     * @return the location of the local VM among the nodes, null if it is not among them or carries none
+     */
+    static NodeLocation local(List<DiscoveryNode> nodes, LocalAddressIndex localAddresses) {
+        for (DiscoveryNode node : nodes) {
+            Address publicAddress = node.getPublicAddress();
+            if (localAddresses.contains(node.getPrivateAddress().getHost())
+                    || (publicAddress != null && localAddresses.contains(publicAddress.getHost()))) {
+                NodeLocation location = of(node);
+                if (location != null) {
+                    return location;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A VM or scale set lists the zones it may be placed in, it is only known to run in one if there is one
+     *
+     * @param zones the listed zones, may be null
+     * @return the single zone, null if there is none or several
+     */
+    static String zone(Collection<?> zones) {
+        if (zones == null || zones.size() != 1) {
+            return null;
+        }
+        Object zone = zones.iterator().next();
+        return zone == null ? null : zone.toString();
+    }
+
+    /**
+     * Builds a node tagged with its location
+     *
+     * @param privateAddress the private address
+     * @param publicAddress the public address, null if the node has none
+     * @param zone the availability zone, null if the VM is not zonal
+     * @param faultDomain the platform fault domain, null if unknown
+     * @return the node
+     */
+    static DiscoveryNode node(Address privateAddress, Address publicAddress, String zone, Integer faultDomain) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        if (zone != null) {
+            properties.put(AVAILABILITY_ZONE, zone);
+        }
+        if (faultDomain != null) {
+            properties.put(FAULT_DOMAIN, faultDomain.toString());
+        }
+        return new SimpleDiscoveryNode(privateAddress, publicAddress == null ? privateAddress : publicAddress,
+                properties);
+    }
+
+    /**
+     * Orders the nodes so the ones sharing the zone of the local member come first, and among them the ones
+     * sharing its fault domain; without zones only the fault domain counts. The listing order is kept otherwise,
+     * and entirely if the local location is unknown.
+     *
+     * @param nodes the discovered nodes
+     * @param local the location of the local member, null if unknown
+     * @return the nodes, local ones first
+     */
+    static List<DiscoveryNode> localFirst(List<DiscoveryNode> nodes, final NodeLocation local) {
+        if (local == null || nodes.size() < 2) {
+            return nodes;
+        }
+        List<DiscoveryNode> ordered = new ArrayList<DiscoveryNode>(nodes);
+        // the sort is stable, nodes at the same distance keep their listing order
+        Collections.sort(ordered, new Comparator<DiscoveryNode>() {
+            @Override
+            public int compare(DiscoveryNode first, DiscoveryNode second) {
+                return local.distance(of(first)) - local.distance(of(second));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * @return the availability zone, null if the VM is not zonal
+     */
+    String zone() {
+        return zone;
+    }
+
+    /**
+     * @return the platform fault domain, null if unknown
+     */
+    String faultDomain() {
+        return faultDomain;
+    }
+
+    /**
+     * Fault domains are only compared within a zone, an unknown zone or fault domain counts as different
+     */
+    private int distance(NodeLocation other) {
+        if (zone != null && (other == null || !zone.equals(other.zone))) {
+            return 2;
+        }
+        if (faultDomain != null && (other == null || !faultDomain.equals(other.faultDomain))) {
+            return 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "zone " + zone + ", fault domain " + faultDomain;
+    }
+}
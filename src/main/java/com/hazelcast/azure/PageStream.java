@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.Page;
+import com.microsoft.azure.PagedList;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the items of a paged ARM listing one page at a time. Iterating the {@link PagedList} itself
+ * appends every page it loads to the list, so a large listing is held in memory until it is dropped;
+ * here the pages already read are cleared from the list before the next one is loaded, leaving the
+ * page being read and the one the list fetched ahead.
+ *
+ * @param <T> the type of the listed items
+ */
+final class PageStream<T> implements Iterable<T> {
+
+    private final PagedList<T> list;
+
+    private PageStream(PagedList<T> list) {
+        this.list = list;
+    }
+
+    /**
+     * @param list the listing, only its loaded pages are read before the next one is loaded
+     * @param <T> the type of the listed items
+     * @return the items of the listing
+     */
+    static <T> PageStream<T> of(PagedList<T> list) {
+        return new PageStream<T>(list);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Page<T> page = list.currentPage();
+        if (page == null) {
+            // filled by hand rather than loaded page by page
+            return list.iterator();
+        }
+        return new PageIterator(page);
+    }
+
+    private static <T> Iterator<T> items(Page<T> page) {
+        List<T> items = page == null ? null : page.items();
+        return items == null ? Collections.<T>emptyList().iterator() : items.iterator();
+    }
+
+    private final class PageIterator implements Iterator<T> {
+
+        private Iterator<T> items;
+
+        private PageIterator(Page<T> page) {
+            this.items = items(page);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!items.hasNext()) {
+                if (!list.hasNextPage()) {
+                    return false;
+                }
+                list.clear();
+                list.loadNextPage();
+                items = items(list.currentPage());
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return items.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token credentials that acquire a new token in the background before the current one expires,
+ * so ARM calls never wait on the identity endpoint once the first token was acquired.
+ * Every refresh uses fresh delegate credentials since the SDK credentials keep handing out
+ * their cached token until it has actually expired.
+ */
+final class RefreshingTokenCredentials extends AzureTokenCredentials {
+
+    static final long REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final ILogger LOGGER = Logger.getLogger(RefreshingTokenCredentials.class);
+    private static final long UNKNOWN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Callable<AzureTokenCredentials> credentialsFactory;
+    private final ScheduledExecutorService scheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<String, Token>();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates new refreshing credentials
+     *
+     * @param credentials the credentials to take the environment and domain from
+     * @param credentialsFactory creates the delegate credentials for each token acquisition
+     * @param scheduler the scheduler running the background refreshes
+     */
+    RefreshingTokenCredentials(AzureTokenCredentials credentials, Callable<AzureTokenCredentials> credentialsFactory,
+                               ScheduledExecutorService scheduler) {
+        super(credentials.environment(), credentials.domain());
+        this.credentialsFactory = credentialsFactory;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public String getToken(String resource) throws IOException {
+        Token token = tokens.get(resource);
+        if (token != null && System.currentTimeMillis() < token.expiresAt) {
+            return token.value;
+        }
+        return acquire(resource).value;
+    }
+
+    /**
+     * Acquires the token for the given resource in the background
+     *
+     * @param resource the resource the token is for
+     */
+    void prefetch(final String resource) {
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(resource);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.finest("Token prefetch rejected", e);
+        }
+    }
+
+    /**
+     * Stops the background refreshes
+     */
+    void close() {
+        closed = true;
+        for (Token token : tokens.values()) {
+            if (token.refresh != null) {
+                token.refresh.cancel(false);
+            }
+        }
+        tokens.clear();
+    }
+
+    private synchronized Token acquire(String resource) throws IOException {
+        AzureTokenCredentials credentials;
+        try {
+            credentials = credentialsFactory.call();
+        } catch (Exception e) {
+            throw new IOException("Failed to create Azure credentials", e);
+        }
+        String value = credentials.getToken(resource);
+        long now = System.currentTimeMillis();
+        Long expiresAt = expiresAt(value);
+        Token token = new Token(value, expiresAt != null ? expiresAt : now + UNKNOWN_LIFETIME_MILLIS);
+        Token previous = tokens.put(resource, token);
+        if (previous != null && previous.refresh != null) {
+            previous.refresh.cancel(false);
+        }
+        scheduleRefresh(resource, token, Math.max(0, token.expiresAt - REFRESH_MARGIN_MILLIS - now));
+        return token;
+    }
+
+    private void scheduleRefresh(final String resource, Token token, long delayMillis) {
+        if (closed) {
+            return;
+        }
+        try {
+            token.refresh = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(resource);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.finest("Token refresh rejected", e);
+        }
+    }
+
+    private void refresh(String resource) {
+        if (closed) {
+            return;
+        }
+        try {
+            acquire(resource);
+        } catch (Exception e) {
+            LOGGER.warning("Failed to refresh the Azure access token, retrying: " + e);
+            Token token = tokens.get(resource);
+            if (token != null && System.currentTimeMillis() + RETRY_MILLIS < token.expiresAt) {
+                scheduleRefresh(resource, token, RETRY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Reads the expiry of an access token, ARM access tokens are JWTs carrying an exp claim
+     *
+     * @param accessToken the access token
+     * @return the expiry in epoch milliseconds or null if the token is not a readable JWT
+     */
+    Long expiresAt(String accessToken) {
+        String[] parts = accessToken == null ? new String[0] : accessToken.split("\\.");
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            JsonNode exp = objectMapper.readTree(Base64.decodeBase64(parts[1])).path("exp");
+            return exp.canConvertToLong() ? TimeUnit.SECONDS.toMillis(exp.longValue()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class Token {
+
+        private final String value;
+        private final long expiresAt;
+        private volatile ScheduledFuture<?> refresh;
+
+        private Token(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
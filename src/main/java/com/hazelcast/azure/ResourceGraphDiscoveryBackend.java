@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.rest.RestClient;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Discovers VMs and scale set VMs with Azure Resource Graph queries. Each query joins the VMs
+ * with their network interfaces and public IP addresses on the service side and returns only
+ * the columns needed to build the discovery nodes, so one discovery costs one request per page
+ * instead of one request per VM.
+ */
+final class ResourceGraphDiscoveryBackend implements DiscoveryBackend {
+
+    static final String QUERY_PATH = "providers/Microsoft.ResourceGraph/resources?api-version=2021-03-01";
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final OkHttpClient httpClient;
+    private final String queryUrl;
+    private final String subscriptionId;
+    private final LocalAddressIndex localAddresses;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Integer localFaultDomain;
+
+    /**
+     * Creates a new Resource Graph backend
+     *
+     * @param httpClient the client used for the queries, expected to authenticate the requests
+     * @param managementEndpoint the Azure Resource Manager endpoint
+     * @param subscriptionId the subscription to query
+     * @param localAddresses the addresses identifying the local VM
+     */
+    ResourceGraphDiscoveryBackend(OkHttpClient httpClient, String managementEndpoint, String subscriptionId,
+                                  LocalAddressIndex localAddresses) {
+        this.httpClient = httpClient;
+        this.queryUrl = (managementEndpoint.endsWith("/") ? managementEndpoint : managementEndpoint + "/") + QUERY_PATH;
+        this.subscriptionId = subscriptionId;
+        this.localAddresses = localAddresses;
+    }
+
+    /**
+     * Creates a backend sharing the authenticated HTTP client and endpoint of the compute client
+     *
+     * @param computeManager the compute client
+     * @param localAddresses the addresses identifying the local VM
+     * @return the backend
+     */
+    static ResourceGraphDiscoveryBackend of(ComputeManager computeManager, LocalAddressIndex localAddresses) {
+        RestClient restClient = computeManager.inner().restClient();
+        return new ResourceGraphDiscoveryBackend(restClient.httpClient(), restClient.retrofit().baseUrl().toString(),
+                computeManager.subscriptionId(), localAddresses);
+    }
+
+    @Override
+    public List<DiscoveryNode> discoverNodes(String resourceGroup, String clusterId) throws IOException {
+        List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+        String query = query(resourceGroup, clusterId);
+        String skipToken = null;
+        do {
+            JsonNode page = post(query, skipToken);
+            for (JsonNode row : page.path("data")) {
+                DiscoveryNode node = buildDiscoveryNode(row);
+                if (node != null) {
+                    nodes.add(node);
+                }
+            }
+            skipToken = page.path("$skipToken").textValue();
+        } while (skipToken != null);
+        return nodes;
+    }
+
+    @Override
+    public Integer localFaultDomain() {
+        return localFaultDomain;
+    }
+
+    @Override
+    public void invalidate(String resourceId) {
+        // every query reads the whole resource group
+    }
+
+    private JsonNode post(String query, String skipToken) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putArray("subscriptions").add(subscriptionId);
+        body.put("query", query);
+        ObjectNode options = body.putObject("options");
+        options.put("resultFormat", "objectArray");
+        if (skipToken != null) {
+            options.put("$skipToken", skipToken);
+        }
+
+        Request request = new Request.Builder()
+                .url(queryUrl)
+                .post(RequestBody.create(JSON, objectMapper.writeValueAsBytes(body)))
+                .build();
+        Response response = httpClient.newCall(request).execute();
+        try {
+            if (!response.isSuccessful()) {
+                throw new IOException("Resource Graph query failed with " + response.code() + ": "
+                        + response.body().string());
+            }
+            return objectMapper.readTree(response.body().byteStream());
+        } finally {
+            response.close();
+        }
+    }
+
+    private DiscoveryNode buildDiscoveryNode(JsonNode row) throws IOException {
+        String privateIP = row.path("privateIp").textValue();
+        // tostring() of a missing value is an empty string
+        if (privateIP == null || privateIP.trim().length() == 0) {
+            return null;
+        }
+        int port = Integer.parseInt(row.path("port").asText());
+        String publicIP = row.path("publicIp").textValue();
+        if (localAddresses.contains(privateIP) && row.path("faultDomain").isNumber()) {
+            localFaultDomain = row.path("faultDomain").intValue();
+        }
+
+        String zone = row.path("zone").textValue();
+        Integer faultDomain = row.path("faultDomain").isNumber() ? row.path("faultDomain").intValue() : null;
+        Address publicAddress = publicIP == null || publicIP.length() == 0 ? null : new Address(publicIP, port);
+        return NodeLocation.node(new Address(privateIP, port), publicAddress,
+                zone == null || zone.length() == 0 ? null : zone, faultDomain);
+    }
+
+    /**
+     * Builds the query returning one row per running tagged VM of the resource group with its
+     * port, fault domain, availability zone and the addresses of its primary IP configuration. Standalone VMs are
+     * joined with the network interfaces and public IP addresses of the Resources table. Scale set VMs are not
+     * rows of the Resources table, they are found through the network interfaces attached to them, which carry
+     * the assigned addresses, and take their power state from the ComputeResources table where it is known.
+     *
+     * @param resourceGroup the resource group name
+     * @param clusterId the tag name whose value is the Hazelcast port
+     * @return the Kusto query
+     */
+    static String query(String resourceGroup, String clusterId) {
+        String group = literal(resourceGroup);
+        String tag = literal(clusterId);
+        return "Resources"
+                + " | where type =~ 'microsoft.compute/virtualmachines' and resourceGroup =~ " + group
+                + " and isnotempty(tags[" + tag + "])"
+                + " | project vmId = tolower(id), port = tostring(tags[" + tag + "]),"
+                + " powerState = tostring(properties.extended.instanceView.powerState.code),"
+                + " faultDomain = toint(properties.extended.instanceView.platformFaultDomain),"
+                + " zone = iff(array_length(zones) == 1, tostring(zones[0]), ''),"
+                + " nics = properties.networkProfile.networkInterfaces"
+                + " | mv-expand nic = nics"
+                + " | where tobool(nic.properties.primary) or array_length(nics) == 1"
+                + " | project vmId, port, powerState, faultDomain, zone, nicId = tolower(tostring(nic.id))"
+                + " | join kind=inner (Resources"
+                + " | where type =~ 'microsoft.network/networkinterfaces' and resourceGroup =~ " + group
+                + " | mv-expand ipConfig = properties.ipConfigurations"
+                + " | where tobool(ipConfig.properties.primary)"
+                + " | project nicId = tolower(id), privateIp = tostring(ipConfig.properties.privateIPAddress),"
+                + " publicIpId = tolower(tostring(ipConfig.properties.publicIPAddress.id))) on nicId"
+                + " | join kind=leftouter (Resources"
+                + " | where type =~ 'microsoft.network/publicipaddresses' and resourceGroup =~ " + group
+                + " | project publicIpId = tolower(id), publicIp = tostring(properties.ipAddress)) on publicIpId"
+                + " | where powerState =~ 'PowerState/running'"
+                + " | project vmId, port, powerState, faultDomain, zone, privateIp, publicIp"
+                + " | union (Resources"
+                + " | where type =~ 'microsoft.network/networkinterfaces' and resourceGroup =~ " + group
+                + " | extend vmId = tolower(tostring(properties.virtualMachine.id))"
+                + " | where vmId contains '/virtualmachinescalesets/' and tobool(properties.primary)"
+                + " | mv-expand ipConfig = properties.ipConfigurations"
+                + " | where tobool(ipConfig.properties.primary)"
+                + " | project vmId, scaleSetId = substring(vmId, 0, indexof(vmId, '/virtualmachines/')),"
+                + " privateIp = tostring(ipConfig.properties.privateIPAddress),"
+                + " publicIpId = tolower(tostring(ipConfig.properties.publicIPAddress.id))"
+                + " | join kind=inner (Resources"
+                + " | where type =~ 'microsoft.compute/virtualmachinescalesets' and resourceGroup =~ " + group
+                + " and isnotempty(tags[" + tag + "])"
+                + " | project scaleSetId = tolower(id), port = tostring(tags[" + tag + "])) on scaleSetId"
+                + " | join kind=leftouter (ComputeResources"
+                + " | where type =~ 'microsoft.compute/virtualmachinescalesets/virtualmachines'"
+                + " and resourceGroup =~ " + group
+                + " | project vmId = tolower(id),"
+                + " powerState = tostring(properties.extended.instanceView.powerState.code),"
+                + " faultDomain = toint(properties.extended.instanceView.platformFaultDomain),"
+                + " zone = iff(array_length(zones) == 1, tostring(zones[0]), '')) on vmId"
+                + " | join kind=leftouter (Resources"
+                + " | where type =~ 'microsoft.network/publicipaddresses' and resourceGroup =~ " + group
+                + " | project publicIpId = tolower(id), publicIp = tostring(properties.ipAddress)) on publicIpId"
+                + " | where isempty(powerState) or powerState =~ 'PowerState/running'"
+                + " | project vmId, port, powerState, faultDomain, zone, privateIp, publicIp)"
+                + " | order by vmId asc";
+    }
+
+    /**
+     * Quotes a value as Kusto string literal
+     *
+     * @param value the value
+     * @return the literal
+     */
+    static String literal(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.PublicIPAddress;
+import com.microsoft.azure.management.network.implementation.NetworkManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.hazelcast.azure.ScaleSetNetworkInterfaceIndex.normalize;
+
+/**
+ * All network interfaces and public IP addresses of a resource group, listed once
+ * per discovery cycle and indexed by resource id
+ */
+final class ResourceGroupNetworkIndex {
+
+    private final Map<String, NetworkInterface> networkInterfaces = new HashMap<String, NetworkInterface>();
+    private final Map<String, PublicIPAddress> publicIPAddresses = new HashMap<String, PublicIPAddress>();
+
+    private ResourceGroupNetworkIndex(Iterable<NetworkInterface> networkInterfaces,
+                                      Iterable<PublicIPAddress> publicIPAddresses) {
+        for (NetworkInterface networkInterface : networkInterfaces) {
+            this.networkInterfaces.put(normalize(networkInterface.id()), networkInterface);
+        }
+        for (PublicIPAddress publicIPAddress : publicIPAddresses) {
+            this.publicIPAddresses.put(normalize(publicIPAddress.id()), publicIPAddress);
+        }
+    }
+
+    /**
+     * Lists the network interfaces and public IP addresses of the given resource group
+     *
+     * @param networkManager the client to list network resources with
+     * @param resourceGroup the resource group name
+     * @return the index of the listed resources
+     */
+    static ResourceGroupNetworkIndex of(NetworkManager networkManager, String resourceGroup) {
+        return new ResourceGroupNetworkIndex(networkManager.networkInterfaces().listByResourceGroup(resourceGroup),
+                networkManager.publicIPAddresses().listByResourceGroup(resourceGroup));
+    }
+
+    /**
+     * Returns the network interface with the given id
+     *
+     * @param id the network interface resource id
+     * @return the network interface or null if it was not listed
+     */
+    NetworkInterface networkInterface(String id) {
+        return id == null ? null : networkInterfaces.get(normalize(id));
+    }
+
+    /**
+     * Returns the public IP address with the given id
+     *
+     * @param id the public IP address resource id
+     * @return the public IP address or null if it was not listed
+     */
+    PublicIPAddress publicIPAddress(String id) {
+        return id == null ? null : publicIPAddresses.get(normalize(id));
+    }
+}
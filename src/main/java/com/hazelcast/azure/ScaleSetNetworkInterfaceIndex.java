@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.management.compute.NetworkInterfaceReference;
+import com.microsoft.azure.management.compute.NetworkProfile;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSet;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSetVM;
+import com.microsoft.azure.management.network.VirtualMachineScaleSetNetworkInterface;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * All network interfaces of one scale set, listed with a single paged call
+ * and indexed by the id of the scale set VM they are attached to
+ */
+final class ScaleSetNetworkInterfaceIndex {
+
+    private final Map<String, List<VirtualMachineScaleSetNetworkInterface>> byVirtualMachineId =
+            new HashMap<String, List<VirtualMachineScaleSetNetworkInterface>>();
+
+    private ScaleSetNetworkInterfaceIndex(Iterable<VirtualMachineScaleSetNetworkInterface> networkInterfaces) {
+        for (VirtualMachineScaleSetNetworkInterface networkInterface : networkInterfaces) {
+            String virtualMachineId = networkInterface.virtualMachineId();
+            if (virtualMachineId == null) {
+                continue;
+            }
+            String key = normalize(virtualMachineId);
+            List<VirtualMachineScaleSetNetworkInterface> attached = byVirtualMachineId.get(key);
+            if (attached == null) {
+                attached = new ArrayList<VirtualMachineScaleSetNetworkInterface>(1);
+                byVirtualMachineId.put(key, attached);
+            }
+            attached.add(networkInterface);
+        }
+    }
+
+    /**
+     * Lists the network interfaces of the given scale set
+     *
+     * @param scaleSet the scale set
+     * @return the index of its network interfaces
+     */
+    static ScaleSetNetworkInterfaceIndex of(VirtualMachineScaleSet scaleSet) {
+        return of(scaleSet.listNetworkInterfaces());
+    }
+
+    /**
+     * Indexes already listed scale set network interfaces
+     *
+     * @param networkInterfaces the network interfaces
+     * @return the index of the network interfaces
+     */
+    static ScaleSetNetworkInterfaceIndex of(Iterable<VirtualMachineScaleSetNetworkInterface> networkInterfaces) {
+        return new ScaleSetNetworkInterfaceIndex(networkInterfaces);
+    }
+
+    /**
+     * Returns the primary network interface of the given VM. If the VM has no primary
+     * network interface the first attached one is returned
+     *
+     * @param vm the scale set VM
+     * @return the network interface or null if the listing did not contain the VM
+     */
+    VirtualMachineScaleSetNetworkInterface primaryOf(VirtualMachineScaleSetVM vm) {
+        return primaryOf(vm.id(), vm.primaryNetworkInterfaceId());
+    }
+
+    /**
+     * Looks up the primary network interface of the given VM without an index. If the VM has no primary
+     * network interface the first attached one is returned
+     *
+     * @param vm the scale set VM
+     * @return the network interface or null if the VM has none
+     */
+    static VirtualMachineScaleSetNetworkInterface lookUpPrimary(VirtualMachineScaleSetVM vm) {
+        String primaryNetworkInterfaceId = vm.primaryNetworkInterfaceId();
+        if (primaryNetworkInterfaceId != null) {
+            // the lookup takes the name of the network interface, not its id
+            return vm.getNetworkInterface(primaryNetworkInterfaceId.substring(primaryNetworkInterfaceId.lastIndexOf('/') + 1));
+        }
+        List<VirtualMachineScaleSetNetworkInterface> networkInterfaces = vm.listNetworkInterfaces();
+        if (networkInterfaces.size() > 0) {
+            return networkInterfaces.get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the primary network interface of the VM with the given id. If the primary
+     * network interface id is unknown the first attached one is returned
+     *
+     * @param virtualMachineId the scale set VM resource id
+     * @param primaryNetworkInterfaceId the primary network interface id, may be null
+     * @return the network interface or null if the listing did not contain the VM
+     */
+    VirtualMachineScaleSetNetworkInterface primaryOf(String virtualMachineId, String primaryNetworkInterfaceId) {
+        List<VirtualMachineScaleSetNetworkInterface> attached = virtualMachineId == null ? null
+                : byVirtualMachineId.get(normalize(virtualMachineId));
+        if (attached == null || attached.isEmpty()) {
+            return null;
+        }
+
+        for (VirtualMachineScaleSetNetworkInterface networkInterface : attached) {
+            if (primaryNetworkInterfaceId != null && primaryNetworkInterfaceId.equalsIgnoreCase(networkInterface.id())) {
+                return networkInterface;
+            }
+        }
+        return attached.get(0);
+    }
+
+    /**
+     * Returns the id of the primary network interface referenced by a VM network profile
+     *
+     * @param networkProfile the network profile of the VM
+     * @return the network interface id or null if none is referenced
+     */
+    static String primaryNetworkInterfaceId(NetworkProfile networkProfile) {
+        if (networkProfile == null || networkProfile.networkInterfaces() == null) {
+            return null;
+        }
+        List<NetworkInterfaceReference> references = networkProfile.networkInterfaces();
+        for (NetworkInterfaceReference reference : references) {
+            if (Boolean.TRUE.equals(reference.primary())) {
+                return reference.id();
+            }
+        }
+        return references.isEmpty() ? null : references.get(0).id();
+    }
+
+    /**
+     * Resource ids returned by different ARM endpoints can differ in case
+     *
+     * @param resourceId the ARM resource id
+     * @return the id used as map key
+     */
+    static String normalize(String resourceId) {
+        return resourceId.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.hazelcast.azure.ScaleSetNetworkInterfaceIndex.normalize;
+
+/**
+ * The nodes discovered per scale set in earlier cycles, keyed by scale set id. The scale set
+ * listing already returns the capacity and provisioning state, so a scale set whose fingerprint
+ * did not change since its instances were listed reuses its nodes without listing them again.
+ * Instances may still be stopped, repaired or replaced without changing the fingerprint, so the
+ * nodes of a scale set are listed again once they reached the maximum age.
+ */
+final class ScaleSetNodeCache {
+
+    static final int DEFAULT_MAX_AGE_SECONDS = 300;
+
+    private static final String SUCCEEDED = "Succeeded";
+    private static final String INSTANCES = "/virtualmachines/";
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final long maxAgeMillis;
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxAgeMillis how long the nodes of a scale set are reused at most, 0 to reuse them while its
+     *                     fingerprint is unchanged
+     */
+    ScaleSetNodeCache(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns the nodes listed for the scale set in an earlier cycle
+     *
+     * @param scaleSet the scale set as returned by the current listing
+     * @param port the member port tagged on the scale set
+     * @return the nodes or null if the scale set changed, was not listed yet or its nodes are too old
+     */
+    List<DiscoveryNode> get(VirtualMachineScaleSet scaleSet, int port) {
+        Entry entry = entries.get(normalize(scaleSet.id()));
+        if (entry == null || !entry.fingerprint.equals(fingerprint(scaleSet, port))) {
+            return null;
+        }
+        if (maxAgeMillis > 0 && System.currentTimeMillis() - entry.listedAt >= maxAgeMillis) {
+            return null;
+        }
+        return entry.nodes;
+    }
+
+    /**
+     * Remembers the nodes listed for the scale set. Scale sets still being provisioned or
+     * scaled are not remembered since their instances are about to change.
+     *
+     * @param scaleSet the scale set the nodes were listed for
+     * @param port the member port tagged on the scale set
+     * @param nodes the listed nodes
+     */
+    void put(VirtualMachineScaleSet scaleSet, int port, List<DiscoveryNode> nodes) {
+        String key = normalize(scaleSet.id());
+        if (SUCCEEDED.equalsIgnoreCase(provisioningState(scaleSet))) {
+            entries.put(key, new Entry(fingerprint(scaleSet, port), Collections.unmodifiableList(nodes)));
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Drops the scale sets that are no longer listed
+     *
+     * @param scaleSetIds the ids of the scale sets listed in the current cycle
+     */
+    void retainAll(Collection<String> scaleSetIds) {
+        Set<String> keys = new HashSet<String>(scaleSetIds.size());
+        for (String scaleSetId : scaleSetIds) {
+            keys.add(normalize(scaleSetId));
+        }
+        entries.keySet().retainAll(keys);
+    }
+
+    /**
+     * Drops the nodes of the scale set the resource belongs to. The instances of a scale set may start, stop or
+     * be replaced without a change of its capacity or provisioning state.
+     *
+     * @param resourceId the id of a scale set or of one of its VMs, other ids are ignored
+     */
+    void invalidate(String resourceId) {
+        String id = normalize(resourceId);
+        int instances = id.indexOf(INSTANCES);
+        entries.remove(instances < 0 ? id : id.substring(0, instances));
+    }
+
+    private static String fingerprint(VirtualMachineScaleSet scaleSet, int port) {
+        return scaleSet.capacity() + "/" + provisioningState(scaleSet) + "/" + port;
+    }
+
+    private static String provisioningState(VirtualMachineScaleSet scaleSet) {
+        return scaleSet.inner() == null ? null : scaleSet.inner().provisioningState();
+    }
+
+    private static final class Entry {
+
+        private final String fingerprint;
+        private final List<DiscoveryNode> nodes;
+        private final long listedAt = System.currentTimeMillis();
+
+        private Entry(String fingerprint, List<DiscoveryNode> nodes) {
+            this.fingerprint = fingerprint;
+            this.nodes = nodes;
+        }
+    }
+}
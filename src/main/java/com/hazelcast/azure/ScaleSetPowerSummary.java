@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hazelcast.azure;
+
+import com.microsoft.azure.PagedList;
+import com.microsoft.azure.management.compute.PowerState;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSet;
+import com.microsoft.azure.management.compute.VirtualMachineStatusCodeCount;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetInstanceViewInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMsInner;
+
+import java.util.List;
+
+/**
+ * How many instances of a scale set run, read from the statuses summary of one scale set instance view
+ * instead of the instance views of all its VMs
+ */
+enum ScaleSetPowerSummary {
+
+    /**
+     * The scale set has no running instance
+     */
+    NONE_RUNNING,
+
+    /**
+     * All instances of the scale set run
+     */
+    ALL_RUNNING,
+
+    /**
+     * Some instances of the scale set run
+     */
+    SOME_RUNNING,
+
+    /**
+     * The summary holds no power states
+     */
+    UNKNOWN;
+
+    private static final String POWER_STATE_PREFIX = "PowerState/";
+    private static final String RUNNING = "PowerState/running";
+    private static final String EXPAND_INSTANCE_VIEW = "instanceView";
+
+    /**
+     * Reads the summary of the instance view of a scale set
+     *
+     * @param computeManager the compute client
+     * @param scaleSet the scale set
+     * @return the summary of the power states of its instances
+     */
+    static ScaleSetPowerSummary of(ComputeManager computeManager, VirtualMachineScaleSet scaleSet) {
+        return of(computeManager.inner().virtualMachineScaleSets().getInstanceView(scaleSet.resourceGroupName(),
+                scaleSet.name()));
+    }
+
+    /**
+     * Reads the summary of a scale set instance view
+     *
+     * @param instanceView the scale set instance view, may be null
+     * @return the summary of the power states of its instances
+     */
+    static ScaleSetPowerSummary of(VirtualMachineScaleSetInstanceViewInner instanceView) {
+        List<VirtualMachineStatusCodeCount> statuses = instanceView == null || instanceView.virtualMachine() == null
+                ? null : instanceView.virtualMachine().statusesSummary();
+        if (statuses == null) {
+            return UNKNOWN;
+        }
+        int total = count(statuses, POWER_STATE_PREFIX);
+        int running = count(statuses, RUNNING);
+        if (total == 0) {
+            // an empty scale set has no statuses, instances being created only report their provisioning state
+            return statuses.isEmpty() ? NONE_RUNNING : UNKNOWN;
+        }
+        if (running == 0) {
+            return NONE_RUNNING;
+        }
+        return running == total ? ALL_RUNNING : SOME_RUNNING;
+    }
+
+    /**
+     * Lists the VMs of a scale set, expanding their instance views unless all of them are known to run
+     *
+     * @param client the scale set VM client
+     * @param scaleSet the scale set
+     * @return the first page of the VMs
+     */
+    PagedList<VirtualMachineScaleSetVMInner> listVMs(VirtualMachineScaleSetVMsInner client,
+                                                     VirtualMachineScaleSet scaleSet) {
+        return client.list(scaleSet.resourceGroupName(), scaleSet.name(), null, null,
+                this == ALL_RUNNING ? null : EXPAND_INSTANCE_VIEW);
+    }
+
+    /**
+     * The state of a scale set VM listed without its instance view is only looked up if the scale set may not
+     * be running it, its fault domain stays unknown otherwise
+     *
+     * @param client the scale set VM client
+     * @param scaleSet the scale set of the VM
+     * @param vm the listed VM
+     * @return the instance state of the VM
+     */
+    InstanceState instanceState(VirtualMachineScaleSetVMsInner client, VirtualMachineScaleSet scaleSet,
+                                VirtualMachineScaleSetVMInner vm) {
+        if (vm.instanceView() != null) {
+            return InstanceState.of(vm.instanceView());
+        }
+        if (this == ALL_RUNNING) {
+            return new InstanceState(PowerState.RUNNING, null);
+        }
+        return InstanceState.of(client.getInstanceView(scaleSet.resourceGroupName(), scaleSet.name(), vm.instanceId()));
+    }
+
+    /**
+     * The fault domain of a listed scale set VM. The instance view of the local VM is read if the listing left it
+     * out, so the partition group of the local member is known, other VMs keep the listed fault domain.
+     *
+     * @param client the scale set VM client
+     * @param scaleSet the scale set of the VM
+     * @param vm the listed VM
+     * @param state the instance state of the listed VM
+     * @param local whether the VM is the local one
+     * @return the fault domain, null if unknown
+     */
+    static Integer faultDomain(VirtualMachineScaleSetVMsInner client, VirtualMachineScaleSet scaleSet,
+                               VirtualMachineScaleSetVMInner vm, InstanceState state, boolean local) {
+        if (state.faultDomain() != null || !local) {
+            return state.faultDomain();
+        }
+        return InstanceState.of(client.getInstanceView(scaleSet.resourceGroupName(), scaleSet.name(), vm.instanceId()))
+                .faultDomain();
+    }
+
+    private static int count(List<VirtualMachineStatusCodeCount> statuses, String codePrefix) {
+        int count = 0;
+        for (VirtualMachineStatusCodeCount status : statuses) {
+            String code = status.code();
+            if (code != null && status.count() != null && code.regionMatches(true, 0, codePrefix, 0, codePrefix.length())) {
+                count += status.count();
+            }
+        }
+        return count;
+    }
+}
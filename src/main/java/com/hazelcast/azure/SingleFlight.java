@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs a task at most once at a time. Callers arriving while the task runs do not start it again,
+ * they wait for the running one and share its result or failure. The first caller after it completed
+ * starts a new run.
+ *
+ * @param <T> the result type of the task
+ */
+final class SingleFlight<T> {
+
+    private final Callable<T> task;
+
+    private FutureTask<T> inFlight;
+
+    /**
+     * Creates a new single flight
+     *
+     * @param task the task to run
+     */
+    SingleFlight(Callable<T> task) {
+        this.task = task;
+    }
+
+    /**
+     * Runs the task on the calling thread, or waits for the run already in flight
+     *
+     * @return the result of the run
+     * @throws Exception the failure of the run
+     */
+    T run() throws Exception {
+        FutureTask<T> flight;
+        boolean leader = false;
+        synchronized (this) {
+            if (inFlight == null) {
+                inFlight = new FutureTask<T>(task);
+                leader = true;
+            }
+            flight = inFlight;
+        }
+        if (leader) {
+            try {
+                flight.run();
+            } finally {
+                synchronized (this) {
+                    inFlight = null;
+                }
+            }
+        }
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
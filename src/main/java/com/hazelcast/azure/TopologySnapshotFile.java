@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2008-2016, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.azure;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The last known topology on disk, so a member can start joining before ARM answered.
+ * <p>
+ * The file holds a magic number, a format version, the zone of the local member and one record per
+ * node with its raw private and public IP address bytes, port, fault domain and availability zone, followed
+ * by a CRC32 of everything before it. It is written to a temporary file that is synced and then renamed over the
+ * previous snapshot, so readers never see a partial file. It is read with a plain read, since a memory mapping
+ * would keep the file locked on Windows until it is garbage collected and the rename would fail.
+ */
+final class TopologySnapshotFile {
+
+    static final int MAGIC = 0x485a415a;
+    static final byte VERSION = 1;
+
+    private static final ILogger LOGGER = Logger.getLogger(TopologySnapshotFile.class);
+    private static final int CHECKSUM_BYTES = 8;
+    private static final int MAX_NODES = 1000000;
+    private static final int UNSIGNED_SHORT = 0xffff;
+    private static final int UNSIGNED_BYTE = 0xff;
+
+    private final File file;
+
+    /**
+     * Creates a snapshot file
+     *
+     * @param file the location of the snapshot
+     */
+    TopologySnapshotFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the snapshot
+     *
+     * @return the snapshot or null if there is none or it is unreadable
+     */
+    Snapshot read() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] content = new byte[(int) file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(content);
+            } finally {
+                in.close();
+            }
+            return decode(ByteBuffer.wrap(content));
+        } catch (IOException e) {
+            LOGGER.warning("Ignoring unreadable topology snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot
+     *
+     * @param nodes the discovered nodes
+     * @param localZone the zone of the local member, null if unknown
+     * @throws IOException if the snapshot could not be written
+     */
+    void write(List<DiscoveryNode> nodes, String localZone) throws IOException {
+        byte[] content = encode(nodes, localZone);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(content);
+            out.getChannel().force(true);
+        } finally {
+            out.close();
+        }
+        // rename is atomic on POSIX file systems, Windows refuses to rename over an existing file
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    static byte[] encode(List<DiscoveryNode> nodes, String localZone) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeString(out, localZone);
+        out.writeInt(nodes.size());
+        for (DiscoveryNode node : nodes) {
+            writeAddress(out, node.getPrivateAddress());
+            writeAddress(out, node.getPublicAddress());
+            NodeLocation location = NodeLocation.of(node);
+            writeString(out, location == null ? null : location.faultDomain());
+            writeString(out, location == null ? null : location.zone());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Snapshot decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < CHECKSUM_BYTES) {
+            throw new IOException("truncated");
+        }
+        int length = buffer.remaining() - CHECKSUM_BYTES;
+        byte[] content = new byte[length];
+        buffer.get(content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if (crc.getValue() != buffer.getLong()) {
+            throw new IOException("checksum mismatch");
+        }
+        try {
+            return decodeContent(ByteBuffer.wrap(content));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated");
+        }
+    }
+
+    private static Snapshot decodeContent(ByteBuffer in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("unknown format");
+        }
+        if (in.get() != VERSION) {
+            throw new IOException("unknown format");
+        }
+        String localZone = readString(in);
+        int count = in.getInt();
+        if (count < 0 || count > MAX_NODES) {
+            throw new IOException("invalid node count " + count);
+        }
+        List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(readNode(in));
+        }
+        return new Snapshot(Collections.unmodifiableList(nodes), localZone.length() == 0 ? null : localZone);
+    }
+
+    private static DiscoveryNode readNode(ByteBuffer in) throws IOException {
+        Address privateAddress = readAddress(in);
+        Address publicAddress = readAddress(in);
+        String faultDomain = readString(in);
+        String zone = readString(in);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        if (faultDomain.length() > 0) {
+            properties.put(NodeLocation.FAULT_DOMAIN, faultDomain);
+        }
+        if (zone.length() > 0) {
+            properties.put(NodeLocation.AVAILABILITY_ZONE, zone);
+        }
+        return new SimpleDiscoveryNode(privateAddress, publicAddress == null ? privateAddress : publicAddress, properties);
+    }
+
+    private static void writeAddress(DataOutputStream out, Address address) throws IOException {
+        if (address == null) {
+            out.writeByte(0);
+            return;
+        }
+        byte[] ip = address.getInetAddress().getAddress();
+        out.writeByte(ip.length);
+        out.write(ip);
+        out.writeShort(address.getPort());
+    }
+
+    private static Address readAddress(ByteBuffer in) throws IOException {
+        int length = in.get() & UNSIGNED_BYTE;
+        if (length == 0) {
+            return null;
+        }
+        byte[] ip = new byte[length];
+        in.get(ip);
+        int port = in.getShort() & UNSIGNED_SHORT;
+        return new Address(InetAddress.getByAddress(ip), port);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf = value == null ? new byte[0] : value.getBytes("UTF-8");
+        out.writeShort(utf.length);
+        out.write(utf);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getShort() & UNSIGNED_SHORT;
+        byte[] utf = new byte[length];
+        in.get(utf);
+        return new String(utf, "UTF-8");
+    }
+
+    /**
+     * A topology read from disk
+     */
+    static final class Snapshot {
+
+        private final List<DiscoveryNode> nodes;
+        private final String localZone;
+
+        Snapshot(List<DiscoveryNode> nodes, String localZone) {
+            this.nodes = nodes;
+            this.localZone = localZone;
+        }
+
+        List<DiscoveryNode> nodes() {
+            return nodes;
+        }
+
+        String localZone() {
+            return localZone;
+        }
+    }
+}
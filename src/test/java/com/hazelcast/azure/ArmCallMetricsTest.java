@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ArmCallMetricsTest extends HazelcastTestSupport {
+
+    private static final String GROUP = "https://management.azure.com/subscriptions/" + SyntheticFleet.SUBSCRIPTION_ID
+            + "/resourceGroups/" + SyntheticFleet.RESOURCE_GROUP;
+
+    @Test
+    public void testOperationLeavesOutNames() {
+        assertEquals("GET microsoft.compute/virtualmachines",
+                operation(GROUP + "/providers/Microsoft.Compute/virtualMachines?api-version=2016-04-30-preview"));
+        assertEquals("GET microsoft.compute/virtualmachines/{name}?$expand=instanceview",
+                operation(GROUP + "/providers/Microsoft.Compute/virtualMachines/vm-1?$expand=instanceView"));
+        assertEquals("GET microsoft.compute/virtualmachinescalesets/{name}/virtualmachines/{name}/instanceview",
+                operation(GROUP + "/providers/Microsoft.Compute/virtualMachineScaleSets/ss/virtualMachines/3/instanceView"));
+        assertEquals("GET resources", operation(GROUP + "/resources?$filter=tagName"));
+    }
+
+    @Test
+    public void testPhaseOfOperation() {
+        assertEquals(ArmCallMetrics.VIRTUAL_MACHINES, phase(GROUP + "/providers/Microsoft.Compute/virtualMachines"));
+        assertEquals(ArmCallMetrics.INSTANCE_VIEWS,
+                phase(GROUP + "/providers/Microsoft.Compute/virtualMachines/vm-1?$expand=instanceView"));
+        assertEquals(ArmCallMetrics.SCALE_SETS, phase(GROUP + "/providers/Microsoft.Compute/virtualMachineScaleSets"));
+        assertEquals(ArmCallMetrics.SCALE_SET_VMS,
+                phase(GROUP + "/providers/Microsoft.Compute/virtualMachineScaleSets/ss/virtualMachines"));
+        assertEquals(ArmCallMetrics.NETWORK_INTERFACES, phase(GROUP
+                + "/providers/Microsoft.Compute/virtualMachineScaleSets/ss/virtualMachines/3/networkInterfaces/nic"));
+        assertEquals(ArmCallMetrics.PUBLIC_IP_ADDRESSES,
+                phase(GROUP + "/providers/Microsoft.Network/publicIPAddresses/ip"));
+        assertEquals(ArmCallMetrics.RESOURCES, phase(GROUP + "/resources"));
+        assertEquals(ArmCallMetrics.OTHER, phase("https://management.azure.com/subscriptions/"
+                + SyntheticFleet.SUBSCRIPTION_ID));
+    }
+
+    @Test
+    public void testCallsAreRecordedPerPhase() throws IOException {
+        ArmCallMetrics metrics = new ArmCallMetrics();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(metrics)
+                .addInterceptor(SyntheticFleet.builder().virtualMachines(2).build())
+                .build();
+
+        get(client, GROUP + "/providers/Microsoft.Compute/virtualMachines");
+        get(client, GROUP + "/providers/Microsoft.Compute/virtualMachines");
+        get(client, GROUP + "/providers/Microsoft.Network/networkInterfaces");
+
+        Map<String, LatencyStatistics> phases = metrics.phases();
+        assertEquals(2, phases.size());
+        assertEquals(2, phases.get(ArmCallMetrics.VIRTUAL_MACHINES).getCount());
+        assertEquals(1, phases.get(ArmCallMetrics.NETWORK_INTERFACES).getCount());
+        assertEquals(0, metrics.throttledCalls());
+    }
+
+    @Test
+    public void testThrottledAndFailedCallsAreCounted() throws IOException {
+        ArmCallMetrics metrics = new ArmCallMetrics();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(metrics)
+                .addInterceptor(metrics.throttledCallCounter())
+                .addInterceptor(new Interceptor() {
+                    private int calls;
+
+                    @Override
+                    public Response intercept(Chain chain) {
+                        int code = calls++ == 0 ? ArmRateLimiter.TOO_MANY_REQUESTS : 503;
+                        return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1)
+                                .code(code).message("Error")
+                                .body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+                                .build();
+                    }
+                })
+                .build();
+
+        get(client, GROUP + "/providers/Microsoft.Compute/virtualMachines");
+        get(client, GROUP + "/providers/Microsoft.Compute/virtualMachines");
+
+        LatencyStatistics statistics = metrics.operations().get("GET microsoft.compute/virtualmachines");
+        assertEquals(2, statistics.getCount());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(1, metrics.throttledCalls());
+    }
+
+    private static String operation(String url) {
+        return ArmCallMetrics.operation("GET", HttpUrl.parse(url));
+    }
+
+    private static String phase(String url) {
+        return ArmCallMetrics.phase(operation(url));
+    }
+
+    private static void get(OkHttpClient client, String url) throws IOException {
+        client.newCall(new Request.Builder().url(url).build()).execute().close();
+    }
+}
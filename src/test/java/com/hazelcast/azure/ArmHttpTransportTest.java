@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import com.microsoft.rest.RestClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ArmHttpTransportTest extends HazelcastTestSupport {
+
+    private static final String BODY = "{\"value\":[]}";
+
+    private volatile String acceptEncoding;
+    private volatile long delayMillis;
+    private HttpServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                sleepMillis((int) delayMillis);
+                boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+                if (gzip) {
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+                out.write(BODY.getBytes("UTF-8"));
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws IOException {
+        ArmHttpTransport transport = new ArmHttpTransport(5, 300, 1000, 1000, 0, true, null);
+        OkHttpClient client = transport.httpClientBuilder().build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BODY, get(client));
+        }
+
+        assertEquals(3, transport.connectionsAcquired());
+        assertEquals(1, transport.connectionsOpened());
+        assertEquals(2, transport.connectionsReused());
+        assertEquals(1, transport.pooledConnections());
+
+        transport.close();
+        assertEquals(0, transport.pooledConnections());
+    }
+
+    @Test
+    public void testGzipResponseIsDecoded() throws IOException {
+        ArmHttpTransport transport = new ArmHttpTransport(5, 300, 1000, 1000, 0, true, null);
+
+        assertEquals(BODY, get(transport.httpClientBuilder().build()));
+        assertEquals("gzip", acceptEncoding);
+    }
+
+    @Test
+    public void testGzipDisabled() throws IOException {
+        ArmHttpTransport transport = new ArmHttpTransport(5, 300, 1000, 1000, 0, false, null);
+
+        assertEquals(BODY, get(transport.httpClientBuilder().build()));
+        assertEquals("identity", acceptEncoding);
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void testCallTimeout() throws IOException {
+        delayMillis = TimeUnit.SECONDS.toMillis(2);
+        ArmHttpTransport transport = new ArmHttpTransport(5, 300, 1000, 0, 200, true, null);
+
+        get(transport.httpClientBuilder().build());
+    }
+
+    @Test
+    public void testPropertiesAndKey() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        ArmHttpTransport defaults = ArmHttpTransport.of(properties);
+        properties.put("http-max-idle-connections", 10);
+        properties.put("http-gzip", false);
+        properties.put("arm-requests-per-second", 10);
+        ArmHttpTransport tuned = ArmHttpTransport.of(properties);
+
+        assertEquals("5/300/60000/120000/0/true/unlimited", defaults.key());
+        assertEquals("10/300/60000/120000/0/false/10.0/20/3", tuned.key());
+        assertNotEquals(defaults.key(), tuned.key());
+    }
+
+    @Test
+    public void testKeyWithoutTransport() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put("http-read-timeout-millis", 5000);
+
+        assertEquals(ArmHttpTransport.of(properties).key(), ArmHttpTransport.key(properties));
+        properties.put("arm-requests-per-second", 10);
+        assertEquals(ArmHttpTransport.of(properties).key(), ArmHttpTransport.key(properties));
+    }
+
+    @Test
+    public void testRestClientUsesTransport() {
+        ArmHttpTransport transport = new ArmHttpTransport(5, 300, 1000, 2000, 3000, true, null);
+        RestClient restClient = transport.restClient(new AzureTokenCredentials(AzureEnvironment.AZURE, "tenant") {
+            @Override
+            public String getToken(String resource) {
+                return "token";
+            }
+        });
+
+        assertEquals(1000, restClient.httpClient().connectTimeoutMillis());
+        assertEquals(2000, restClient.httpClient().readTimeoutMillis());
+        assertEquals(3000, restClient.httpClient().callTimeoutMillis());
+        assertTrue(restClient.retrofit().baseUrl().toString().startsWith(AzureEnvironment.AZURE.resourceManagerEndpoint()));
+    }
+
+    private String get(OkHttpClient client) throws IOException {
+        Request request = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/").build();
+        Response response = client.newCall(request).execute();
+        try {
+            return response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ArmRateLimiterTest extends HazelcastTestSupport {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> retryAfters = new ConcurrentLinkedQueue<String>();
+    private final String subscription = randomString();
+    private volatile String remainingReads;
+    private HttpServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String retryAfter = retryAfters.poll();
+                if (remainingReads != null) {
+                    exchange.getResponseHeaders().add(ArmRateLimiter.REMAINING_READS, remainingReads);
+                }
+                if (retryAfter != null) {
+                    exchange.getResponseHeaders().add(ArmRateLimiter.RETRY_AFTER, retryAfter);
+                }
+                exchange.sendResponseHeaders(retryAfter == null ? 200 : ArmRateLimiter.TOO_MANY_REQUESTS, -1);
+                OutputStream out = exchange.getResponseBody();
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testThrottledCallIsRetriedAfterRetryAfter() throws IOException {
+        retryAfters.add("1");
+        ArmRateLimiter limiter = new ArmRateLimiter(100, 10, 3);
+
+        long start = System.nanoTime();
+        int code = call(limiter);
+
+        assertEquals(200, code);
+        assertEquals(2, requests.get());
+        assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testThrottledResponseIsReturnedAfterMaxRetries() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            retryAfters.add("0");
+        }
+        ArmRateLimiter limiter = new ArmRateLimiter(100, 10, 2);
+
+        assertEquals(ArmRateLimiter.TOO_MANY_REQUESTS, call(limiter));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testCallsArePaced() throws IOException {
+        ArmRateLimiter limiter = new ArmRateLimiter(20, 1, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            call(limiter);
+        }
+
+        // the first call uses the burst, the other four wait 50 ms each
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void testLowRemainingReadsSlowDown() throws IOException {
+        ArmRateLimiter limiter = new ArmRateLimiter(10, 10, 0);
+        remainingReads = "100";
+
+        call(limiter);
+
+        assertEquals(1.0, limiter.rate(subscription), 0.001);
+        ArmRateLimiter.bucket(subscription).remainingReads(0);
+        assertEquals(0.5, limiter.rate(subscription), 0.001);
+        ArmRateLimiter.bucket(subscription).remainingReads(ArmRateLimiter.LOW_REMAINING_READS);
+        assertEquals(10, limiter.rate(subscription), 0.001);
+    }
+
+    @Test
+    public void testLimitersShareSubscriptionBucket() throws IOException {
+        ArmRateLimiter first = new ArmRateLimiter(20, 1, 0);
+        ArmRateLimiter second = new ArmRateLimiter(20, 1, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            call(i % 2 == 0 ? first : second);
+        }
+
+        // separate transports still pace each other, so this takes as long as with one limiter
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void testDelayIncludesJitter() {
+        ArmRateLimiter limiter = new ArmRateLimiter(10, 10, 3);
+        for (int i = 0; i < 20; i++) {
+            long withRetryAfter = limiter.delayMillis(4, 0);
+            assertTrue(withRetryAfter >= 4000 && withRetryAfter <= 5000);
+            long firstBackoff = limiter.delayMillis(null, 0);
+            assertTrue(firstBackoff >= 500 && firstBackoff <= 1000);
+            long laterBackoff = limiter.delayMillis(null, 3);
+            assertTrue(laterBackoff >= 4000 && laterBackoff <= 8000);
+        }
+    }
+
+    @Test
+    public void testSubscription() {
+        assertEquals("test-subscription", ArmRateLimiter.subscription(
+                "/subscriptions/Test-Subscription/resourceGroups/test-group/providers/Microsoft.Compute/virtualMachines"));
+        assertEquals("global", ArmRateLimiter.subscription("/providers/Microsoft.ResourceGraph/resources"));
+    }
+
+    private int call(ArmRateLimiter limiter) throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(limiter).build();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/subscriptions/" + subscription + "/";
+        Request request = new Request.Builder().url(url).build();
+        Response response = client.newCall(request).execute();
+        try {
+            return response.code();
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the compute and network endpoints of Azure Resource Manager, serving
+ * {@link SyntheticFleet}s over HTTP, each with its own latency, so a cluster spread over several
+ * resource groups or subscriptions is served by fleets of different groups. It also answers token requests the way the managed identity VM
+ * extension does, so {@link AzureDiscoveryStrategy} runs unchanged against it, credentials, transport,
+ * rate limiting and retries included, once pointed at it with {@link #properties()}.
+ * <p>
+ * Faults are injected on the next calls: a latency on every call, throttled calls, server errors and
+ * pages cut off in the middle of their body.
+ */
+final class ArmStandIn {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String TOKEN_PATH = "/oauth2/token";
+    private static final int TOKEN_LIFETIME_SECONDS = 3600;
+
+    private final List<SyntheticFleet> fleets;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String managementEndpoint;
+    private final AtomicInteger throttledCalls = new AtomicInteger();
+    private final AtomicInteger failedCalls = new AtomicInteger();
+    private final AtomicInteger truncatedPages = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong tokenRequests = new AtomicLong();
+    private volatile int latencyMillis;
+
+    private ArmStandIn(SyntheticFleet... fleets) throws IOException {
+        this.fleets = Arrays.asList(fleets);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("arm-stand-in"));
+        this.managementEndpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Starts serving fleets on an ephemeral port of the loopback interface
+     *
+     * @param fleets the fleets to serve, a call is answered by the first fleet holding the resource
+     * @return the started stand-in
+     * @throws IOException if the server can not be started
+     */
+    static ArmStandIn start(SyntheticFleet... fleets) throws IOException {
+        return new ArmStandIn(fleets);
+    }
+
+    /**
+     * @return the Resource Manager URL of this stand-in
+     */
+    String managementEndpoint() {
+        return managementEndpoint;
+    }
+
+    /**
+     * @return the port this stand-in listens on, also the port of its managed identity endpoint
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return discovery properties of the fleet, with the clients pointed at this stand-in
+     */
+    Map<String, Comparable> properties() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        properties.put(AzureProperties.MANAGEMENT_ENDPOINT.key(), managementEndpoint);
+        properties.put(AzureProperties.MANAGED_IDENTITY_PORT.key(), port());
+        return properties;
+    }
+
+    /**
+     * @param millis the delay of every call
+     * @return this stand-in
+     */
+    ArmStandIn latencyMillis(int millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param calls the number of next calls answered with HTTP 429 and a Retry-After of 1 second, the shortest ARM announces
+     * @return this stand-in
+     */
+    ArmStandIn throttle(int calls) {
+        throttledCalls.set(calls);
+        return this;
+    }
+
+    /**
+     * @param calls the number of next calls answered with HTTP 503
+     * @return this stand-in
+     */
+    ArmStandIn failWithServerError(int calls) {
+        failedCalls.set(calls);
+        return this;
+    }
+
+    /**
+     * @param pages the number of next pages of a listing whose body is cut off after half of it
+     * @return this stand-in
+     */
+    ArmStandIn truncatePages(int pages) {
+        truncatedPages.set(pages);
+        return this;
+    }
+
+    /**
+     * @return the number of ARM calls served, faults included
+     */
+    long requests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of tokens handed out
+     */
+    long tokenRequests() {
+        return tokenRequests.get();
+    }
+
+    /**
+     * Stops serving
+     */
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        if (TOKEN_PATH.equals(exchange.getRequestURI().getPath())) {
+            tokenRequests.incrementAndGet();
+            long expiresOn = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + TOKEN_LIFETIME_SECONDS;
+            send(exchange, 200, "{\"access_token\":\"stand-in\",\"token_type\":\"Bearer\",\"expires_on\":\""
+                    + expiresOn + "\"}");
+            return;
+        }
+        requests.incrementAndGet();
+        sleep();
+        if (consume(throttledCalls)) {
+            exchange.getResponseHeaders().add(ArmRateLimiter.RETRY_AFTER, "1");
+            send(exchange, ArmRateLimiter.TOO_MANY_REQUESTS, error("TooManyRequests", "The request is throttled"));
+            return;
+        }
+        if (consume(failedCalls)) {
+            send(exchange, 503, error("ServiceUnavailable", "The service is unavailable"));
+            return;
+        }
+        HttpUrl url = HttpUrl.parse(managementEndpoint).resolve(exchange.getRequestURI().toString());
+        SyntheticFleet fleet = fleetOf(url);
+        if (fleet == null) {
+            send(exchange, 404, error("ResourceNotFound", url.encodedPath() + " not found"));
+            return;
+        }
+        fleet.delay();
+        byte[] body = fleet.respond(url);
+        if (fleet.lists(url) && consume(truncatedPages)) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, 0, body.length / 2);
+            out.flush();
+            // closing the exchange with bytes missing drops the connection
+        } else {
+            send(exchange, 200, body);
+        }
+    }
+
+    private SyntheticFleet fleetOf(HttpUrl url) {
+        for (SyntheticFleet fleet : fleets) {
+            if (fleet.respond(url) != null) {
+                return fleet;
+            }
+        }
+        return null;
+    }
+
+    private void sleep() {
+        int millis = latencyMillis;
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean consume(AtomicInteger faults) {
+        int left = faults.get();
+        while (left > 0) {
+            if (faults.compareAndSet(left, left - 1)) {
+                return true;
+            }
+            left = faults.get();
+        }
+        return false;
+    }
+
+    private static String error(String code, String message) {
+        return "{\"error\":{\"code\":\"" + code + "\",\"message\":\"" + message + "\"}}";
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        send(exchange, code, body.getBytes(UTF8));
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ArmStandInTest extends HazelcastTestSupport {
+
+    private ArmStandIn standIn;
+    private AzureDiscoveryStrategy strategy;
+
+    @After
+    public void tearDown() {
+        if (strategy != null) {
+            strategy.destroy();
+        }
+        if (standIn != null) {
+            standIn.stop();
+        }
+    }
+
+    @Test
+    public void testDiscoversThroughManagementEndpoint() throws IOException {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(6)
+                .scaleSets(2, 10)
+                .stoppedShare(0.2)
+                .pageSize(4)
+                .build();
+        standIn = ArmStandIn.start(fleet);
+
+        assertEquals(new HashSet<String>(fleet.runningAddresses()), discover(standIn.properties()));
+        assertTrue(standIn.tokenRequests() > 0);
+    }
+
+    @Test
+    public void testDiscoversFleetOfFixture() throws IOException {
+        SyntheticFleet fleet = SyntheticFleet.builder().fixture("arm-fleet.json").pageSize(2).build();
+        standIn = ArmStandIn.start(fleet);
+        Map<String, Comparable> properties = standIn.properties();
+        properties.put(AzureProperties.BATCH_NETWORK_LOOKUP.key(), true);
+        properties.put(AzureProperties.BULK_INSTANCE_VIEW.key(), true);
+
+        assertEquals(new HashSet<String>(fleet.runningAddresses()), discover(properties));
+        assertEquals(4, fleet.runningAddresses().size());
+    }
+
+    @Test
+    public void testThrottledCallsAreRetried() throws IOException {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(3).build();
+        // the SDK retries a throttled call once
+        standIn = ArmStandIn.start(fleet).throttle(1);
+
+        assertEquals(3, discover(standIn.properties()).size());
+        assertEquals(1, strategy.metrics().getThrottledCalls());
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws IOException {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(3).build();
+        standIn = ArmStandIn.start(fleet).failWithServerError(2);
+
+        assertEquals(3, discover(standIn.properties()).size());
+        long calls = 0;
+        for (LatencyStatistics phase : strategy.metrics().getPhases().values()) {
+            calls += phase.getCount();
+        }
+        // the SDK retries server errors within a call
+        assertEquals(calls + 2, standIn.requests());
+    }
+
+    @Test
+    public void testTruncatedPageFailsOneDiscovery() throws IOException {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(5).pageSize(2).build();
+        standIn = ArmStandIn.start(fleet).truncatePages(1);
+
+        discover(standIn.properties());
+        assertEquals(1, strategy.metrics().getFailedDiscoveries());
+
+        Set<String> addresses = new HashSet<String>();
+        for (DiscoveryNode node : strategy.discoverNodes()) {
+            addresses.add(node.getPrivateAddress().getHost());
+        }
+        assertEquals(new HashSet<String>(fleet.runningAddresses()), addresses);
+    }
+
+    private Set<String> discover(Map<String, Comparable> properties) {
+        strategy = new AzureDiscoveryStrategy(properties);
+        strategy.start();
+        Set<String> addresses = new HashSet<String>();
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes();
+        if (nodes != null) {
+            for (DiscoveryNode node : nodes) {
+                addresses.add(node.getPrivateAddress().getHost());
+            }
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import rx.observers.TestSubscriber;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class AsyncComputeDiscoveryBackendTest extends HazelcastTestSupport {
+
+    private static final LocalAddressIndex NO_LOCAL_ADDRESSES = new LocalAddressIndex(TimeUnit.MINUTES.toMillis(1));
+
+    @Test
+    public void testDiscoversRunningTaggedMembers() throws Exception {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(20)
+                .scaleSets(3, 30)
+                .publicIpShare(0.5)
+                .stoppedShare(0.2)
+                .untaggedShare(0.1)
+                .pageSize(7)
+                .build();
+        AsyncComputeDiscoveryBackend backend = backend(fleet, new HashMap<String, Comparable>());
+
+        Set<String> addresses = new HashSet<String>();
+        for (DiscoveryNode node : backend.discoverNodes(SyntheticFleet.RESOURCE_GROUP, SyntheticFleet.CLUSTER_ID)) {
+            assertEquals(SyntheticFleet.PORT, node.getPrivateAddress().getPort());
+            addresses.add(node.getPrivateAddress().getHost());
+        }
+
+        assertEquals(new HashSet<String>(fleet.runningAddresses()), addresses);
+    }
+
+    @Test
+    public void testDiscoversPublicAddresses() throws Exception {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(3).publicIpShare(1).build();
+        AsyncComputeDiscoveryBackend backend = backend(fleet, new HashMap<String, Comparable>());
+
+        for (DiscoveryNode node : backend.discoverNodes(SyntheticFleet.RESOURCE_GROUP, SyntheticFleet.CLUSTER_ID)) {
+            assertEquals("20", node.getPublicAddress().getHost().split("\\.")[0]);
+        }
+    }
+
+    @Test
+    public void testNothingIsCalledBeforeSubscription() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(5).build();
+        AsyncComputeDiscoveryBackend backend = backend(fleet, new HashMap<String, Comparable>());
+
+        backend.discoverNodesAsync(SyntheticFleet.RESOURCE_GROUP, SyntheticFleet.CLUSTER_ID);
+
+        assertEquals(0, fleet.requests());
+    }
+
+    @Test
+    public void testConcurrencyBoundsLookups() {
+        int latencyMillis = 50;
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(16).latencyMillis(latencyMillis).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.DISCOVERY_CONCURRENCY.key(), 2);
+        AsyncComputeDiscoveryBackend backend = backend(fleet, properties);
+
+        long start = System.nanoTime();
+        int nodes = backend.discoverNodes(SyntheticFleet.RESOURCE_GROUP, SyntheticFleet.CLUSTER_ID).size();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // each VM takes an instance view and a NIC round trip, two VMs at a time
+        assertEquals(16, nodes);
+        assertTrue("elapsed: " + elapsedMillis, elapsedMillis >= 16 / 2 * 2 * latencyMillis);
+    }
+
+    @Test
+    public void testFailedListingFailsDiscovery() {
+        SyntheticFleet fleet = SyntheticFleet.builder().build();
+        AsyncComputeDiscoveryBackend backend = backend(fleet, new HashMap<String, Comparable>());
+        TestSubscriber<DiscoveryNode> subscriber = TestSubscriber.create();
+
+        backend.discoverNodesAsync("missing", SyntheticFleet.CLUSTER_ID).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+    }
+
+    @Test
+    public void testStrategyDiscoversAsynchronously() {
+        String localAddress = new AzureDiscoveryStrategy(new HashMap<String, Comparable>()).getLocalHostAddress();
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(0)
+                .scaleSets(2, 10)
+                .localAddress(localAddress)
+                .latencyMillis(20)
+                .build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        properties.put(AzureProperties.DISCOVERY_BACKEND.key(), DiscoveryBackend.COMPUTE_ASYNC);
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+        TestSubscriber<DiscoveryNode> subscriber = TestSubscriber.create();
+
+        strategy.discoverNodesAsync().subscribe(subscriber);
+        assertEquals(0, subscriber.getValueCount());
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+
+        subscriber.assertNoErrors();
+        assertEquals(fleet.runningAddresses().size(), subscriber.getValueCount());
+        assertEquals(1, strategy.metrics().getDiscoveries());
+        assertEquals("0", strategy.discoverLocalMetadata().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+        strategy.destroy();
+    }
+
+    private static AsyncComputeDiscoveryBackend backend(SyntheticFleet fleet, Map<String, Comparable> properties) {
+        return AsyncComputeDiscoveryBackend.of(fleet.computeManager(), NO_LOCAL_ADDRESSES, properties);
+    }
+}
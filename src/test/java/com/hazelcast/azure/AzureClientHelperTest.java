@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.AzureEnvironment;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class AzureClientHelperTest extends HazelcastTestSupport {
+
+    @Test
+    public void testPublicCloudByDefault() {
+        assertSame(AzureEnvironment.AZURE, AzureClientHelper.environment(new HashMap<String, Comparable>()));
+    }
+
+    @Test
+    public void testManagementEndpointOnly() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put("management-endpoint", "http://127.0.0.1:8080");
+
+        AzureEnvironment environment = AzureClientHelper.environment(properties);
+
+        assertEquals("http://127.0.0.1:8080/", environment.resourceManagerEndpoint());
+        assertEquals(AzureEnvironment.AZURE.activeDirectoryEndpoint(), environment.activeDirectoryEndpoint());
+        assertEquals(AzureEnvironment.AZURE.managementEndpoint(), environment.managementEndpoint());
+    }
+
+    @Test
+    public void testAzureStackEndpoints() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put("management-endpoint", "https://management.local.azurestack.external/");
+        properties.put("active-directory-endpoint", "https://adfs.local.azurestack.external/adfs");
+        properties.put("management-audience",
+                "https://management.adfs.azurestack.local/4de154de-f8a8-4017-af41-df619da68155");
+
+        AzureEnvironment environment = AzureClientHelper.environment(properties);
+
+        assertEquals("https://management.local.azurestack.external/", environment.resourceManagerEndpoint());
+        assertEquals("https://adfs.local.azurestack.external/adfs/", environment.activeDirectoryEndpoint());
+        assertEquals("https://management.adfs.azurestack.local/4de154de-f8a8-4017-af41-df619da68155",
+                environment.managementEndpoint());
+    }
+}
@@ -59,6 +59,40 @@ public class AzureDiscoveryStrategyFactoryTest extends HazelcastTestSupport {
         assertTrue(properties.contains(AzureProperties.GROUP_NAME));
         assertTrue(properties.contains(AzureProperties.SUBSCRIPTION_ID));
         assertTrue(properties.contains(AzureProperties.TENANT_ID));
+        assertTrue(properties.contains(AzureProperties.DISCOVERY_CACHE_TTL_SECONDS));
+        assertTrue(properties.contains(AzureProperties.DISCOVERY_CONCURRENCY));
+        assertTrue(properties.contains(AzureProperties.BATCH_NETWORK_LOOKUP));
+        assertTrue(properties.contains(AzureProperties.BULK_INSTANCE_VIEW));
+        assertTrue(properties.contains(AzureProperties.USE_INSTANCE_METADATA));
+        assertTrue(properties.contains(AzureProperties.INSTANCE_METADATA_ENDPOINT));
+        assertTrue(properties.contains(AzureProperties.DISCOVERY_BACKEND));
+        assertTrue(properties.contains(AzureProperties.SERVER_SIDE_TAG_FILTER));
+        assertTrue(properties.contains(AzureProperties.INCREMENTAL_DISCOVERY));
+        assertTrue(properties.contains(AzureProperties.HTTP_MAX_IDLE_CONNECTIONS));
+        assertTrue(properties.contains(AzureProperties.HTTP_KEEP_ALIVE_SECONDS));
+        assertTrue(properties.contains(AzureProperties.HTTP_CONNECT_TIMEOUT_MILLIS));
+        assertTrue(properties.contains(AzureProperties.HTTP_READ_TIMEOUT_MILLIS));
+        assertTrue(properties.contains(AzureProperties.HTTP_CALL_TIMEOUT_MILLIS));
+        assertTrue(properties.contains(AzureProperties.HTTP_GZIP));
+        assertTrue(properties.contains(AzureProperties.ARM_REQUESTS_PER_SECOND));
+        assertTrue(properties.contains(AzureProperties.ARM_REQUEST_BURST));
+        assertTrue(properties.contains(AzureProperties.ARM_THROTTLING_RETRIES));
+        assertTrue(properties.contains(AzureProperties.TOPOLOGY_SNAPSHOT_FILE));
+        assertTrue(properties.contains(AzureProperties.JMX_METRICS));
+        assertTrue(properties.contains(AzureProperties.MANAGEMENT_ENDPOINT));
+        assertTrue(properties.contains(AzureProperties.ACTIVE_DIRECTORY_ENDPOINT));
+        assertTrue(properties.contains(AzureProperties.MANAGEMENT_AUDIENCE));
+        assertTrue(properties.contains(AzureProperties.MANAGED_IDENTITY_PORT));
+        assertTrue(properties.contains(AzureProperties.EARLY_SEED_COUNT));
+        assertTrue(properties.contains(AzureProperties.GROUP_TIMEOUT_SECONDS));
+        assertTrue(properties.contains(AzureProperties.LIVENESS_PROBE_TIMEOUT_MILLIS));
+        assertTrue(properties.contains(AzureProperties.LIVENESS_PROBE_DEAD_TTL_SECONDS));
+        assertTrue(properties.contains(AzureProperties.LIVENESS_PROBE_ALIVE_TTL_SECONDS));
+        assertTrue(properties.contains(AzureProperties.EVENT_GRID_PORT));
+        assertTrue(properties.contains(AzureProperties.EVENT_GRID_KEY));
+        assertTrue(properties.contains(AzureProperties.EVENT_GRID_BIND_ADDRESS));
+        assertTrue(properties.contains(AzureProperties.SCALE_SET_POWER_SUMMARY));
+        assertTrue(properties.contains(AzureProperties.INCREMENTAL_DISCOVERY_MAX_AGE_SECONDS));
     }
 
     @Test
@@ -71,6 +105,40 @@ public class AzureDiscoveryStrategyFactoryTest extends HazelcastTestSupport {
         properties.put("cluster-id", "test-value");
         properties.put("tenant-id", "test-value");
         properties.put("group-name", "test-value");
+        properties.put("discovery-cache-ttl-seconds", 30);
+        properties.put("discovery-concurrency", 4);
+        properties.put("batch-network-lookup", true);
+        properties.put("bulk-instance-view", true);
+        properties.put("use-instance-metadata", true);
+        properties.put("instance-metadata-endpoint", "http://127.0.0.1/metadata/instance");
+        properties.put("discovery-backend", "resource-graph");
+        properties.put("server-side-tag-filter", true);
+        properties.put("incremental-discovery", true);
+        properties.put("http-max-idle-connections", 10);
+        properties.put("http-keep-alive-seconds", 120);
+        properties.put("http-connect-timeout-millis", 5000);
+        properties.put("http-read-timeout-millis", 20000);
+        properties.put("http-call-timeout-millis", 30000);
+        properties.put("http-gzip", true);
+        properties.put("arm-requests-per-second", 5);
+        properties.put("arm-request-burst", 10);
+        properties.put("arm-throttling-retries", 2);
+        properties.put("topology-snapshot-file", "/var/lib/hazelcast/azure-topology.bin");
+        properties.put("jmx-metrics", true);
+        properties.put("management-endpoint", "http://127.0.0.1:8080/");
+        properties.put("active-directory-endpoint", "https://login.microsoftonline.us/");
+        properties.put("management-audience", "https://management.core.usgovcloudapi.net/");
+        properties.put("managed-identity-port", 50342);
+        properties.put("early-seed-count", 3);
+        properties.put("group-timeout-seconds", 30);
+        properties.put("liveness-probe-timeout-millis", 500);
+        properties.put("liveness-probe-dead-ttl-seconds", 30);
+        properties.put("liveness-probe-alive-ttl-seconds", 60);
+        properties.put("event-grid-port", 8080);
+        properties.put("event-grid-key", "secret");
+        properties.put("event-grid-bind-address", "127.0.0.1");
+        properties.put("scale-set-power-summary", true);
+        properties.put("incremental-discovery-max-age-seconds", 600);
 
         AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
 
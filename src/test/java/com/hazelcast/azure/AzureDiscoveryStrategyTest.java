@@ -17,44 +17,88 @@ package com.hazelcast.azure;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.hazelcast.nio.Address;
 import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
 import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+import com.hazelcast.test.AssertTask;
 import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.CloudException;
 import com.microsoft.azure.Page;
 import com.microsoft.azure.PagedList;
 import com.microsoft.azure.management.compute.*;
+import com.microsoft.azure.management.compute.implementation.ComputeManagementClientImpl;
 import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetInstanceViewInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMInstanceViewInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetVMsInner;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetsInner;
 import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.NetworkInterfaces;
 import com.microsoft.azure.management.network.NicIPConfiguration;
 import com.microsoft.azure.management.network.PublicIPAddress;
+import com.microsoft.azure.management.network.PublicIPAddresses;
 import com.microsoft.azure.management.network.VirtualMachineScaleSetNetworkInterface;
+import com.microsoft.azure.management.network.implementation.NetworkManager;
+import com.microsoft.azure.management.resources.implementation.GenericResourceInner;
+import com.microsoft.azure.management.resources.implementation.ResourceManagementClientImpl;
+import com.microsoft.azure.management.resources.implementation.ResourceManager;
+import com.microsoft.azure.management.resources.implementation.ResourcesInner;
 import com.microsoft.rest.RestException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.hazelcast.azure.AzureClientHelper.getComputeManager;
+import static com.hazelcast.azure.AzureClientHelper.getNetworkManager;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 @RunWith(PowerMockRunner.class)
+@Category(QuickTest.class)
+@PowerMockIgnore({"com.sun.net.httpserver.*", "sun.net.httpserver.*"})
 @PrepareForTest(fullyQualifiedNames = {
         "com.microsoft.windowsazure.core.*",
         "com.microsoft.azure.management.compute.*",
         "com.microsoft.azure.management.network.*",
+        "com.microsoft.azure.management.resources.*",
         "com.hazelcast.azure.AzureClientHelper"
 })
 public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
 
     private Map<String, Comparable> properties;
     private ArrayList<VirtualMachine> virtualMachines;
+    private List<NetworkInterface> networkInterfaces = new ArrayList<NetworkInterface>();
+    private List<PublicIPAddress> publicIPAddresses = new ArrayList<PublicIPAddress>();
     private ComputeManager computeManager = mock(ComputeManager.class);
     private VirtualMachines vmService = mock(VirtualMachines.class);
     private VirtualMachineScaleSets scaleSetService = mock(VirtualMachineScaleSets.class);
@@ -82,6 +126,8 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
 
     private void buildFakeVmList(int count) {
         virtualMachines.clear();
+        networkInterfaces.clear();
+        publicIPAddresses.clear();
         for (int i = 0; i < count; i++) {
             createVMWithIp(i, null);
         }
@@ -123,14 +169,24 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
         when(vm.instanceView()).thenReturn(vmInstance);
         when(vmInstance.platformFaultDomain()).thenReturn(FAULT_DOMAIN_ID);
 
+        String networkInterfaceId = "/subscriptions/test-value/resourceGroups/test-value/providers"
+                + "/Microsoft.Network/networkInterfaces/nic-" + i;
         NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.id()).thenReturn(networkInterfaceId);
+        when(vm.primaryNetworkInterfaceId()).thenReturn(networkInterfaceId);
         when(vm.getPrimaryNetworkInterface()).thenReturn(networkInterface);
         NicIPConfiguration ipConfiguration = mock(NicIPConfiguration.class);
         when(networkInterface.ipConfigurations()).thenReturn(ImmutableMap.of("nic-name", ipConfiguration));
         when(ipConfiguration.privateIPAddress()).thenReturn("10.0.5." + i);
 
+        String publicIPAddressId = "/subscriptions/test-value/resourceGroups/test-value/providers"
+                + "/Microsoft.Network/publicIPAddresses/ip-" + i;
         PublicIPAddress publicIPAddress = mock(PublicIPAddress.class);
+        when(publicIPAddress.id()).thenReturn(publicIPAddressId);
+        when(ipConfiguration.publicIPAddressId()).thenReturn(publicIPAddressId);
         when(ipConfiguration.getPublicIPAddress()).thenReturn(publicIPAddress);
+        networkInterfaces.add(networkInterface);
+        publicIPAddresses.add(publicIPAddress);
         if (ipAddress == null) {
             when(publicIPAddress.ipAddress()).thenReturn("44.18.12." + i);
         } else {
@@ -195,6 +251,51 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
                 Integer.toString(FAULT_DOMAIN_ID));
     }
 
+    @Test
+    public void testLocalMetadataFromInstanceMetadata() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/metadata/instance", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] response = InstanceMetadataResolverTest.INSTANCE_DOCUMENT.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            properties.put("use-instance-metadata", true);
+            properties.put("instance-metadata-endpoint",
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/metadata/instance");
+            AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+            AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+            strategy.start();
+
+            assertEquals("1", strategy.discoverLocalMetadata().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+            verify(vmService, never()).listByResourceGroup(anyString());
+            verify(scaleSetService, never()).listByResourceGroup(anyString());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testLocalMetadataFallsBackToScanOnce() {
+        buildFakeVmList(2);
+        properties.put("use-instance-metadata", true);
+        // nothing listens on port 1
+        properties.put("instance-metadata-endpoint", "http://127.0.0.1:1/metadata/instance");
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+
+        // none of the VMs is local, so no fault domain is found
+        assertEquals(0, strategy.discoverLocalMetadata().size());
+        assertEquals(0, strategy.discoverLocalMetadata().size());
+        verify(vmService, times(1)).listByResourceGroup("test-value");
+    }
+
     @Test
     public void testDiscoverNodesMocked3() {
         buildFakeVmList(3);
@@ -213,6 +314,215 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
         testDiscoverNodesMocked(0);
     }
 
+    @Test
+    public void testDiscoverNodesCached() {
+        buildFakeVmList(3);
+        properties.put("discovery-cache-ttl-seconds", 600);
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+
+        strategy.start();
+        try {
+            assertEquals(3, Iterables.size(strategy.discoverNodes()));
+            assertEquals(3, Iterables.size(strategy.discoverNodes()));
+        } finally {
+            strategy.destroy();
+        }
+
+        verify(vmService, times(1)).listByResourceGroup("test-value");
+    }
+
+    @Test
+    public void testConcurrentDiscoveryIsCoalesced() throws Exception {
+        buildFakeVmList(2);
+        final PagedList<VirtualMachine> machinesPage = vmService.listByResourceGroup("test-value");
+        final CountDownLatch scanStarted = new CountDownLatch(1);
+        final CountDownLatch releaseScan = new CountDownLatch(1);
+        when(vmService.listByResourceGroup(eq("test-value"))).thenAnswer(new Answer<PagedList<VirtualMachine>>() {
+            @Override
+            public PagedList<VirtualMachine> answer(InvocationOnMock invocation) throws Throwable {
+                scanStarted.countDown();
+                releaseScan.await();
+                return machinesPage;
+            }
+        });
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        final AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+
+        List<Future<Iterable<DiscoveryNode>>> results = new ArrayList<Future<Iterable<DiscoveryNode>>>();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(new Callable<Iterable<DiscoveryNode>>() {
+                    @Override
+                    public Iterable<DiscoveryNode> call() {
+                        return strategy.discoverNodes();
+                    }
+                }));
+            }
+            assertOpenEventually(scanStarted);
+            // give the other callers time to join the running scan
+            sleepMillis(200);
+            releaseScan.countDown();
+
+            Iterable<DiscoveryNode> first = results.get(0).get();
+            assertEquals(2, Iterables.size(first));
+            for (Future<Iterable<DiscoveryNode>> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        // one invocation fetched the page for the answer above, the other is the only scan
+        verify(vmService, times(2)).listByResourceGroup("test-value");
+    }
+
+    @Test
+    public void testWarmStartFromTopologySnapshot() throws Exception {
+        File file = File.createTempFile("azure-topology", ".bin");
+        try {
+            new TopologySnapshotFile(file).write(Collections.<DiscoveryNode>singletonList(
+                    new SimpleDiscoveryNode(new Address("10.0.9.9", 5701))), "3");
+            buildFakeVmList(2);
+            final PagedList<VirtualMachine> machinesPage = vmService.listByResourceGroup("test-value");
+            final CountDownLatch releaseScan = new CountDownLatch(1);
+            when(vmService.listByResourceGroup(eq("test-value"))).thenAnswer(new Answer<PagedList<VirtualMachine>>() {
+                @Override
+                public PagedList<VirtualMachine> answer(InvocationOnMock invocation) throws Throwable {
+                    releaseScan.await();
+                    return machinesPage;
+                }
+            });
+            properties.put("topology-snapshot-file", file.getAbsolutePath());
+            AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+            final AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+            strategy.start();
+            try {
+                // served from the snapshot while the scan is still blocked
+                Iterable<DiscoveryNode> warm = strategy.discoverNodes();
+                assertEquals(1, Iterables.size(warm));
+                assertEquals("10.0.9.9", warm.iterator().next().getPrivateAddress().getHost());
+                assertEquals("3", strategy.discoverLocalMetadata().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+
+                releaseScan.countDown();
+                assertTrueEventually(new AssertTask() {
+                    @Override
+                    public void run() {
+                        assertEquals(2, Iterables.size(strategy.discoverNodes()));
+                    }
+                });
+            } finally {
+                strategy.destroy();
+            }
+            assertEquals(2, new TopologySnapshotFile(file).read().nodes().size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDiscoverNodesWithBatchNetworkLookup() {
+        buildFakeVmList(4);
+        properties.put("batch-network-lookup", true);
+        NetworkManager networkManager = mock(NetworkManager.class);
+        NetworkInterfaces networkInterfaceService = mock(NetworkInterfaces.class);
+        PublicIPAddresses publicIPAddressService = mock(PublicIPAddresses.class);
+        when(networkManager.networkInterfaces()).thenReturn(networkInterfaceService);
+        when(networkManager.publicIPAddresses()).thenReturn(publicIPAddressService);
+        when(networkInterfaceService.listByResourceGroup("test-value")).thenReturn(pagedList(networkInterfaces));
+        when(publicIPAddressService.listByResourceGroup("test-value")).thenReturn(pagedList(publicIPAddresses));
+        Mockito.when(getNetworkManager(computeManager)).thenReturn(networkManager);
+
+        testDiscoverNodesMocked(4);
+
+        verify(networkInterfaceService, times(1)).listByResourceGroup("test-value");
+        verify(publicIPAddressService, times(1)).listByResourceGroup("test-value");
+        for (VirtualMachine vm : virtualMachines) {
+            verify(vm, never()).getPrimaryNetworkInterface();
+        }
+    }
+
+    @Test
+    public void testDiscoverNodesWithBulkInstanceView() {
+        buildFakeVmList(3);
+        properties.put("bulk-instance-view", true);
+        for (VirtualMachine vm : virtualMachines) {
+            VirtualMachineInner inner = mock(VirtualMachineInner.class);
+            when(inner.instanceView()).thenReturn(new VirtualMachineInstanceView()
+                    .withStatuses(Arrays.asList(new InstanceViewStatus().withCode("PowerState/running"))));
+            when(vm.inner()).thenReturn(inner);
+        }
+        // no listed instance view, falls back to the per VM lookup
+        when(virtualMachines.get(2).inner()).thenReturn(null);
+
+        testDiscoverNodesMocked(3);
+
+        verify(virtualMachines.get(0), never()).powerState();
+        verify(virtualMachines.get(0), never()).instanceView();
+        verify(virtualMachines.get(1), never()).powerState();
+        verify(virtualMachines.get(2), times(1)).powerState();
+    }
+
+    @Test
+    public void testDiscoverNodesWithServerSideTagFilter() {
+        buildFakeVmList(3);
+        properties.put("server-side-tag-filter", true);
+        VirtualMachineScaleSet scaleSet = buildScaleSet(2, PowerState.RUNNING, null, "10.0.6.");
+
+        List<GenericResourceInner> tagged = new ArrayList<GenericResourceInner>();
+        // the filtered listing returns tagged resources of any type, VM 1 is not tagged
+        tagged.add(taggedResource("Microsoft.Storage/storageAccounts", "storage"));
+        tagged.add(taggedResource("Microsoft.Compute/virtualMachines", "vm-0"));
+        tagged.add(taggedResource("Microsoft.Compute/virtualMachineScaleSets", "scale-set"));
+        tagged.add(taggedResource("microsoft.compute/virtualmachines", "vm-2"));
+        when(vmService.getById(endsWith("vm-0"))).thenReturn(virtualMachines.get(0));
+        when(vmService.getById(endsWith("vm-2"))).thenReturn(virtualMachines.get(2));
+        when(scaleSetService.getById(endsWith("scale-set"))).thenReturn(scaleSet);
+
+        ResourceManager resourceManager = mock(ResourceManager.class);
+        ResourceManagementClientImpl resourceClient = mock(ResourceManagementClientImpl.class);
+        ResourcesInner resources = mock(ResourcesInner.class);
+        when(computeManager.resourceManager()).thenReturn(resourceManager);
+        when(resourceManager.inner()).thenReturn(resourceClient);
+        when(resourceClient.resources()).thenReturn(resources);
+        when(resources.listByResourceGroup("test-value", "tagName eq 'cluster000'", null, null))
+                .thenReturn(pagedList(tagged));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes();
+
+        assertEquals(4, Iterables.size(nodes));
+        assertEquals("10.0.5.0", Iterables.get(nodes, 0).getPrivateAddress().getHost());
+        assertEquals("10.0.5.2", Iterables.get(nodes, 1).getPrivateAddress().getHost());
+        assertEquals("10.0.6.0", Iterables.get(nodes, 2).getPrivateAddress().getHost());
+        assertEquals("10.0.6.1", Iterables.get(nodes, 3).getPrivateAddress().getHost());
+        verify(vmService, never()).listByResourceGroup(anyString());
+        verify(scaleSetService, never()).listByResourceGroup(anyString());
+        verify(virtualMachines.get(1), never()).powerState();
+    }
+
+    private GenericResourceInner taggedResource(String type, String name) {
+        GenericResourceInner resource = mock(GenericResourceInner.class);
+        when(resource.id()).thenReturn("/subscriptions/test-value/resourceGroups/test-value/providers/" + type + "/" + name);
+        when(resource.type()).thenReturn(type);
+        when(resource.getTags()).thenReturn(ImmutableMap.of(properties.get("cluster-id").toString(), "5701"));
+        return resource;
+    }
+
+    private static <T> PagedList<T> pagedList(List<T> items) {
+        PagedList<T> page = new PagedList<T>() {
+            @Override
+            public Page<T> nextPage(String s) throws RestException {
+                return null;
+            }
+        };
+        page.addAll(items);
+        return page;
+    }
+
     @Test
     public void testDiscoverNodesStoppedVM() {
         buildFakeVmList(4);
@@ -293,14 +603,341 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
         assertEquals(0, Iterables.size(nodes));
     }
 
-    private PagedList<VirtualMachineScaleSet> buildScaleSetPage(VirtualMachineScaleSet scaleSet) {
+    @Test
+    public void testDiscoverScaleSetNodesInParallel() {
+        buildFakeVmList(2);
+        properties.put("discovery-concurrency", 4);
+        PagedList<VirtualMachineScaleSet> scaleSetsPage = buildScaleSetPage(
+                buildScaleSet(3, PowerState.RUNNING, null, "10.0.6."),
+                buildScaleSet(3, PowerState.RUNNING, null, "10.0.7."),
+                buildScaleSet(3, PowerState.RUNNING, null, "10.0.8."));
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(scaleSetsPage);
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+
+        strategy.start();
+        Iterable<DiscoveryNode> nodes;
+        try {
+            nodes = strategy.discoverNodes();
+        } finally {
+            strategy.destroy();
+        }
+
+        // standalone VMs first, then every scale set in listing order
+        List<String> expected = Arrays.asList("10.0.5.0", "10.0.5.1", "10.0.6.0", "10.0.6.1", "10.0.6.2",
+                "10.0.7.0", "10.0.7.1", "10.0.7.2", "10.0.8.0", "10.0.8.1", "10.0.8.2");
+        List<String> actual = new ArrayList<String>();
+        for (DiscoveryNode node : nodes) {
+            actual.add(node.getPrivateAddress().getHost());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testDiscoverScaleSetNodesWithBatchNetworkLookup() {
+        buildFakeVmList(0);
+        properties.put("batch-network-lookup", true);
+        VirtualMachineScaleSet scaleSet = buildScaleSet(5, PowerState.RUNNING);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+
+        strategy.start();
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes();
+
+        assertEquals(5, Iterables.size(nodes));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("10.0.5." + i, Iterables.get(nodes, i).getPrivateAddress().getHost());
+        }
+        verify(scaleSet, times(1)).listNetworkInterfaces();
+        for (VirtualMachineScaleSetVM vm : scaleSet.virtualMachines().list()) {
+            verify(vm, never()).getNetworkInterface(anyString());
+            verify(vm, never()).listNetworkInterfaces();
+        }
+    }
+
+    @Test
+    public void testBatchNetworkLookupSkippedWithoutRunningVMs() {
+        buildFakeVmList(0);
+        properties.put("batch-network-lookup", true);
+        VirtualMachineScaleSet scaleSet = buildScaleSet(3, PowerState.DEALLOCATED);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+
+        strategy.start();
+
+        assertEquals(0, Iterables.size(strategy.discoverNodes()));
+        verify(scaleSet, never()).listNetworkInterfaces();
+    }
+
+    @Test
+    public void testDiscoverScaleSetNodesWithBulkInstanceView() {
+        buildFakeVmList(0);
+        properties.put("bulk-instance-view", true);
+        properties.put("batch-network-lookup", true);
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        String localIp = strategy.getLocalHostAddress();
+
+        VirtualMachineScaleSet scaleSet = buildScaleSet(4, PowerState.RUNNING);
+        when(scaleSet.resourceGroupName()).thenReturn("test-value");
+        when(scaleSet.name()).thenReturn("scale-set");
+        List<VirtualMachineScaleSetVMInner> expanded = new ArrayList<VirtualMachineScaleSetVMInner>();
+        List<VirtualMachineScaleSetNetworkInterface> nics = new ArrayList<VirtualMachineScaleSetNetworkInterface>();
+        for (VirtualMachineScaleSetVM vm : scaleSet.virtualMachines().list()) {
+            String vmId = vm.id();
+            VirtualMachineScaleSetVMInner inner = mock(VirtualMachineScaleSetVMInner.class);
+            when(inner.id()).thenReturn(vmId);
+            when(inner.instanceId()).thenReturn(Integer.toString(expanded.size()));
+            when(inner.instanceView()).thenReturn(new VirtualMachineInstanceView()
+                    .withStatuses(Arrays.asList(new InstanceViewStatus().withCode("PowerState/running")))
+                    .withPlatformFaultDomain(FAULT_DOMAIN_ID));
+            expanded.add(inner);
+        }
+        nics.addAll(scaleSet.listNetworkInterfaces());
+        // instance 1 is stopped and instance 2 is missing its instance view
+        when(expanded.get(1).instanceView()).thenReturn(new VirtualMachineInstanceView()
+                .withStatuses(Arrays.asList(new InstanceViewStatus().withCode("PowerState/deallocated"))));
+        when(expanded.get(2).instanceView()).thenReturn(null);
+        when(nics.get(3).primaryPrivateIP()).thenReturn(localIp);
+
+        VirtualMachineScaleSetVMsInner client = mock(VirtualMachineScaleSetVMsInner.class);
+        when(client.list("test-value", "scale-set", null, null, "instanceView")).thenReturn(pagedList(expanded));
+        when(client.getInstanceView("test-value", "scale-set", "2")).thenReturn(new VirtualMachineScaleSetVMInstanceViewInner()
+                .withStatuses(Arrays.asList(new InstanceViewStatus().withCode("PowerState/running"))));
+        when(scaleSet.virtualMachines().inner()).thenReturn(client);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+
+        strategy.start();
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes();
+
+        assertEquals(3, Iterables.size(nodes));
+        // instance 2 has no known fault domain and goes after the ones sharing the local fault domain
+        assertEquals("10.0.5.0", Iterables.get(nodes, 0).getPrivateAddress().getHost());
+        assertEquals(localIp, Iterables.get(nodes, 1).getPrivateAddress().getHost());
+        assertEquals("10.0.5.2", Iterables.get(nodes, 2).getPrivateAddress().getHost());
+        assertEquals(Integer.toString(FAULT_DOMAIN_ID),
+                strategy.discoverLocalMetadata().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+        verify(client, times(1)).getInstanceView(anyString(), anyString(), anyString());
+        verify(scaleSet.virtualMachines(), times(1)).list();
+    }
+
+    @Test
+    public void testPowerSummarySkipsScaleSetsWithoutRunningInstances() {
+        buildFakeVmList(0);
+        properties.put("scale-set-power-summary", true);
+        VirtualMachineScaleSet scaleSet = buildScaleSet(3, PowerState.DEALLOCATED);
+        when(scaleSet.resourceGroupName()).thenReturn("test-value");
+        when(scaleSet.name()).thenReturn("scale-set");
+        VirtualMachineScaleSetVMsInner client = mock(VirtualMachineScaleSetVMsInner.class);
+        when(scaleSet.virtualMachines().inner()).thenReturn(client);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+        mockPowerSummary("scale-set", ImmutableMap.of("ProvisioningState/succeeded", 3, "PowerState/deallocated", 3));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+
+        assertEquals(0, Iterables.size(strategy.discoverNodes()));
+        verify(client, never()).list(anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(client, never()).getInstanceView(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testPowerSummaryListsRunningScaleSetWithoutInstanceViews() {
+        buildFakeVmList(0);
+        properties.put("scale-set-power-summary", true);
+        properties.put("batch-network-lookup", true);
+        VirtualMachineScaleSet scaleSet = buildScaleSet(3, PowerState.RUNNING);
+        when(scaleSet.resourceGroupName()).thenReturn("test-value");
+        when(scaleSet.name()).thenReturn("scale-set");
+        List<VirtualMachineScaleSetVMInner> listed = new ArrayList<VirtualMachineScaleSetVMInner>();
+        for (VirtualMachineScaleSetVM vm : scaleSet.virtualMachines().list()) {
+            String vmId = vm.id();
+            VirtualMachineScaleSetVMInner inner = mock(VirtualMachineScaleSetVMInner.class);
+            when(inner.id()).thenReturn(vmId);
+            when(inner.instanceId()).thenReturn(Integer.toString(listed.size()));
+            listed.add(inner);
+        }
+        VirtualMachineScaleSetVMsInner client = mock(VirtualMachineScaleSetVMsInner.class);
+        when(client.list("test-value", "scale-set", null, null, null)).thenReturn(pagedList(listed));
+        when(scaleSet.virtualMachines().inner()).thenReturn(client);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+        mockPowerSummary("scale-set", ImmutableMap.of("ProvisioningState/succeeded", 3, "PowerState/running", 3));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+
+        assertEquals(3, Iterables.size(strategy.discoverNodes()));
+        // one summary and one plain listing, no instance view per VM or expanded listing
+        verify(computeManager.inner().virtualMachineScaleSets(), times(1)).getInstanceView("test-value", "scale-set");
+        verify(client, times(1)).list("test-value", "scale-set", null, null, null);
+        verify(client, never()).list(anyString(), anyString(), anyString(), anyString(), eq("instanceView"));
+        verify(client, never()).getInstanceView(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testPowerSummaryReadsLocalInstanceViewOfRunningScaleSet() {
+        buildFakeVmList(0);
+        properties.put("scale-set-power-summary", true);
+        properties.put("batch-network-lookup", true);
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        String localIp = strategy.getLocalHostAddress();
+        VirtualMachineScaleSet scaleSet = buildScaleSet(1, PowerState.RUNNING, localIp);
+        when(scaleSet.resourceGroupName()).thenReturn("test-value");
+        when(scaleSet.name()).thenReturn("scale-set");
+        String vmId = scaleSet.virtualMachines().list().get(0).id();
+        VirtualMachineScaleSetVMInner listed = mock(VirtualMachineScaleSetVMInner.class);
+        when(listed.id()).thenReturn(vmId);
+        when(listed.instanceId()).thenReturn("0");
+        VirtualMachineScaleSetVMsInner client = mock(VirtualMachineScaleSetVMsInner.class);
+        when(client.list("test-value", "scale-set", null, null, null))
+                .thenReturn(pagedList(Collections.singletonList(listed)));
+        VirtualMachineScaleSetVMInstanceViewInner instanceView = mock(VirtualMachineScaleSetVMInstanceViewInner.class);
+        when(instanceView.platformFaultDomain()).thenReturn(FAULT_DOMAIN_ID);
+        when(client.getInstanceView("test-value", "scale-set", "0")).thenReturn(instanceView);
+        when(scaleSet.virtualMachines().inner()).thenReturn(client);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+        mockPowerSummary("scale-set", ImmutableMap.of("ProvisioningState/succeeded", 1, "PowerState/running", 1));
+        strategy.start();
+
+        assertEquals(1, Iterables.size(strategy.discoverNodes()));
+        assertEquals(Integer.toString(FAULT_DOMAIN_ID),
+                strategy.discoverLocalMetadata().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+        verify(client, times(1)).getInstanceView("test-value", "scale-set", "0");
+    }
+
+    @Test
+    public void testPowerSummaryListsPartlyRunningScaleSetWithInstanceViews() {
+        buildFakeVmList(0);
+        properties.put("scale-set-power-summary", true);
+        properties.put("batch-network-lookup", true);
+        VirtualMachineScaleSet scaleSet = buildScaleSet(3, PowerState.RUNNING);
+        when(scaleSet.resourceGroupName()).thenReturn("test-value");
+        when(scaleSet.name()).thenReturn("scale-set");
+        List<VirtualMachineScaleSetVMInner> expanded = new ArrayList<VirtualMachineScaleSetVMInner>();
+        for (VirtualMachineScaleSetVM vm : scaleSet.virtualMachines().list()) {
+            String vmId = vm.id();
+            VirtualMachineScaleSetVMInner inner = mock(VirtualMachineScaleSetVMInner.class);
+            when(inner.id()).thenReturn(vmId);
+            when(inner.instanceId()).thenReturn(Integer.toString(expanded.size()));
+            when(inner.instanceView()).thenReturn(new VirtualMachineInstanceView()
+                    .withStatuses(Arrays.asList(new InstanceViewStatus().withCode("PowerState/running"))));
+            expanded.add(inner);
+        }
+        when(expanded.get(1).instanceView()).thenReturn(new VirtualMachineInstanceView()
+                .withStatuses(Arrays.asList(new InstanceViewStatus().withCode("PowerState/deallocated"))));
+        VirtualMachineScaleSetVMsInner client = mock(VirtualMachineScaleSetVMsInner.class);
+        when(client.list("test-value", "scale-set", null, null, "instanceView")).thenReturn(pagedList(expanded));
+        when(scaleSet.virtualMachines().inner()).thenReturn(client);
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(scaleSet));
+        mockPowerSummary("scale-set", ImmutableMap.of("PowerState/running", 2, "PowerState/deallocated", 1));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+
+        assertEquals(2, Iterables.size(strategy.discoverNodes()));
+        verify(client, times(1)).list("test-value", "scale-set", null, null, "instanceView");
+        verify(client, never()).getInstanceView(anyString(), anyString(), anyString());
+    }
+
+    private void mockPowerSummary(String scaleSet, Map<String, Integer> codeCounts) {
+        List<VirtualMachineStatusCodeCount> summary = new ArrayList<VirtualMachineStatusCodeCount>();
+        for (Map.Entry<String, Integer> codeCount : codeCounts.entrySet()) {
+            VirtualMachineStatusCodeCount status = mock(VirtualMachineStatusCodeCount.class);
+            when(status.code()).thenReturn(codeCount.getKey());
+            when(status.count()).thenReturn(codeCount.getValue());
+            summary.add(status);
+        }
+        VirtualMachineScaleSetInstanceViewStatusesSummary statuses =
+                mock(VirtualMachineScaleSetInstanceViewStatusesSummary.class);
+        when(statuses.statusesSummary()).thenReturn(summary);
+        VirtualMachineScaleSetInstanceViewInner instanceView = mock(VirtualMachineScaleSetInstanceViewInner.class);
+        when(instanceView.virtualMachine()).thenReturn(statuses);
+        VirtualMachineScaleSetsInner scaleSets = mock(VirtualMachineScaleSetsInner.class);
+        when(scaleSets.getInstanceView("test-value", scaleSet)).thenReturn(instanceView);
+        ComputeManagementClientImpl computeClient = mock(ComputeManagementClientImpl.class);
+        when(computeClient.virtualMachineScaleSets()).thenReturn(scaleSets);
+        when(computeManager.inner()).thenReturn(computeClient);
+    }
+
+    @Test
+    public void testIncrementalScaleSetDiscovery() {
+        buildFakeVmList(0);
+        properties.put("incremental-discovery", true);
+        VirtualMachineScaleSet unchanged = buildScaleSet(2, PowerState.RUNNING, null, "10.0.5.");
+        VirtualMachineScaleSet scaling = buildScaleSet(2, PowerState.RUNNING, null, "10.0.6.");
+        mockScaleSetState(unchanged, "unchanged", 2, "Succeeded");
+        mockScaleSetState(scaling, "scaling", 2, "Succeeded");
+        when(scaleSetService.listByResourceGroup(eq("test-value"))).thenReturn(buildScaleSetPage(unchanged, scaling));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        strategy.start();
+
+        assertEquals(4, Iterables.size(strategy.discoverNodes()));
+        assertEquals(4, Iterables.size(strategy.discoverNodes()));
+        verify(unchanged.virtualMachines(), times(1)).list();
+        verify(scaling.virtualMachines(), times(1)).list();
+
+        // a scale set being scaled out is listed on every cycle until it settles
+        mockScaleSetState(scaling, "scaling", 3, "Updating");
+        strategy.discoverNodes();
+        strategy.discoverNodes();
+        mockScaleSetState(scaling, "scaling", 3, "Succeeded");
+        strategy.discoverNodes();
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes();
+
+        assertEquals(4, Iterables.size(nodes));
+        assertEquals("10.0.5.0", Iterables.get(nodes, 0).getPrivateAddress().getHost());
+        assertEquals("10.0.6.1", Iterables.get(nodes, 3).getPrivateAddress().getHost());
+        verify(unchanged.virtualMachines(), times(1)).list();
+        verify(scaling.virtualMachines(), times(4)).list();
+    }
+
+    @Test
+    public void testFailedStartReleasesAcquiredClients() {
+        properties.put("subscription-id", "test-value,denied");
+        Mockito.when(getComputeManager(Mockito.<Map<String, Comparable>>any())).thenReturn(computeManager)
+                .thenThrow(new CloudException("AuthorizationFailed", null));
+
+        AzureDiscoveryStrategyFactory factory = new AzureDiscoveryStrategyFactory();
+        AzureDiscoveryStrategy strategy = (AzureDiscoveryStrategy) factory.newDiscoveryStrategy(null, null, properties);
+        try {
+            strategy.start();
+            fail("start-up should fail when a subscription cannot be accessed");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("AuthorizationFailed"));
+        }
+
+        PowerMockito.verifyStatic();
+        AzureClientHelper.releaseComputeManager(computeManager);
+    }
+
+    private void mockScaleSetState(VirtualMachineScaleSet scaleSet, String name, int capacity, String provisioningState) {
+        VirtualMachineScaleSetInner inner = mock(VirtualMachineScaleSetInner.class);
+        when(inner.provisioningState()).thenReturn(provisioningState);
+        when(scaleSet.inner()).thenReturn(inner);
+        when(scaleSet.capacity()).thenReturn(capacity);
+        when(scaleSet.id()).thenReturn("/subscriptions/test-value/resourceGroups/test-value/providers"
+                + "/Microsoft.Compute/virtualMachineScaleSets/" + name);
+    }
+
+    private PagedList<VirtualMachineScaleSet> buildScaleSetPage(VirtualMachineScaleSet... scaleSets) {
         PagedList<VirtualMachineScaleSet> scaleSetsPage = new PagedList<VirtualMachineScaleSet>() {
             @Override
             public Page<VirtualMachineScaleSet> nextPage(String s) throws RestException {
                 return null;
             }
         };
-        scaleSetsPage.add(scaleSet);
+        scaleSetsPage.addAll(Arrays.asList(scaleSets));
         return scaleSetsPage;
     }
 
@@ -309,17 +946,32 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
     }
 
     private VirtualMachineScaleSet buildScaleSet(int vmCount, PowerState powerState, String localIp) {
+        return buildScaleSet(vmCount, powerState, localIp, "10.0.5.");
+    }
+
+    private VirtualMachineScaleSet buildScaleSet(int vmCount, PowerState powerState, String localIp, String ipPrefix) {
         VirtualMachineScaleSet scaleSet = mock(VirtualMachineScaleSet.class);
         when(scaleSet.tags()).thenReturn(ImmutableMap.of(properties.get("cluster-id").toString(), "5701"));
 
-        PagedList<VirtualMachineScaleSetVM> vmPagedList = buildScaleSetVMs(vmCount, powerState, localIp);
+        PagedList<VirtualMachineScaleSetNetworkInterface> nicPagedList =
+                new PagedList<VirtualMachineScaleSetNetworkInterface>() {
+                    @Override
+                    public Page<VirtualMachineScaleSetNetworkInterface> nextPage(String s) throws RestException {
+                        return null;
+                    }
+                };
+        PagedList<VirtualMachineScaleSetVM> vmPagedList = buildScaleSetVMs(vmCount, powerState, localIp, ipPrefix,
+                nicPagedList);
         VirtualMachineScaleSetVMs scaleSetVMs = mock(VirtualMachineScaleSetVMs.class);
         when(scaleSetVMs.list()).thenReturn(vmPagedList);
         when(scaleSet.virtualMachines()).thenReturn(scaleSetVMs);
+        when(scaleSet.listNetworkInterfaces()).thenReturn(nicPagedList);
         return scaleSet;
     }
 
-    private PagedList<VirtualMachineScaleSetVM> buildScaleSetVMs(int count, PowerState powerState, String localIp) {
+    private PagedList<VirtualMachineScaleSetVM> buildScaleSetVMs(int count, PowerState powerState, String localIp,
+                                                                 String ipPrefix,
+                                                                 List<VirtualMachineScaleSetNetworkInterface> nics) {
         PagedList<VirtualMachineScaleSetVM> vmPage = new PagedList<VirtualMachineScaleSetVM>() {
             @Override
             public Page<VirtualMachineScaleSetVM> nextPage(String s) throws RestException {
@@ -329,6 +981,9 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
         ArrayList<VirtualMachineScaleSetVM> vms = new ArrayList<VirtualMachineScaleSetVM>();
         for (int i = 0; i < count; i++) {
             VirtualMachineScaleSetVM vm = mock(VirtualMachineScaleSetVM.class);
+            String vmId = "/subscriptions/test-value/resourceGroups/test-value/providers/Microsoft.Compute"
+                    + "/virtualMachineScaleSets/ss-" + ipPrefix + "/virtualMachines/" + i;
+            when(vm.id()).thenReturn(vmId);
             VirtualMachineInstanceView vmInstance = mock(VirtualMachineInstanceView.class);
             when(vm.instanceView()).thenReturn(vmInstance);
             when(vmInstance.platformFaultDomain()).thenReturn(FAULT_DOMAIN_ID);
@@ -337,10 +992,14 @@ public class AzureDiscoveryStrategyTest extends HazelcastTestSupport {
             if (localIp != null) {
                 when(networkInterface.primaryPrivateIP()).thenReturn(localIp);
             } else {
-                when(networkInterface.primaryPrivateIP()).thenReturn("10.0.5." + i);
+                when(networkInterface.primaryPrivateIP()).thenReturn(ipPrefix + i);
             }
             when(vm.primaryNetworkInterfaceId()).thenReturn("primary-net-interface");
             when(vm.getNetworkInterface("primary-net-interface")).thenReturn(networkInterface);
+            when(networkInterface.id()).thenReturn("primary-net-interface");
+            // ARM does not preserve the case of resource ids across endpoints
+            when(networkInterface.virtualMachineId()).thenReturn(vmId.toUpperCase());
+            nics.add(networkInterface);
             vms.add(vm);
         }
         vmPage.addAll(vms);
@@ -23,9 +23,12 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(HazelcastParallelClassRunner.class)
@@ -51,6 +54,16 @@ public class AzurePropertiesTest extends HazelcastTestSupport {
         assertTrue("Expected to find AzureProperties.GROUP_NAME", AzureProperties.getOrNull(AzureProperties.GROUP_NAME, properties) != null);
     }
 
+    @Test
+    public void testGetList() throws Exception {
+
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put("group-name", " blue, green ,,blue ");
+
+        assertEquals(Arrays.asList("blue", "green"), AzureProperties.getList(AzureProperties.GROUP_NAME, properties));
+        assertEquals(Collections.<String>emptyList(), AzureProperties.getList(AzureProperties.CLUSTER_ID, properties));
+    }
+
     @Test(expected = ValidationException.class)
     public void testPortValueValidator_validate_negative_val() throws Exception {
 
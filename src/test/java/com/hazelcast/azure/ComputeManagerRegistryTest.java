@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.AssertTask;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ComputeManagerRegistryTest extends HazelcastTestSupport {
+
+    private final AtomicInteger clientsCreated = new AtomicInteger();
+    private final AtomicInteger tokensAcquired = new AtomicInteger();
+    private final AtomicInteger transportsCreated = new AtomicInteger();
+    private final ArmHttpTransport transport = new ArmHttpTransport(5, 300, 1000, 1000, 0, true, null);
+    private ComputeManagerRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new ComputeManagerRegistry(new ComputeManagerRegistry.ClientFactory() {
+            @Override
+            public ComputeManager create(AzureTokenCredentials credentials, String subscriptionId,
+                                         ArmHttpTransport transport) {
+                clientsCreated.incrementAndGet();
+                return ComputeManager.authenticate(transport.restClient(credentials), subscriptionId);
+            }
+        });
+    }
+
+    @Test
+    public void testClientIsSharedByKey() throws Exception {
+        ComputeManager first = registry.acquire("sub|tenant|client|secret", "sub", transport(), credentials());
+        ComputeManager second = registry.acquire("sub|tenant|client|secret", "sub", transport(), credentials());
+
+        assertSame(first, second);
+        assertEquals(1, clientsCreated.get());
+        assertEquals(1, transportsCreated.get());
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testTransportOfClient() throws Exception {
+        ComputeManager computeManager = registry.acquire("msi|sub", "sub", transport(), credentials());
+
+        assertSame(transport, registry.transport(computeManager));
+        registry.release(computeManager);
+        assertNull(registry.transport(computeManager));
+    }
+
+    @Test
+    public void testDistinctKeysGetDistinctClients() throws Exception {
+        ComputeManager first = registry.acquire("sub|tenant|client|secret", "sub", transport(), credentials());
+        ComputeManager second = registry.acquire("msi|sub", "sub", transport(), credentials());
+
+        assertNotSame(first, second);
+        assertEquals(2, clientsCreated.get());
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testLastReleaseDropsClient() throws Exception {
+        ComputeManager first = registry.acquire("msi|sub", "sub", transport(), credentials());
+        registry.acquire("msi|sub", "sub", transport(), credentials());
+
+        registry.release(first);
+        assertEquals(1, registry.size());
+
+        registry.release(first);
+        assertEquals(0, registry.size());
+
+        ComputeManager next = registry.acquire("msi|sub", "sub", transport(), credentials());
+        assertNotSame(first, next);
+        assertEquals(2, clientsCreated.get());
+    }
+
+    @Test
+    public void testUnknownClientReleaseIsIgnored() throws Exception {
+        registry.acquire("msi|sub", "sub", transport(), credentials());
+        ComputeManager other = new ComputeManagerRegistry(new ComputeManagerRegistry.ClientFactory() {
+            @Override
+            public ComputeManager create(AzureTokenCredentials credentials, String subscriptionId,
+                                         ArmHttpTransport transport) {
+                return ComputeManager.authenticate(transport.restClient(credentials), subscriptionId);
+            }
+        }).acquire("msi|sub", "sub", transport(), credentials());
+
+        registry.release(other);
+
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testTokenIsPrefetched() throws Exception {
+        registry.acquire("msi|sub", "sub", transport(), credentials());
+
+        assertTrueEventually(new AssertTask() {
+            @Override
+            public void run() {
+                assertEquals(1, tokensAcquired.get());
+            }
+        });
+    }
+
+    private Callable<ArmHttpTransport> transport() {
+        return new Callable<ArmHttpTransport>() {
+            @Override
+            public ArmHttpTransport call() {
+                transportsCreated.incrementAndGet();
+                return transport;
+            }
+        };
+    }
+
+    private Callable<AzureTokenCredentials> credentials() {
+        return new Callable<AzureTokenCredentials>() {
+            @Override
+            public AzureTokenCredentials call() {
+                return new AzureTokenCredentials(AzureEnvironment.AZURE, "tenant") {
+                    @Override
+                    public String getToken(String resource) {
+                        tokensAcquired.incrementAndGet();
+                        return "token";
+                    }
+                };
+            }
+        };
+    }
+}
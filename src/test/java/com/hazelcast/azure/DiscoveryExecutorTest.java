@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class DiscoveryExecutorTest extends HazelcastTestSupport {
+
+    private final DiscoveryExecutor executor = new DiscoveryExecutor(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testResultsMergeInSubmissionOrder() throws Exception {
+        List<Callable<List<Integer>>> tasks = new ArrayList<Callable<List<Integer>>>();
+        for (int i = 0; i < 10; i++) {
+            // later tasks finish first
+            tasks.add(sleepingTask(i, 10 - i));
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), executor.fanOut(tasks));
+    }
+
+    @Test
+    public void testNestedFanOutCompletes() throws Exception {
+        List<Callable<List<Integer>>> outer = new ArrayList<Callable<List<Integer>>>();
+        for (int i = 0; i < 4; i++) {
+            final int base = i * 10;
+            outer.add(new Callable<List<Integer>>() {
+                @Override
+                public List<Integer> call() throws Exception {
+                    List<Callable<List<Integer>>> inner = new ArrayList<Callable<List<Integer>>>();
+                    inner.add(sleepingTask(base, 5));
+                    inner.add(sleepingTask(base + 1, 1));
+                    return executor.fanOut(inner);
+                }
+            });
+        }
+
+        assertEquals(Arrays.asList(0, 1, 10, 11, 20, 21, 30, 31), executor.fanOut(outer));
+    }
+
+    @Test
+    public void testInlineExecution() throws Exception {
+        DiscoveryExecutor inline = new DiscoveryExecutor(1);
+        List<Callable<List<Integer>>> tasks = new ArrayList<Callable<List<Integer>>>();
+        tasks.add(sleepingTask(1, 0));
+        tasks.add(sleepingTask(2, 0));
+
+        assertEquals(Arrays.asList(1, 2), inline.fanOut(tasks));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTaskFailureIsRethrown() throws Exception {
+        List<Callable<List<Integer>>> tasks = new ArrayList<Callable<List<Integer>>>();
+        tasks.add(sleepingTask(1, 0));
+        tasks.add(new Callable<List<Integer>>() {
+            @Override
+            public List<Integer> call() throws Exception {
+                throw new IllegalStateException("listing failed");
+            }
+        });
+
+        executor.fanOut(tasks);
+    }
+
+    private static Callable<List<Integer>> sleepingTask(final int value, final int sleepMillis) {
+        return new Callable<List<Integer>>() {
+            @Override
+            public List<Integer> call() throws Exception {
+                Thread.sleep(sleepMillis);
+                return Collections.singletonList(value);
+            }
+        };
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class DiscoveryMetricsTest extends HazelcastTestSupport {
+
+    @Test
+    public void testDiscoveriesAreRecorded() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(5).build();
+        AzureDiscoveryStrategy strategy = strategy(fleet, new HashMap<String, Comparable>());
+
+        strategy.discoverNodes();
+        strategy.discoverNodes();
+
+        DiscoveryMetrics metrics = strategy.metrics();
+        assertEquals(2, metrics.getDiscoveries());
+        assertEquals(0, metrics.getFailedDiscoveries());
+        assertEquals(5, metrics.getDiscoveredNodes());
+        assertTrue(metrics.getLastSuccessTime() > 0);
+        assertEquals(2, metrics.getDiscoveryLatency().getCount());
+        strategy.destroy();
+    }
+
+    @Test
+    public void testFailedDiscoveriesAreRecorded() {
+        SyntheticFleet fleet = SyntheticFleet.builder().build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        AzureDiscoveryStrategy strategy = strategy(fleet, properties);
+        properties.remove(AzureProperties.GROUP_NAME.key());
+
+        strategy.discoverNodes();
+
+        assertEquals(0, strategy.metrics().getDiscoveries());
+        assertEquals(1, strategy.metrics().getFailedDiscoveries());
+        strategy.destroy();
+    }
+
+    @Test
+    public void testCacheHitRatio() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(3).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.DISCOVERY_CACHE_TTL_SECONDS.key(), 60);
+        AzureDiscoveryStrategy strategy = strategy(fleet, properties);
+
+        for (int i = 0; i < 4; i++) {
+            strategy.discoverNodes();
+        }
+
+        DiscoveryMetrics metrics = strategy.metrics();
+        assertEquals(1, metrics.getCacheMisses());
+        assertEquals(3, metrics.getCacheHits());
+        assertEquals(0.75, metrics.getCacheHitRatio(), 0.001);
+        strategy.destroy();
+    }
+
+    @Test
+    public void testMetricsAreRegisteredAsMBean() throws Exception {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(2).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.JMX_METRICS.key(), true);
+        AzureDiscoveryStrategy strategy = strategy(fleet, properties);
+        strategy.discoverNodes();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = strategy.metrics().objectName();
+        assertNotNull(name);
+        assertEquals(SyntheticFleet.CLUSTER_ID, ObjectName.unquote(name.getKeyProperty("cluster")));
+        assertEquals(1L, server.getAttribute(name, "Discoveries"));
+        assertEquals(2, server.getAttribute(name, "DiscoveredNodes"));
+        CompositeData latency = (CompositeData) server.getAttribute(name, "DiscoveryLatency");
+        assertEquals(1L, latency.get("count"));
+
+        strategy.destroy();
+        assertNull(strategy.metrics().objectName());
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testMetricsAreNotRegisteredByDefault() {
+        SyntheticFleet fleet = SyntheticFleet.builder().build();
+        AzureDiscoveryStrategy strategy = strategy(fleet, new HashMap<String, Comparable>());
+
+        assertNull(strategy.metrics().objectName());
+        strategy.destroy();
+    }
+
+    private static AzureDiscoveryStrategy strategy(SyntheticFleet fleet, Map<String, Comparable> properties) {
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+        return strategy;
+    }
+}
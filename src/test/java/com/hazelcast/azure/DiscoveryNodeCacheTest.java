@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class DiscoveryNodeCacheTest extends HazelcastTestSupport {
+
+    private final AtomicInteger scans = new AtomicInteger();
+    private final List<Runnable> pendingRefreshes = new ArrayList<Runnable>();
+
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            pendingRefreshes.add(command);
+        }
+    };
+
+    private final Callable<List<DiscoveryNode>> countingLoader = new Callable<List<DiscoveryNode>>() {
+        @Override
+        public List<DiscoveryNode> call() throws Exception {
+            int scan = scans.incrementAndGet();
+            DiscoveryNode node = new SimpleDiscoveryNode(new Address("10.0.5." + scan, 5701));
+            return Collections.singletonList(node);
+        }
+    };
+
+    @Test
+    public void testFirstCallLoadsSynchronously() {
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(60000, countingLoader, queueingExecutor);
+
+        List<DiscoveryNode> nodes = cache.get();
+
+        assertEquals(1, nodes.size());
+        assertEquals("10.0.5.1", nodes.get(0).getPrivateAddress().getHost());
+        assertEquals(1, scans.get());
+        assertEquals(0, pendingRefreshes.size());
+    }
+
+    @Test
+    public void testFreshResultIsServedFromCache() {
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(60000, countingLoader, queueingExecutor);
+
+        List<DiscoveryNode> first = cache.get();
+        List<DiscoveryNode> second = cache.get();
+
+        assertSame(first, second);
+        assertEquals(1, scans.get());
+        assertEquals(0, pendingRefreshes.size());
+    }
+
+    @Test
+    public void testExpiredResultIsServedWhileSingleRefreshRuns() {
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(0, 60000, countingLoader, queueingExecutor);
+
+        List<DiscoveryNode> first = cache.get();
+        assertSame(first, cache.get());
+        assertSame(first, cache.get());
+
+        // only one refresh is scheduled no matter how many callers see the stale result
+        assertEquals(1, pendingRefreshes.size());
+        assertEquals(1, scans.get());
+
+        pendingRefreshes.remove(0).run();
+
+        assertEquals(2, scans.get());
+        assertEquals("10.0.5.2", cache.get().get(0).getPrivateAddress().getHost());
+    }
+
+    @Test
+    public void testInvalidationRefreshesFreshResult() {
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(60000, countingLoader, queueingExecutor);
+        List<DiscoveryNode> first = cache.get();
+
+        cache.invalidate();
+
+        assertSame(first, cache.get());
+        assertEquals(1, pendingRefreshes.size());
+        pendingRefreshes.remove(0).run();
+        assertEquals("10.0.5.2", cache.get().get(0).getPrivateAddress().getHost());
+        assertEquals(0, pendingRefreshes.size());
+    }
+
+    @Test
+    public void testInvalidationDuringRefreshRefreshesAgain() {
+        final AtomicReference<DiscoveryNodeCache> cache = new AtomicReference<DiscoveryNodeCache>();
+        Callable<List<DiscoveryNode>> invalidatingLoader = new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                if (scans.get() == 1) {
+                    // the resources changed while the refresh was reading them
+                    cache.get().invalidate();
+                }
+                return countingLoader.call();
+            }
+        };
+        cache.set(new DiscoveryNodeCache(60000, invalidatingLoader, queueingExecutor));
+        cache.get().get();
+
+        cache.get().invalidate();
+        pendingRefreshes.remove(0).run();
+
+        assertEquals(1, pendingRefreshes.size());
+        pendingRefreshes.remove(0).run();
+        assertEquals(3, scans.get());
+        assertEquals(0, pendingRefreshes.size());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsLastResult() {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<List<DiscoveryNode>> failingAfterFirst = new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                if (calls.incrementAndGet() > 1) {
+                    return null;
+                }
+                return countingLoader.call();
+            }
+        };
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(0, 60000, failingAfterFirst, queueingExecutor);
+
+        List<DiscoveryNode> first = cache.get();
+        assertSame(first, cache.get());
+        pendingRefreshes.remove(0).run();
+
+        assertSame(first, cache.get());
+    }
+
+    @Test
+    public void testResultIsNotServedPastMaxStaleness() {
+        final AtomicBoolean failing = new AtomicBoolean();
+        Callable<List<DiscoveryNode>> loader = new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                return failing.get() ? null : countingLoader.call();
+            }
+        };
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(0, 0, loader, queueingExecutor);
+        assertNotNull(cache.get());
+        failing.set(true);
+        sleepMillis(1);
+
+        // the expired result is dropped after a synchronous scan failed as well
+        assertNull(cache.get());
+        assertEquals(0, pendingRefreshes.size());
+
+        failing.set(false);
+        assertEquals("10.0.5.2", cache.get().get(0).getPrivateAddress().getHost());
+        assertEquals(2, scans.get());
+    }
+
+    @Test
+    public void testFailedInitialLoadReturnsNull() {
+        Callable<List<DiscoveryNode>> failing = new Callable<List<DiscoveryNode>>() {
+            @Override
+            public List<DiscoveryNode> call() throws Exception {
+                throw new IllegalStateException("ARM unavailable");
+            }
+        };
+        DiscoveryNodeCache cache = new DiscoveryNodeCache(60000, failing, queueingExecutor);
+
+        assertNull(cache.get());
+    }
+}
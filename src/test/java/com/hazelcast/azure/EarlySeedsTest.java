@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class EarlySeedsTest extends HazelcastTestSupport {
+
+    @Test
+    public void testSeedsBeforeTheDiscoveryCompleted() throws Exception {
+        List<DiscoveryNode> nodes = nodes(3);
+        EarlySeeds earlySeeds = EarlySeeds.of(2);
+
+        List<DiscoveryNode> seeds = earlySeeds.seeds(Observable.from(nodes).concatWith(Observable.<DiscoveryNode>never()));
+
+        assertEquals(nodes.subList(0, 2), seeds);
+    }
+
+    @Test
+    public void testRemainderContinuesTheSameDiscovery() throws Exception {
+        final AtomicInteger subscriptions = new AtomicInteger();
+        List<DiscoveryNode> nodes = nodes(5);
+        EarlySeeds earlySeeds = EarlySeeds.of(2);
+        Observable<DiscoveryNode> discovery = Observable.from(nodes).doOnSubscribe(new Action0() {
+            @Override
+            public void call() {
+                subscriptions.incrementAndGet();
+            }
+        }).subscribeOn(Schedulers.io());
+
+        assertEquals(2, earlySeeds.seeds(discovery).size());
+        assertEquals(nodes, earlySeeds.remainder());
+
+        assertEquals(1, subscriptions.get());
+        assertNull(earlySeeds.remainder());
+    }
+
+    @Test
+    public void testFewerNodesThanSeeds() throws Exception {
+        List<DiscoveryNode> nodes = nodes(1);
+        EarlySeeds earlySeeds = EarlySeeds.of(3);
+
+        assertEquals(nodes, earlySeeds.seeds(Observable.from(nodes)));
+        assertEquals(nodes, earlySeeds.remainder());
+    }
+
+    @Test
+    public void testSeedsOnlyOnce() throws Exception {
+        EarlySeeds earlySeeds = EarlySeeds.of(1);
+
+        earlySeeds.seeds(Observable.from(nodes(2)));
+
+        assertNull(earlySeeds.seeds(Observable.from(nodes(2))));
+    }
+
+    @Test
+    public void testFailedDiscovery() {
+        EarlySeeds earlySeeds = EarlySeeds.of(2);
+
+        assertNull(earlySeeds.seeds(Observable.<DiscoveryNode>error(new IllegalStateException("listing failed"))));
+        assertNull(earlySeeds.remainder());
+    }
+
+    @Test
+    public void testStrategyReturnsSeedsThenTheFullList() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(30).pageSize(5).latencyMillis(10).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        properties.put(AzureProperties.DISCOVERY_BACKEND.key(), DiscoveryBackend.COMPUTE_ASYNC);
+        properties.put(AzureProperties.DISCOVERY_CONCURRENCY.key(), 2);
+        properties.put(AzureProperties.EARLY_SEED_COUNT.key(), 3);
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+
+        List<DiscoveryNode> seeds = list(strategy.discoverNodes());
+        // the listing goes on after the seeds were found
+        assertEquals(3, seeds.size());
+        assertTrue("requests: " + fleet.requests(), fleet.requests() < 30 * 2);
+        assertEquals(0, strategy.metrics().getDiscoveries());
+
+        assertEquals(fleet.runningAddresses().size(), list(strategy.discoverNodes()).size());
+        assertEquals(1, strategy.metrics().getDiscoveries());
+
+        assertEquals(fleet.runningAddresses().size(), list(strategy.discoverNodes()).size());
+        assertEquals(2, strategy.metrics().getDiscoveries());
+        strategy.destroy();
+    }
+
+    @Test
+    public void testLocalMetadataLeavesTheSeedsToTheJoin() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(30).pageSize(5).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        properties.put(AzureProperties.DISCOVERY_BACKEND.key(), DiscoveryBackend.COMPUTE_ASYNC);
+        properties.put(AzureProperties.EARLY_SEED_COUNT.key(), 3);
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+
+        try {
+            // the order Hazelcast calls the strategy in on start-up
+            strategy.discoverLocalMetadata();
+            List<DiscoveryNode> seeds = list(strategy.discoverNodes());
+
+            assertEquals(3, seeds.size());
+            assertEquals(fleet.runningAddresses().size(), list(strategy.discoverNodes()).size());
+        } finally {
+            strategy.destroy();
+        }
+    }
+
+    @Test
+    public void testStrategyReturnsSeedsOfTheLocalZoneFirst() throws IOException {
+        HttpServer metadata = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        metadata.createContext("/metadata/instance", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] response = "{\"compute\":{\"zone\":\"3\",\"platformFaultDomain\":\"0\"}}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        metadata.start();
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(9).zones(3).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        properties.put(AzureProperties.DISCOVERY_BACKEND.key(), DiscoveryBackend.COMPUTE_ASYNC);
+        properties.put(AzureProperties.DISCOVERY_CONCURRENCY.key(), 1);
+        properties.put(AzureProperties.EARLY_SEED_COUNT.key(), 3);
+        properties.put(AzureProperties.USE_INSTANCE_METADATA.key(), true);
+        properties.put(AzureProperties.INSTANCE_METADATA_ENDPOINT.key(),
+                "http://127.0.0.1:" + metadata.getAddress().getPort() + "/metadata/instance");
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+
+        try {
+            List<DiscoveryNode> seeds = list(strategy.discoverNodes());
+
+            assertEquals(3, seeds.size());
+            assertEquals("3", NodeLocation.of(seeds.get(0)).zone());
+        } finally {
+            strategy.destroy();
+            metadata.stop(0);
+        }
+    }
+
+    @Test
+    public void testSeedsNeedTheAsyncBackend() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(5).build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        properties.put(AzureProperties.EARLY_SEED_COUNT.key(), 3);
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+
+        assertEquals(5, list(strategy.discoverNodes()).size());
+        strategy.destroy();
+    }
+
+    private static List<DiscoveryNode> nodes(int count) throws UnknownHostException {
+        List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(new SimpleDiscoveryNode(new Address("10.0.0." + (i + 1), SyntheticFleet.PORT)));
+        }
+        return nodes;
+    }
+
+    private static List<DiscoveryNode> list(Iterable<DiscoveryNode> nodes) {
+        List<DiscoveryNode> list = new ArrayList<DiscoveryNode>();
+        for (DiscoveryNode node : nodes) {
+            list.add(node);
+        }
+        return list;
+    }
+}
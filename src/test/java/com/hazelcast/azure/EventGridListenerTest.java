@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.AssertTask;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class EventGridListenerTest extends HazelcastTestSupport {
+
+    private static final String GROUP = "/subscriptions/00000000-0000-0000-0000-000000000000/resourceGroups/hazelcast";
+    private static final String KEY = "s3cr3t";
+
+    private final RecordingBackend backend = new RecordingBackend();
+    private final AtomicInteger scans = new AtomicInteger();
+    private final List<Runnable> pendingRefreshes = new CopyOnWriteArrayList<Runnable>();
+    private final DiscoveryNodeCache nodeCache = new DiscoveryNodeCache(60000, new Callable<List<DiscoveryNode>>() {
+        @Override
+        public List<DiscoveryNode> call() throws Exception {
+            int scan = scans.incrementAndGet();
+            return Collections.<DiscoveryNode>singletonList(new SimpleDiscoveryNode(new Address("10.0.5." + scan, 5701)));
+        }
+    }, new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            pendingRefreshes.add(command);
+        }
+    });
+
+    private EventGridListener listener;
+
+    @After
+    public void tearDown() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    public void testAnswersSubscriptionValidation() throws Exception {
+        listener = start(Arrays.asList("hazelcast"), nodeCache);
+
+        Response response = post(fixture("event-grid-validation.json"));
+
+        assertEquals(200, response.code);
+        assertEquals("{\"validationResponse\":\"512d38b6-c7b8-40c8-89fe-f46f9e9622b6\"}", response.body);
+        assertTrue(backend.invalidated.isEmpty());
+    }
+
+    @Test
+    public void testInvalidatesChangedClusterResources() throws Exception {
+        listener = start(Arrays.asList("hazelcast"), nodeCache);
+        nodeCache.get();
+
+        Response response = post(fixture("event-grid-resource-events.json"));
+
+        assertEquals(200, response.code);
+        assertEquals(Arrays.asList(GROUP + "/providers/Microsoft.Compute/virtualMachineScaleSets/hz-vmss",
+                GROUP + "/providers/Microsoft.Compute/virtualMachineScaleSets/hz-vmss/virtualMachines/3",
+                GROUP + "/providers/Microsoft.Compute/virtualMachines/hz-vm-2"), backend.invalidated);
+        assertEquals(1, pendingRefreshes.size());
+        pendingRefreshes.remove(0).run();
+        assertEquals("10.0.5.2", nodeCache.get().get(0).getPrivateAddress().getHost());
+    }
+
+    @Test
+    public void testAcceptsCloudEventsOfAnyResourceGroupCase() throws Exception {
+        listener = start(Arrays.asList("HazelCast"), null);
+
+        Response response = post(fixture("event-grid-cloud-event.json"));
+
+        assertEquals(200, response.code);
+        assertEquals(1, backend.invalidated.size());
+        assertTrue(backend.invalidated.get(0).endsWith("/publicIPAddresses/hz-vm-1-ip"));
+    }
+
+    @Test
+    public void testIgnoresOtherResourceGroups() throws Exception {
+        listener = start(Arrays.asList("other-cluster"), nodeCache);
+        nodeCache.get();
+
+        Response response = post(fixture("event-grid-resource-events.json"));
+
+        assertEquals(200, response.code);
+        assertTrue(backend.invalidated.isEmpty());
+        assertTrue(pendingRefreshes.isEmpty());
+    }
+
+    @Test
+    public void testRejectsRequestsWithoutTheKey() throws Exception {
+        listener = start(Arrays.asList("hazelcast"), nodeCache);
+
+        assertEquals(401, post("", fixture("event-grid-resource-events.json")).code);
+        assertEquals(401, post("?key=wrong", fixture("event-grid-resource-events.json")).code);
+        assertTrue(backend.invalidated.isEmpty());
+        assertEquals(200, post("?key=s3cr3t", fixture("event-grid-resource-events.json")).code);
+        assertEquals(3, backend.invalidated.size());
+    }
+
+    @Test
+    public void testRejectsMalformedPayloads() throws Exception {
+        listener = start(Arrays.asList("hazelcast"), nodeCache);
+
+        assertEquals(400, post("[{\"eventType\":").code);
+        assertEquals(400, post("\"event\"").code);
+        assertTrue(backend.invalidated.isEmpty());
+    }
+
+    @Test
+    public void testAnswersCloudEventsWebhookValidation() throws Exception {
+        listener = start(Arrays.asList("hazelcast"), nodeCache);
+
+        HttpURLConnection connection = connect("?key=" + KEY);
+        connection.setRequestMethod("OPTIONS");
+        connection.setRequestProperty("WebHook-Request-Origin", "eventgrid.azure.net");
+
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("eventgrid.azure.net", connection.getHeaderField("WebHook-Allowed-Origin"));
+    }
+
+    @Test
+    public void testRefreshesAtMostOncePerInterval() throws Exception {
+        listener = EventGridListener.start(new InetSocketAddress("127.0.0.1", 0), KEY, 500,
+                Arrays.asList("hazelcast"), backend, nodeCache);
+        nodeCache.get();
+
+        post(fixture("event-grid-resource-events.json"));
+        assertEquals(1, pendingRefreshes.size());
+        pendingRefreshes.remove(0).run();
+        post(fixture("event-grid-resource-events.json"));
+        post(fixture("event-grid-resource-events.json"));
+
+        assertEquals(9, backend.invalidated.size());
+        assertTrue(pendingRefreshes.isEmpty());
+        assertTrueEventually(new AssertTask() {
+            @Override
+            public void run() {
+                assertEquals(1, pendingRefreshes.size());
+            }
+        });
+    }
+
+    @Test
+    public void testNotConfiguredWithoutPort() {
+        assertNull(EventGridListener.of(Collections.<String, Comparable>emptyMap(), backend, nodeCache));
+    }
+
+    @Test
+    public void testNotConfiguredWithoutKey() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.EVENT_GRID_PORT.key(), 0);
+        properties.put(AzureProperties.GROUP_NAME.key(), "hazelcast");
+
+        assertNull(EventGridListener.of(properties, backend, nodeCache));
+    }
+
+    @Test
+    public void testNotConfiguredWithoutCache() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.EVENT_GRID_PORT.key(), 0);
+        properties.put(AzureProperties.EVENT_GRID_KEY.key(), KEY);
+        properties.put(AzureProperties.GROUP_NAME.key(), "hazelcast");
+
+        assertNull(EventGridListener.of(properties, backend, null));
+    }
+
+    @Test
+    public void testConfiguredWithIncrementalDiscoveryWithoutCache() throws Exception {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.EVENT_GRID_PORT.key(), 0);
+        properties.put(AzureProperties.EVENT_GRID_KEY.key(), KEY);
+        properties.put(AzureProperties.EVENT_GRID_BIND_ADDRESS.key(), "127.0.0.1");
+        properties.put(AzureProperties.GROUP_NAME.key(), "hazelcast");
+        properties.put(AzureProperties.INCREMENTAL_DISCOVERY.key(), true);
+
+        listener = EventGridListener.of(properties, backend, null);
+
+        assertEquals(200, post(fixture("event-grid-resource-events.json")).code);
+        assertEquals(3, backend.invalidated.size());
+    }
+
+    @Test
+    public void testBindsConfiguredAddress() throws Exception {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.EVENT_GRID_PORT.key(), 0);
+        properties.put(AzureProperties.EVENT_GRID_KEY.key(), KEY);
+        properties.put(AzureProperties.EVENT_GRID_BIND_ADDRESS.key(), "127.0.0.1");
+        properties.put(AzureProperties.GROUP_NAME.key(), "hazelcast");
+
+        listener = EventGridListener.of(properties, backend, nodeCache);
+
+        assertEquals("127.0.0.1", listener.address().getHostString());
+        assertEquals(200, post(fixture("event-grid-validation.json")).code);
+    }
+
+    private EventGridListener start(List<String> resourceGroups, DiscoveryNodeCache cache) throws IOException {
+        return EventGridListener.start(new InetSocketAddress("127.0.0.1", 0), KEY, 0, resourceGroups, backend, cache);
+    }
+
+    private HttpURLConnection connect(String query) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + listener.port() + "/" + query);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private Response post(String body) throws IOException {
+        return post("?key=" + KEY, body);
+    }
+
+    private Response post(String query, String body) throws IOException {
+        HttpURLConnection connection = connect(query);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        OutputStream out = connection.getOutputStream();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        int code = connection.getResponseCode();
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        return new Response(code, in == null ? "" : read(in));
+    }
+
+    private static String fixture(String resourceName) throws IOException {
+        InputStream in = EventGridListenerTest.class.getClassLoader().getResourceAsStream(resourceName);
+        if (in == null) {
+            throw new FileNotFoundException(resourceName);
+        }
+        return read(in);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Response {
+
+        private final int code;
+        private final String body;
+
+        private Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    private static final class RecordingBackend implements DiscoveryBackend {
+
+        private final List<String> invalidated = new CopyOnWriteArrayList<String>();
+
+        @Override
+        public List<DiscoveryNode> discoverNodes(String resourceGroup, String clusterId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Integer localFaultDomain() {
+            return null;
+        }
+
+        @Override
+        public void invalidate(String resourceId) {
+            invalidated.add(resourceId);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class InstanceMetadataResolverTest extends HazelcastTestSupport {
+
+    static final String INSTANCE_DOCUMENT = "{"
+            + "\"compute\":{\"vmId\":\"02aab8a4-74ef-476e-8182-f6d2ba4166a6\",\"zone\":\"2\","
+            + "\"platformFaultDomain\":\"1\",\"platformUpdateDomain\":\"4\",\"vmScaleSetName\":\"\"},"
+            + "\"network\":{\"interface\":[{"
+            + "\"ipv4\":{\"ipAddress\":[{\"privateIpAddress\":\"10.0.5.4\",\"publicIpAddress\":\"\"}]},"
+            + "\"ipv6\":{\"ipAddress\":[{\"privateIpAddress\":\"fd00::4\"}]}},"
+            + "{\"ipv4\":{\"ipAddress\":[{\"privateIpAddress\":\"10.0.6.4\"}]},\"ipv6\":{\"ipAddress\":[]}}]}}";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile String body = INSTANCE_DOCUMENT;
+    private HttpServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/metadata/instance", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                boolean metadataHeader = "true".equals(exchange.getRequestHeaders().getFirst("Metadata"));
+                byte[] response = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(metadataHeader ? status : 400, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testResolveInstanceMetadata() {
+        InstanceMetadata metadata = new InstanceMetadataResolver(endpoint()).resolve();
+
+        assertEquals("02aab8a4-74ef-476e-8182-f6d2ba4166a6", metadata.vmId());
+        assertEquals("2", metadata.zone());
+        assertEquals("1", metadata.faultDomain());
+        assertEquals("4", metadata.updateDomain());
+        assertEquals(Arrays.asList("10.0.5.4", "fd00::4", "10.0.6.4"), metadata.privateIPAddresses());
+    }
+
+    @Test
+    public void testResultIsResolvedOnce() {
+        InstanceMetadataResolver resolver = new InstanceMetadataResolver(endpoint());
+
+        resolver.resolve();
+        resolver.resolve();
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testMissingResultIsCached() {
+        status = 404;
+        InstanceMetadataResolver resolver = new InstanceMetadataResolver(endpoint());
+
+        assertNull(resolver.resolve());
+        status = 200;
+        assertNull(resolver.resolve());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testDocumentWithoutComputeSection() {
+        body = "{\"network\":{}}";
+
+        assertNull(new InstanceMetadataResolver(endpoint()).resolve());
+    }
+
+    @Test
+    public void testNonZonalVM() {
+        body = "{\"compute\":{\"zone\":\"\",\"platformFaultDomain\":\"0\"}}";
+
+        InstanceMetadata metadata = new InstanceMetadataResolver(endpoint()).resolve();
+
+        assertNull(metadata.zone());
+        assertEquals("0", metadata.faultDomain());
+        assertEquals(0, metadata.privateIPAddresses().size());
+    }
+
+    @Test
+    public void testUnreachableEndpoint() {
+        server.stop(0);
+
+        assertNull(new InstanceMetadataResolver(endpoint()).resolve());
+    }
+
+    private String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/metadata/instance?api-version=2017-12-01";
+    }
+}
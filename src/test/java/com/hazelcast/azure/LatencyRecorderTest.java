@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class LatencyRecorderTest extends HazelcastTestSupport {
+
+    @Test
+    public void testEmptyRecorder() {
+        LatencyStatistics statistics = new LatencyRecorder().statistics();
+
+        assertEquals(0, statistics.getCount());
+        assertEquals(0, statistics.getP99Millis(), 0);
+        assertEquals(0, statistics.getMeanMillis(), 0);
+    }
+
+    @Test
+    public void testPercentilesAreWithinTheirBucket() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 0; i < 90; i++) {
+            recorder.record(TimeUnit.MILLISECONDS.toNanos(10), false);
+        }
+        for (int i = 0; i < 10; i++) {
+            recorder.record(TimeUnit.MILLISECONDS.toNanos(500), i == 0);
+        }
+
+        LatencyStatistics statistics = recorder.statistics();
+        assertEquals(100, statistics.getCount());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(59, statistics.getMeanMillis(), 0.001);
+        assertEquals(500, statistics.getMaxMillis(), 0.001);
+        assertBetween(10, statistics.getP50Millis(), 20);
+        assertBetween(10, statistics.getP90Millis(), 20);
+        assertBetween(500, statistics.getP99Millis(), 500);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        recorder.record(i, false);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, recorder.count());
+    }
+
+    private static void assertBetween(double low, double actual, double high) {
+        assertTrue(actual + " not in [" + low + ", " + high + "]", actual >= low && actual <= high);
+    }
+}
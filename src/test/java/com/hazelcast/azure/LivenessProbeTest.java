@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class LivenessProbeTest extends HazelcastTestSupport {
+
+    private final LocalAddressIndex localAddresses = new LocalAddressIndex(60000);
+    private final List<ServerSocket> servers = new ArrayList<ServerSocket>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (ServerSocket server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testDropsNodesNotListening() throws IOException {
+        DiscoveryNode alive = node(listen(0));
+        DiscoveryNode dead = node(closedPort());
+        DiscoveryNode otherAlive = node(listen(0));
+        LivenessProbe probe = new LivenessProbe(2000, 60000, 0, localAddresses);
+
+        assertEquals(Arrays.asList(alive, otherAlive), probe.probe(Arrays.asList(alive, dead, otherAlive)));
+    }
+
+    @Test
+    public void testKnownDeadNodesAreNotProbedAgain() throws IOException {
+        DiscoveryNode alive = node(listen(0));
+        int port = closedPort();
+        DiscoveryNode dead = node(port);
+        LivenessProbe probe = new LivenessProbe(2000, 60000, 0, localAddresses);
+        probe.probe(Arrays.asList(alive, dead));
+
+        listen(port);
+
+        assertEquals(Arrays.asList(alive), probe.probe(Arrays.asList(alive, dead)));
+    }
+
+    @Test
+    public void testDeadNodesAreProbedAgainOnceTheirTtlExpired() throws IOException {
+        DiscoveryNode alive = node(listen(0));
+        int port = closedPort();
+        DiscoveryNode dead = node(port);
+        LivenessProbe probe = new LivenessProbe(2000, 0, 0, localAddresses);
+        probe.probe(Arrays.asList(alive, dead));
+
+        listen(port);
+
+        assertEquals(Arrays.asList(alive, dead), probe.probe(Arrays.asList(alive, dead)));
+    }
+
+    @Test
+    public void testAliveNodesAreNotProbedAgainWithinTheirTtl() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        DiscoveryNode alive = node(server.getLocalPort());
+        DiscoveryNode other = node(listen(0));
+        LivenessProbe probe = new LivenessProbe(2000, 60000, 60000, localAddresses);
+        probe.probe(Arrays.asList(alive, other));
+
+        server.close();
+
+        assertEquals(Arrays.asList(alive, other), probe.probe(Arrays.asList(alive, other)));
+    }
+
+    @Test
+    public void testAliveNodesAreProbedAgainOnceTheirTtlExpired() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        DiscoveryNode alive = node(server.getLocalPort());
+        DiscoveryNode other = node(listen(0));
+        LivenessProbe probe = new LivenessProbe(2000, 60000, 0, localAddresses);
+        probe.probe(Arrays.asList(alive, other));
+
+        server.close();
+
+        assertEquals(Arrays.asList(other), probe.probe(Arrays.asList(alive, other)));
+    }
+
+    @Test
+    public void testLocalNodeIsNotProbed() throws IOException {
+        DiscoveryNode alive = node(listen(0));
+        DiscoveryNode local = new SimpleDiscoveryNode(new Address(localAddresses.preferredAddress(), closedPort()));
+        LivenessProbe probe = new LivenessProbe(2000, 60000, 0, localAddresses);
+
+        assertEquals(Arrays.asList(local, alive), probe.probe(Arrays.asList(local, alive)));
+    }
+
+    @Test
+    public void testReturnsAllNodesIfNoneAnswered() throws IOException {
+        List<DiscoveryNode> nodes = Arrays.asList(node(closedPort()), node(closedPort()));
+        LivenessProbe probe = new LivenessProbe(2000, 60000, 0, localAddresses);
+
+        assertEquals(nodes, probe.probe(nodes));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        assertNull(LivenessProbe.of(properties, localAddresses));
+
+        properties.put(AzureProperties.LIVENESS_PROBE_TIMEOUT_MILLIS.key(), 500);
+        assertNotNull(LivenessProbe.of(properties, localAddresses));
+    }
+
+    private int listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        servers.add(server);
+        return server.getLocalPort();
+    }
+
+    private static int closedPort() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = server.getLocalPort();
+        server.close();
+        return port;
+    }
+
+    private static DiscoveryNode node(int port) throws IOException {
+        return new SimpleDiscoveryNode(new Address("127.0.0.1", port));
+    }
+}
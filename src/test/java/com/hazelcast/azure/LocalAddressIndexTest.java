@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class LocalAddressIndexTest extends HazelcastTestSupport {
+
+    private final LocalAddressIndex index = new LocalAddressIndex(60000);
+
+    @Test
+    public void testContainsAllNonLoopbackAddresses() throws Exception {
+        for (NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            for (InetAddress inetAddr : Collections.list(iface.getInetAddresses())) {
+                assertEquals(!inetAddr.isLoopbackAddress(), index.contains(inetAddr.getHostAddress()));
+            }
+        }
+    }
+
+    @Test
+    public void testPreferredAddressIsLocal() {
+        String preferredAddress = index.preferredAddress();
+        if (preferredAddress != null) {
+            assertTrue(index.contains(preferredAddress));
+        }
+    }
+
+    @Test
+    public void testForeignAddressIsNotLocal() {
+        assertFalse(index.contains("192.0.2.17"));
+        assertFalse(index.contains("2001:db8::17"));
+        assertFalse(index.contains(null));
+    }
+
+    @Test
+    public void testNormalizeIPv6() {
+        assertEquals("fd00:0:0:0:0:0:0:4", LocalAddressIndex.normalize("fd00::4"));
+        assertEquals("fe80:0:0:0:0:0:0:1", LocalAddressIndex.normalize("fe80::1%eth0"));
+        assertEquals("10.0.5.4", LocalAddressIndex.normalize("10.0.5.4"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.AzureEnvironment;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ManagedIdentityExtensionCredentialsTest extends HazelcastTestSupport {
+
+    private volatile int status = 200;
+    private volatile String body = "{\"access_token\":\"extension-token\",\"token_type\":\"Bearer\"}";
+    private volatile String request;
+    private volatile String metadata;
+    private HttpServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/oauth2/token", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                request = exchange.getRequestMethod() + " " + new Scanner(exchange.getRequestBody(), "UTF-8")
+                        .useDelimiter("\\A").next();
+                metadata = exchange.getRequestHeaders().getFirst("Metadata");
+                byte[] response = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRequestsTokenForResource() throws IOException {
+        String token = credentials().getToken("https://management.core.windows.net/");
+
+        assertEquals("extension-token", token);
+        assertEquals("POST resource=https%3A%2F%2Fmanagement.core.windows.net%2F", request);
+        assertEquals("true", metadata);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailsOnErrorStatus() throws IOException {
+        status = 400;
+        body = "{\"error\":\"invalid_request\"}";
+
+        credentials().getToken("https://management.core.windows.net/");
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailsWithoutAccessToken() throws IOException {
+        body = "{\"token_type\":\"Bearer\"}";
+
+        credentials().getToken("https://management.core.windows.net/");
+    }
+
+    private ManagedIdentityExtensionCredentials credentials() {
+        return new ManagedIdentityExtensionCredentials(AzureEnvironment.AZURE, server.getAddress().getPort());
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class MultiGroupDiscoveryBackendTest extends HazelcastTestSupport {
+
+    private static final String OTHER_SUBSCRIPTION_ID = "11111111-1111-1111-1111-111111111111";
+
+    private MultiGroupDiscoveryBackend backend;
+    private ArmStandIn standIn;
+    private AzureDiscoveryStrategy strategy;
+
+    @After
+    public void tearDown() {
+        if (backend != null) {
+            backend.shutdown();
+        }
+        if (strategy != null) {
+            strategy.destroy();
+        }
+        if (standIn != null) {
+            standIn.stop();
+        }
+    }
+
+    @Test
+    public void testMergesGroupsInOrderWithoutDuplicates() throws Exception {
+        backend = MultiGroupDiscoveryBackend.of(Arrays.asList(
+                group("blue", new StubBackend(0, null, "10.0.0.1", "10.0.0.2")),
+                group("green", new StubBackend(0, null, "10.0.0.2", "10.0.0.3"))), 0);
+
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"), hosts(backend.discoverNodes(null, "cluster")));
+    }
+
+    @Test
+    public void testDiscoversGroupsInParallel() throws Exception {
+        backend = MultiGroupDiscoveryBackend.of(Arrays.asList(
+                group("blue", new StubBackend(500, null, "10.0.0.1")),
+                group("green", new StubBackend(500, null, "10.0.0.2")),
+                group("red", new StubBackend(500, null, "10.0.0.3"))), 0);
+
+        long start = System.currentTimeMillis();
+        assertEquals(3, backend.discoverNodes(null, "cluster").size());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testLeavesFailedGroupOut() throws Exception {
+        backend = MultiGroupDiscoveryBackend.of(Arrays.asList(
+                group("blue", new StubBackend(0, new IllegalStateException("expected"))),
+                group("green", new StubBackend(0, null, "10.0.0.2"))), 0);
+
+        assertEquals(Arrays.asList("10.0.0.2"), hosts(backend.discoverNodes(null, "cluster")));
+    }
+
+    @Test
+    public void testLeavesSlowGroupOut() throws Exception {
+        backend = MultiGroupDiscoveryBackend.of(Arrays.asList(
+                group("blue", new StubBackend(10000, null, "10.0.0.1")),
+                group("green", new StubBackend(0, null, "10.0.0.2"))), 200);
+
+        long start = System.currentTimeMillis();
+        assertEquals(Arrays.asList("10.0.0.2"), hosts(backend.discoverNodes(null, "cluster")));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testHungGroupDoesNotBlockLaterDiscoveries() throws Exception {
+        HungBackend hung = new HungBackend();
+        backend = MultiGroupDiscoveryBackend.of(Arrays.asList(
+                group("blue", hung),
+                group("green", new StubBackend(0, null, "10.0.0.2"))), 200);
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Arrays.asList("10.0.0.2"), hosts(backend.discoverNodes(null, "cluster")));
+            }
+        } finally {
+            hung.released = true;
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailsWhenNoGroupAnswers() throws Exception {
+        backend = MultiGroupDiscoveryBackend.of(Arrays.asList(
+                group("blue", new StubBackend(0, new IllegalStateException("expected"))),
+                group("green", new StubBackend(0, new IllegalArgumentException("expected")))), 0);
+
+        backend.discoverNodes(null, "cluster");
+    }
+
+    @Test
+    public void testDiscoversGroupsOfSeveralSubscriptions() throws IOException {
+        SyntheticFleet blue = SyntheticFleet.builder().virtualMachines(3)
+                .resourceGroup(SyntheticFleet.SUBSCRIPTION_ID, "blue", 0).build();
+        SyntheticFleet green = SyntheticFleet.builder().virtualMachines(2).scaleSets(1, 2)
+                .resourceGroup(SyntheticFleet.SUBSCRIPTION_ID, "green", 10).build();
+        SyntheticFleet other = SyntheticFleet.builder().virtualMachines(4).stoppedShare(0.5)
+                .resourceGroup(OTHER_SUBSCRIPTION_ID, "blue", 20).build();
+        standIn = ArmStandIn.start(blue, green, other);
+        Map<String, Comparable> properties = standIn.properties();
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID + ", " + OTHER_SUBSCRIPTION_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), "blue,green");
+
+        Set<String> expected = new HashSet<String>(blue.runningAddresses());
+        expected.addAll(green.runningAddresses());
+        expected.addAll(other.runningAddresses());
+        assertEquals(expected, new HashSet<String>(discover(properties)));
+        // the missing green group of the other subscription is left out
+        assertEquals(1, strategy.metrics().getDiscoveries());
+    }
+
+    @Test
+    public void testDeduplicatesGroupsListedTwice() throws IOException {
+        SyntheticFleet blue = SyntheticFleet.builder().virtualMachines(3)
+                .resourceGroup(SyntheticFleet.SUBSCRIPTION_ID, "blue", 0).build();
+        SyntheticFleet green = SyntheticFleet.builder().virtualMachines(3)
+                .resourceGroup(SyntheticFleet.SUBSCRIPTION_ID, "green", 0).build();
+        standIn = ArmStandIn.start(blue, green);
+        Map<String, Comparable> properties = standIn.properties();
+        properties.put(AzureProperties.GROUP_NAME.key(), "blue, green, blue");
+
+        assertEquals(blue.runningAddresses(), discover(properties));
+    }
+
+    @Test
+    public void testSlowGroupDoesNotHoldDiscoveryBack() throws IOException {
+        SyntheticFleet blue = SyntheticFleet.builder().virtualMachines(2)
+                .resourceGroup(SyntheticFleet.SUBSCRIPTION_ID, "blue", 0).build();
+        SyntheticFleet green = SyntheticFleet.builder().virtualMachines(2).latencyMillis(10000)
+                .resourceGroup(SyntheticFleet.SUBSCRIPTION_ID, "green", 10).build();
+        standIn = ArmStandIn.start(blue, green);
+        Map<String, Comparable> properties = standIn.properties();
+        properties.put(AzureProperties.GROUP_NAME.key(), "blue,green");
+        properties.put(AzureProperties.GROUP_TIMEOUT_SECONDS.key(), 3);
+        properties.put(AzureProperties.ARM_REQUESTS_PER_SECOND.key(), 0);
+
+        assertEquals(blue.runningAddresses(), discover(properties));
+    }
+
+    private List<String> discover(Map<String, Comparable> properties) {
+        strategy = new AzureDiscoveryStrategy(properties);
+        strategy.start();
+        List<String> hosts = new ArrayList<String>();
+        for (DiscoveryNode node : strategy.discoverNodes()) {
+            hosts.add(node.getPrivateAddress().getHost());
+        }
+        return hosts;
+    }
+
+    private static MultiGroupDiscoveryBackend.Group group(String resourceGroup, DiscoveryBackend backend) {
+        return MultiGroupDiscoveryBackend.group(SyntheticFleet.SUBSCRIPTION_ID, resourceGroup, backend);
+    }
+
+    private static List<String> hosts(List<DiscoveryNode> nodes) {
+        List<String> hosts = new ArrayList<String>();
+        for (DiscoveryNode node : nodes) {
+            hosts.add(node.getPrivateAddress().getHost());
+        }
+        return hosts;
+    }
+
+    /**
+     * Hangs until released, ignoring interrupts like a blocked socket read
+     */
+    private static class HungBackend implements DiscoveryBackend {
+
+        volatile boolean released;
+
+        @Override
+        public List<DiscoveryNode> discoverNodes(String resourceGroup, String clusterId) {
+            while (!released) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) {
+                    // keeps hanging
+                }
+            }
+            return new ArrayList<DiscoveryNode>();
+        }
+
+        @Override
+        public Integer localFaultDomain() {
+            return null;
+        }
+
+        @Override
+        public void invalidate(String resourceId) {
+        }
+    }
+
+    private static class StubBackend implements DiscoveryBackend {
+
+        private final long delayMillis;
+        private final Exception failure;
+        private final String[] hosts;
+
+        StubBackend(long delayMillis, Exception failure, String... hosts) {
+            this.delayMillis = delayMillis;
+            this.failure = failure;
+            this.hosts = hosts;
+        }
+
+        @Override
+        public List<DiscoveryNode> discoverNodes(String resourceGroup, String clusterId) throws Exception {
+            Thread.sleep(delayMillis);
+            if (failure != null) {
+                throw failure;
+            }
+            List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+            for (String host : hosts) {
+                nodes.add(new SimpleDiscoveryNode(new Address(host, 5701)));
+            }
+            return nodes;
+        }
+
+        @Override
+        public Integer localFaultDomain() {
+            return null;
+        }
+
+        @Override
+        public void invalidate(String resourceId) {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class NodeLocationTest extends HazelcastTestSupport {
+
+    private ArmStandIn standIn;
+    private AzureDiscoveryStrategy strategy;
+
+    @After
+    public void tearDown() {
+        if (strategy != null) {
+            strategy.destroy();
+        }
+        if (standIn != null) {
+            standIn.stop();
+        }
+    }
+
+    @Test
+    public void testTagsNodes() throws UnknownHostException {
+        DiscoveryNode node = NodeLocation.node(new Address("10.0.0.1", 5701), null, "2", 1);
+
+        assertEquals("2", node.getProperties().get(NodeLocation.AVAILABILITY_ZONE));
+        assertEquals("1", node.getProperties().get(NodeLocation.FAULT_DOMAIN));
+        assertEquals(node.getPrivateAddress(), node.getPublicAddress());
+        assertEquals("2", NodeLocation.of(node).zone());
+        assertNull(NodeLocation.of(NodeLocation.node(new Address("10.0.0.1", 5701), null, null, null)));
+    }
+
+    @Test
+    public void testSingleZoneOnly() {
+        assertEquals("3", NodeLocation.zone(Collections.singletonList("3")));
+        assertNull(NodeLocation.zone(Arrays.asList("1", "2")));
+        assertNull(NodeLocation.zone(Collections.emptyList()));
+        assertNull(NodeLocation.zone(null));
+    }
+
+    @Test
+    public void testLocalZoneFirst() throws UnknownHostException {
+        List<DiscoveryNode> nodes = Arrays.asList(
+                node("10.0.0.1", "1", 0),
+                node("10.0.0.2", "2", 1),
+                node("10.0.0.3", "2", 0),
+                new SimpleDiscoveryNode(new Address("10.0.0.4", 5701)),
+                node("10.0.0.5", "1", 1),
+                node("10.0.0.6", "2", 1));
+
+        List<DiscoveryNode> ordered = NodeLocation.localFirst(nodes, NodeLocation.of("2", 1));
+
+        assertEquals(Arrays.asList("10.0.0.2", "10.0.0.6", "10.0.0.3", "10.0.0.1", "10.0.0.4", "10.0.0.5"),
+                hosts(ordered));
+    }
+
+    @Test
+    public void testFaultDomainFirstWithoutZones() throws UnknownHostException {
+        List<DiscoveryNode> nodes = Arrays.asList(node("10.0.0.1", null, 0), node("10.0.0.2", null, 1),
+                node("10.0.0.3", null, 2), node("10.0.0.4", null, 1));
+
+        List<DiscoveryNode> ordered = NodeLocation.localFirst(nodes, NodeLocation.of(null, 1));
+
+        assertEquals(Arrays.asList("10.0.0.2", "10.0.0.4", "10.0.0.1", "10.0.0.3"), hosts(ordered));
+    }
+
+    @Test
+    public void testUnknownLocalLocationKeepsOrder() throws UnknownHostException {
+        List<DiscoveryNode> nodes = Arrays.asList(node("10.0.0.1", "1", 0), node("10.0.0.2", "2", 1));
+
+        assertSame(nodes, NodeLocation.localFirst(nodes, null));
+    }
+
+    @Test
+    public void testStrategyReturnsLocalZoneFirst() throws IOException {
+        String localAddress = new AzureDiscoveryStrategy(new HashMap<String, Comparable>()).getLocalHostAddress();
+        // the local VM is in zone 1 and fault domain 0
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(9)
+                .zones(3)
+                .faultDomains(2)
+                .localAddress(localAddress)
+                .build();
+        standIn = ArmStandIn.start(fleet);
+        strategy = new AzureDiscoveryStrategy(standIn.properties());
+        strategy.start();
+
+        List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+        for (DiscoveryNode node : strategy.discoverNodes()) {
+            nodes.add(node);
+        }
+
+        assertEquals(9, nodes.size());
+        assertEquals(Arrays.asList(localAddress, "10.0.0.10", "10.0.0.7"), hosts(nodes).subList(0, 3));
+        for (DiscoveryNode node : nodes.subList(0, 3)) {
+            assertEquals("1", NodeLocation.of(node).zone());
+        }
+        for (DiscoveryNode node : nodes.subList(3, 9)) {
+            assertFalse("1".equals(NodeLocation.of(node).zone()));
+        }
+    }
+
+    private static DiscoveryNode node(String host, String zone, Integer faultDomain) throws UnknownHostException {
+        return NodeLocation.node(new Address(host, 5701), null, zone, faultDomain);
+    }
+
+    private static List<String> hosts(List<DiscoveryNode> nodes) {
+        List<String> hosts = new ArrayList<String>();
+        for (DiscoveryNode node : nodes) {
+            hosts.add(node.getPrivateAddress().getHost());
+        }
+        return hosts;
+    }
+}
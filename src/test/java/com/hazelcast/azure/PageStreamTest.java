@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.Page;
+import com.microsoft.azure.PagedList;
+import com.microsoft.azure.management.compute.VirtualMachine;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineInner;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class PageStreamTest extends HazelcastTestSupport {
+
+    @Test
+    public void testReadsEveryPage() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(5).pageSize(2).build();
+        PagedList<VirtualMachine> vms = fleet.computeManager().virtualMachines()
+                .listByResourceGroup(SyntheticFleet.RESOURCE_GROUP);
+
+        Set<String> names = new HashSet<String>();
+        for (VirtualMachine vm : PageStream.of(vms)) {
+            names.add(vm.name());
+        }
+
+        assertEquals(5, names.size());
+    }
+
+    @Test
+    public void testLoadsPagesOnDemandWithoutKeepingThem() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(7).pageSize(2).build();
+        PagedList<VirtualMachineInner> vms = fleet.computeManager().inner().virtualMachines()
+                .listByResourceGroup(SyntheticFleet.RESOURCE_GROUP);
+        // the list fetches one page ahead
+        long listed = fleet.requests();
+        Iterator<VirtualMachineInner> iterator = PageStream.of(vms).iterator();
+
+        iterator.next();
+        iterator.next();
+        assertEquals(listed, fleet.requests());
+        VirtualMachineInner third = iterator.next();
+        assertEquals(listed + 1, fleet.requests());
+        // the first page was dropped from the listing
+        assertEquals(third, vms.get(0));
+        for (int i = 0; i < 4; i++) {
+            iterator.next();
+        }
+        assertFalse(iterator.hasNext());
+        assertEquals(4, fleet.requests());
+    }
+
+    @Test
+    public void testIteratesListsFilledByHand() {
+        PagedList<String> list = new PagedList<String>() {
+            @Override
+            public Page<String> nextPage(String nextPageLink) {
+                return null;
+            }
+        };
+        list.addAll(Arrays.asList("a", "b"));
+
+        Iterator<String> iterator = PageStream.of(list).iterator();
+
+        assertEquals("a", iterator.next());
+        assertEquals("b", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testEmptyListing() {
+        SyntheticFleet fleet = SyntheticFleet.builder().virtualMachines(0).build();
+        PagedList<VirtualMachineInner> vms = fleet.computeManager().inner().virtualMachines()
+                .listByResourceGroup(SyntheticFleet.RESOURCE_GROUP);
+
+        assertFalse(PageStream.of(vms).iterator().hasNext());
+    }
+}
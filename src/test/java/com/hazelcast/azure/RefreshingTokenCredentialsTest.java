@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.AssertTask;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class RefreshingTokenCredentialsTest extends HazelcastTestSupport {
+
+    private static final String RESOURCE = "https://management.core.windows.net/";
+
+    private final AtomicInteger tokensAcquired = new AtomicInteger();
+    private volatile long tokenLifetimeMillis = TimeUnit.HOURS.toMillis(1);
+    private ScheduledExecutorService scheduler;
+    private RefreshingTokenCredentials credentials;
+
+    @Before
+    public void setup() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        Callable<AzureTokenCredentials> factory = new Callable<AzureTokenCredentials>() {
+            @Override
+            public AzureTokenCredentials call() {
+                return new AzureTokenCredentials(AzureEnvironment.AZURE, "tenant") {
+                    @Override
+                    public String getToken(String resource) {
+                        int sequence = tokensAcquired.incrementAndGet();
+                        return jwt(System.currentTimeMillis() + tokenLifetimeMillis, sequence);
+                    }
+                };
+            }
+        };
+        credentials = new RefreshingTokenCredentials(factory.call(), factory, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        credentials.close();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testTokenIsCached() throws Exception {
+        String token = credentials.getToken(RESOURCE);
+
+        assertEquals(token, credentials.getToken(RESOURCE));
+        assertEquals(1, tokensAcquired.get());
+    }
+
+    @Test
+    public void testTokenIsRefreshedBeforeExpiry() throws Exception {
+        // expires within the refresh margin, so the refresh is due right away
+        tokenLifetimeMillis = RefreshingTokenCredentials.REFRESH_MARGIN_MILLIS - TimeUnit.SECONDS.toMillis(10);
+        String first = credentials.getToken(RESOURCE);
+        tokenLifetimeMillis = TimeUnit.HOURS.toMillis(1);
+
+        assertTrueEventually(new AssertTask() {
+            @Override
+            public void run() {
+                assertEquals(2, tokensAcquired.get());
+            }
+        });
+        String refreshed = credentials.getToken(RESOURCE);
+        assertEquals(2, tokensAcquired.get());
+        assertNotEquals(first, refreshed);
+    }
+
+    @Test
+    public void testPrefetch() {
+        credentials.prefetch(RESOURCE);
+
+        assertTrueEventually(new AssertTask() {
+            @Override
+            public void run() throws Exception {
+                assertEquals(1, tokensAcquired.get());
+            }
+        });
+    }
+
+    @Test
+    public void testExpiresAt() {
+        assertEquals(Long.valueOf(1500000000000L), credentials.expiresAt(jwt(1500000000000L, 1)));
+        assertNull(credentials.expiresAt("opaque-token"));
+        assertNull(credentials.expiresAt("header.bm90LWpzb24.signature"));
+        assertNull(credentials.expiresAt(null));
+    }
+
+    private static String jwt(long expiresAtMillis, int sequence) {
+        String claims = "{\"exp\":" + TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis) + ",\"seq\":" + sequence + "}";
+        return "eyJhbGciOiJSUzI1NiJ9." + Base64.encodeBase64URLSafeString(claims.getBytes()) + ".signature";
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ResourceGraphDiscoveryBackendTest extends HazelcastTestSupport {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> requests = new ArrayList<JsonNode>();
+    private final List<String> pages = new ArrayList<String>();
+    private final LocalAddressIndex localAddresses = new LocalAddressIndex(60000);
+    private volatile int status = 200;
+    private HttpServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/providers/Microsoft.ResourceGraph/resources", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] response;
+                synchronized (requests) {
+                    requests.add(objectMapper.readTree(exchange.getRequestBody()));
+                    response = pages.get(requests.size() - 1).getBytes("UTF-8");
+                }
+                exchange.sendResponseHeaders(status, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDiscoverNodesFollowsPages() throws Exception {
+        pages.add("{\"data\":[" + row("10.0.5.1", "44.18.12.1", 0) + "," + row("10.0.5.2", "", 1) + "],"
+                + "\"$skipToken\":\"page-2\"}");
+        pages.add("{\"data\":[" + row("10.0.5.3", null, 0) + "]}");
+
+        List<DiscoveryNode> nodes = backend().discoverNodes("test-group", "cluster000");
+
+        assertEquals(3, nodes.size());
+        assertEquals("10.0.5.1", nodes.get(0).getPrivateAddress().getHost());
+        assertEquals(5701, nodes.get(0).getPrivateAddress().getPort());
+        assertEquals("44.18.12.1", nodes.get(0).getPublicAddress().getHost());
+        assertEquals("10.0.5.2", nodes.get(1).getPrivateAddress().getHost());
+        assertEquals("10.0.5.3", nodes.get(2).getPrivateAddress().getHost());
+
+        assertEquals(2, requests.size());
+        assertEquals("test-subscription", requests.get(0).path("subscriptions").get(0).asText());
+        assertTrue(requests.get(0).path("query").asText().contains("resourceGroup =~ 'test-group'"));
+        assertTrue(requests.get(0).path("query").asText().contains("tags['cluster000']"));
+        assertTrue(requests.get(0).path("options").path("$skipToken").isMissingNode());
+        assertEquals("page-2", requests.get(1).path("options").path("$skipToken").asText());
+    }
+
+    @Test
+    public void testLocalFaultDomain() throws Exception {
+        String localIp = localAddresses.preferredAddress();
+        pages.add("{\"data\":[" + row("10.0.5.1", null, 1) + "," + row(localIp, null, 2) + "]}");
+
+        DiscoveryBackend backend = backend();
+        backend.discoverNodes("test-group", "cluster000");
+
+        assertEquals(Integer.valueOf(2), backend.localFaultDomain());
+    }
+
+    @Test
+    public void testRowsWithoutAddressAreSkipped() throws Exception {
+        pages.add("{\"data\":[{\"port\":\"5701\"}]}");
+
+        DiscoveryBackend backend = backend();
+
+        assertEquals(0, backend.discoverNodes("test-group", "cluster000").size());
+        assertNull(backend.localFaultDomain());
+    }
+
+    @Test
+    public void testRowsWithEmptyAddressAreSkipped() throws Exception {
+        pages.add("{\"data\":[" + row("", null, 0) + "," + row(" ", null, 0) + "," + row("10.0.5.1", null, 0) + "]}");
+
+        List<DiscoveryNode> nodes = backend().discoverNodes("test-group", "cluster000");
+
+        assertEquals(1, nodes.size());
+        assertEquals("10.0.5.1", nodes.get(0).getPrivateAddress().getHost());
+    }
+
+    @Test
+    public void testScaleSetInstancesFromNetworkInterfaces() throws Exception {
+        pages.add(fixture("resource-graph-scale-set-page.json"));
+
+        List<DiscoveryNode> nodes = backend().discoverNodes("hazelcast", "cluster000");
+
+        assertEquals(3, nodes.size());
+        assertEquals("20.61.18.140", nodes.get(0).getPublicAddress().getHost());
+        assertEquals("10.0.6.7", nodes.get(1).getPrivateAddress().getHost());
+        assertEquals(nodes.get(1).getPrivateAddress(), nodes.get(1).getPublicAddress());
+        assertEquals("2", NodeLocation.of(nodes.get(1)).zone());
+        assertEquals("1", NodeLocation.of(nodes.get(1)).faultDomain());
+        // an instance without a known power state is kept
+        assertEquals("10.0.6.8", nodes.get(2).getPrivateAddress().getHost());
+        assertNull(NodeLocation.of(nodes.get(2)));
+
+        String query = requests.get(0).path("query").asText();
+        assertTrue(query.contains("properties.virtualMachine.id"));
+        assertFalse(query.contains("networkInterfaceConfigurations"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailedQuery() throws Exception {
+        status = 403;
+        pages.add("{\"error\":{\"code\":\"AuthorizationFailed\"}}");
+
+        backend().discoverNodes("test-group", "cluster000");
+    }
+
+    @Test
+    public void testLiteralEscaping() {
+        assertEquals("'it\\'s'", ResourceGraphDiscoveryBackend.literal("it's"));
+        assertEquals("'a\\\\b'", ResourceGraphDiscoveryBackend.literal("a\\b"));
+    }
+
+    private DiscoveryBackend backend() {
+        String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        return new ResourceGraphDiscoveryBackend(new OkHttpClient(), endpoint, "test-subscription", localAddresses);
+    }
+
+    private static String fixture(String resourceName) throws IOException {
+        InputStream in = ResourceGraphDiscoveryBackendTest.class.getClassLoader().getResourceAsStream(resourceName);
+        if (in == null) {
+            throw new FileNotFoundException(resourceName);
+        }
+        try {
+            return new ObjectMapper().readTree(in).toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String row(String privateIp, String publicIp, int faultDomain) {
+        return "{\"vmId\":\"/subscriptions/test-subscription/vm-" + privateIp + "\",\"port\":\"5701\","
+                + "\"powerState\":\"PowerState/running\",\"faultDomain\":" + faultDomain + ","
+                + "\"privateIp\":\"" + privateIp + "\""
+                + (publicIp == null ? "" : ",\"publicIp\":\"" + publicIp + "\"") + "}";
+    }
+}
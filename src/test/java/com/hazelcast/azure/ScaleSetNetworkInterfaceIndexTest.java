@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.Page;
+import com.microsoft.azure.PagedList;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSetVM;
+import com.microsoft.azure.management.network.VirtualMachineScaleSetNetworkInterface;
+import com.microsoft.rest.RestException;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ScaleSetNetworkInterfaceIndexTest extends HazelcastTestSupport {
+
+    private static final String VM_ID = "/subscriptions/sub/resourceGroups/group/providers/Microsoft.Compute"
+            + "/virtualMachineScaleSets/scale-set/virtualMachines/0";
+
+    @Test
+    public void testLookUpPrimaryByName() {
+        VirtualMachineScaleSetNetworkInterface primary = mock(VirtualMachineScaleSetNetworkInterface.class);
+        VirtualMachineScaleSetVM vm = mock(VirtualMachineScaleSetVM.class);
+        when(vm.primaryNetworkInterfaceId()).thenReturn(VM_ID + "/networkInterfaces/scale-set-nic");
+        when(vm.getNetworkInterface("scale-set-nic")).thenReturn(primary);
+
+        assertSame(primary, ScaleSetNetworkInterfaceIndex.lookUpPrimary(vm));
+        verify(vm, never()).listNetworkInterfaces();
+    }
+
+    @Test
+    public void testLookUpPrimaryFallsBackToFirstAttached() {
+        VirtualMachineScaleSetNetworkInterface first = mock(VirtualMachineScaleSetNetworkInterface.class);
+        VirtualMachineScaleSetNetworkInterface second = mock(VirtualMachineScaleSetNetworkInterface.class);
+        VirtualMachineScaleSetVM vm = mock(VirtualMachineScaleSetVM.class);
+        when(vm.listNetworkInterfaces()).thenReturn(pagedList(first, second));
+
+        assertSame(first, ScaleSetNetworkInterfaceIndex.lookUpPrimary(vm));
+    }
+
+    @Test
+    public void testLookUpPrimaryWithoutNetworkInterfaces() {
+        VirtualMachineScaleSetVM vm = mock(VirtualMachineScaleSetVM.class);
+        when(vm.listNetworkInterfaces()).thenReturn(pagedList());
+
+        assertNull(ScaleSetNetworkInterfaceIndex.lookUpPrimary(vm));
+    }
+
+    private static PagedList<VirtualMachineScaleSetNetworkInterface> pagedList(
+            VirtualMachineScaleSetNetworkInterface... networkInterfaces) {
+        PagedList<VirtualMachineScaleSetNetworkInterface> page = new PagedList<VirtualMachineScaleSetNetworkInterface>() {
+            @Override
+            public Page<VirtualMachineScaleSetNetworkInterface> nextPage(String s) throws RestException {
+                return null;
+            }
+        };
+        page.addAll(Arrays.asList(networkInterfaces));
+        return page;
+    }
+}
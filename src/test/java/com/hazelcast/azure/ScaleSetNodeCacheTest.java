@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSet;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetInner;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ScaleSetNodeCacheTest extends HazelcastTestSupport {
+
+    private static final String SCALE_SET_ID = "/subscriptions/test/resourceGroups/test/providers"
+            + "/Microsoft.Compute/virtualMachineScaleSets/hz-vmss";
+
+    @Test
+    public void testUnchangedScaleSetReusesNodes() throws Exception {
+        ScaleSetNodeCache cache = new ScaleSetNodeCache(60000);
+        List<DiscoveryNode> nodes = nodes();
+        cache.put(scaleSet(2, "Succeeded"), 5701, nodes);
+
+        assertEquals(nodes, cache.get(scaleSet(2, "Succeeded"), 5701));
+        assertNull(cache.get(scaleSet(3, "Succeeded"), 5701));
+        assertNull(cache.get(scaleSet(2, "Succeeded"), 5702));
+    }
+
+    @Test
+    public void testNodesExpireAtMaxAge() throws Exception {
+        ScaleSetNodeCache cache = new ScaleSetNodeCache(100);
+        cache.put(scaleSet(2, "Succeeded"), 5701, nodes());
+
+        sleepMillis(150);
+
+        assertNull(cache.get(scaleSet(2, "Succeeded"), 5701));
+    }
+
+    @Test
+    public void testNodesNeverExpireWithoutMaxAge() throws Exception {
+        ScaleSetNodeCache cache = new ScaleSetNodeCache(0);
+        List<DiscoveryNode> nodes = nodes();
+        cache.put(scaleSet(2, "Succeeded"), 5701, nodes);
+
+        sleepMillis(50);
+
+        assertEquals(nodes, cache.get(scaleSet(2, "Succeeded"), 5701));
+    }
+
+    @Test
+    public void testInvalidateByInstanceId() throws Exception {
+        ScaleSetNodeCache cache = new ScaleSetNodeCache(60000);
+        cache.put(scaleSet(2, "Succeeded"), 5701, nodes());
+
+        cache.invalidate(SCALE_SET_ID + "/virtualMachines/1");
+
+        assertNull(cache.get(scaleSet(2, "Succeeded"), 5701));
+    }
+
+    private static List<DiscoveryNode> nodes() throws Exception {
+        return Collections.<DiscoveryNode>singletonList(new SimpleDiscoveryNode(new Address("10.0.5.1", 5701)));
+    }
+
+    private static VirtualMachineScaleSet scaleSet(int capacity, String provisioningState) {
+        VirtualMachineScaleSetInner inner = mock(VirtualMachineScaleSetInner.class);
+        when(inner.provisioningState()).thenReturn(provisioningState);
+        VirtualMachineScaleSet scaleSet = mock(VirtualMachineScaleSet.class);
+        when(scaleSet.id()).thenReturn(SCALE_SET_ID);
+        when(scaleSet.capacity()).thenReturn(capacity);
+        when(scaleSet.inner()).thenReturn(inner);
+        return scaleSet;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import com.microsoft.azure.management.compute.VirtualMachineScaleSetInstanceViewStatusesSummary;
+import com.microsoft.azure.management.compute.VirtualMachineStatusCodeCount;
+import com.microsoft.azure.management.compute.implementation.VirtualMachineScaleSetInstanceViewInner;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class ScaleSetPowerSummaryTest extends HazelcastTestSupport {
+
+    @Test
+    public void testAllRunning() {
+        assertEquals(ScaleSetPowerSummary.ALL_RUNNING,
+                summary("ProvisioningState/succeeded", 4, "PowerState/running", 4));
+    }
+
+    @Test
+    public void testSomeRunning() {
+        assertEquals(ScaleSetPowerSummary.SOME_RUNNING,
+                summary("PowerState/running", 3, "PowerState/deallocated", 1));
+    }
+
+    @Test
+    public void testNoneRunning() {
+        assertEquals(ScaleSetPowerSummary.NONE_RUNNING,
+                summary("PowerState/stopped", 1, "PowerState/deallocated", 2));
+    }
+
+    @Test
+    public void testEmptyScaleSetRunsNothing() {
+        assertEquals(ScaleSetPowerSummary.NONE_RUNNING, summary());
+    }
+
+    @Test
+    public void testUnknownWithoutPowerStates() {
+        assertEquals(ScaleSetPowerSummary.UNKNOWN, summary("ProvisioningState/creating", 2));
+        assertEquals(ScaleSetPowerSummary.UNKNOWN, ScaleSetPowerSummary.of(null));
+        assertEquals(ScaleSetPowerSummary.UNKNOWN, ScaleSetPowerSummary.of(new VirtualMachineScaleSetInstanceViewInner()));
+    }
+
+    private static ScaleSetPowerSummary summary(Object... codeCounts) {
+        List<VirtualMachineStatusCodeCount> statuses = new ArrayList<VirtualMachineStatusCodeCount>();
+        for (int i = 0; i < codeCounts.length; i += 2) {
+            VirtualMachineStatusCodeCount status = mock(VirtualMachineStatusCodeCount.class);
+            when(status.code()).thenReturn((String) codeCounts[i]);
+            when(status.count()).thenReturn((Integer) codeCounts[i + 1]);
+            statuses.add(status);
+        }
+        VirtualMachineScaleSetInstanceViewStatusesSummary summary =
+                mock(VirtualMachineScaleSetInstanceViewStatusesSummary.class);
+        when(summary.statusesSummary()).thenReturn(statuses);
+        VirtualMachineScaleSetInstanceViewInner instanceView = mock(VirtualMachineScaleSetInstanceViewInner.class);
+        when(instanceView.virtualMachine()).thenReturn(summary);
+        return ScaleSetPowerSummary.of(instanceView);
+    }
+}
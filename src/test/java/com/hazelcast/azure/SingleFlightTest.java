@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class SingleFlightTest extends HazelcastTestSupport {
+
+    private final AtomicInteger runs = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneRun() throws Exception {
+        SingleFlight<Integer> flight = new SingleFlight<Integer>(blockingTask(null));
+
+        List<Future<Integer>> results = callConcurrently(flight);
+
+        for (Future<Integer> result : results) {
+            assertEquals(Integer.valueOf(1), result.get());
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testFailureIsSharedByAllCallers() throws Exception {
+        SingleFlight<Integer> flight = new SingleFlight<Integer>(blockingTask(new IOException("throttled")));
+
+        List<Future<Integer>> results = callConcurrently(flight);
+
+        for (Future<Integer> result : results) {
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testCompletedRunIsNotReused() throws Exception {
+        release.countDown();
+        SingleFlight<Integer> flight = new SingleFlight<Integer>(blockingTask(null));
+
+        assertEquals(Integer.valueOf(1), flight.run());
+        assertEquals(Integer.valueOf(2), flight.run());
+    }
+
+    private List<Future<Integer>> callConcurrently(final SingleFlight<Integer> flight) throws InterruptedException {
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            results.add(callers.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return flight.run();
+                }
+            }));
+        }
+        assertOpenEventually(started);
+        // give the other callers time to join the running flight
+        sleepMillis(200);
+        release.countDown();
+        return results;
+    }
+
+    private Callable<Integer> blockingTask(final Exception failure) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int run = runs.incrementAndGet();
+                started.countDown();
+                release.await();
+                if (failure != null) {
+                    throw failure;
+                }
+                return run;
+            }
+        };
+    }
+}
@@ -0,0 +1,660 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.AzureEnvironment;
+import com.microsoft.azure.AzureResponseBuilder;
+import com.microsoft.azure.credentials.AzureTokenCredentials;
+import com.microsoft.azure.management.compute.implementation.ComputeManager;
+import com.microsoft.azure.serializer.AzureJacksonAdapter;
+import com.microsoft.rest.RestClient;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import retrofit2.Retrofit;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory Azure fleet of standalone VMs and scale sets with their network interfaces and public
+ * IP addresses. It answers the ARM calls of the SDK from an OkHttp interceptor, so discovery runs its
+ * real code path, paging and JSON parsing included, without a subscription or a socket. Every call
+ * can be delayed to simulate the ARM round trip. A fleet is either generated from its shape or loaded
+ * from a fixture of recorded ARM resources, and can be served over HTTP by an {@link ArmStandIn}.
+ */
+final class SyntheticFleet implements Interceptor {
+
+    static final String SUBSCRIPTION_ID = "00000000-0000-0000-0000-000000000000";
+    static final String RESOURCE_GROUP = "hazelcast";
+    static final String CLUSTER_ID = "hazelcast-cluster";
+    static final int PORT = 5701;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final String EXPAND = "$expand";
+    private static final String SKIP_TOKEN = "$skiptoken";
+    private static final String FILTER = "$filter";
+    private static final String LOCATION = "westeurope";
+
+    private final Builder spec;
+    private final String groupId;
+    private final Map<String, byte[]> resources = new HashMap<String, byte[]>();
+    private final Map<String, List<String>> collections = new HashMap<String, List<String>>();
+    private final ConcurrentMap<String, byte[]> pages = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicLong requests = new AtomicLong();
+    private final List<String> runningAddresses = new ArrayList<String>();
+
+    private SyntheticFleet(Builder spec) {
+        this.spec = spec;
+        this.groupId = "/subscriptions/" + spec.subscriptionId + "/resourceGroups/" + spec.resourceGroup;
+        if (spec.fixture != null) {
+            load(spec.fixture);
+        } else {
+            generate();
+        }
+    }
+
+    /**
+     * @return a builder of a fleet with one running, tagged standalone VM
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of ARM calls answered so far
+     */
+    long requests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the private addresses of the running, tagged members, the ones discovery should return
+     */
+    List<String> runningAddresses() {
+        return runningAddresses;
+    }
+
+    /**
+     * Creates a compute client whose calls are answered by this fleet. The credentials hand out a
+     * constant token, so no identity endpoint is called either.
+     *
+     * @return the client
+     */
+    ComputeManager computeManager() {
+        AzureTokenCredentials credentials = new AzureTokenCredentials(AzureEnvironment.AZURE, "tenant") {
+            @Override
+            public String getToken(String resource) {
+                return "token";
+            }
+        };
+        RestClient restClient = new RestClient.Builder(new OkHttpClient.Builder().addInterceptor(this),
+                new Retrofit.Builder())
+                .withSerializerAdapter(new AzureJacksonAdapter())
+                .withResponseBuilderFactory(new AzureResponseBuilder.Factory())
+                .withBaseUrl(AzureEnvironment.AZURE, AzureEnvironment.Endpoint.RESOURCE_MANAGER)
+                .withCredentials(credentials)
+                .build();
+        return ComputeManager.authenticate(restClient, spec.subscriptionId);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        requests.incrementAndGet();
+        delay();
+        Request request = chain.request();
+        byte[] body = respond(request.url());
+        Response.Builder response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1);
+        if (body == null) {
+            return response.code(404).message("Not Found")
+                    .body(ResponseBody.create(JSON, "{\"error\":{\"code\":\"ResourceNotFound\",\"message\":\""
+                            + request.url().encodedPath() + " not found\"}}"))
+                    .build();
+        }
+        return response.code(200).message("OK").body(ResponseBody.create(JSON, body)).build();
+    }
+
+    /**
+     * Waits for the simulated round trip of a call
+     *
+     * @throws InterruptedIOException if the thread was interrupted meanwhile
+     */
+    void delay() throws InterruptedIOException {
+        sleep(spec.latencyMillis);
+    }
+
+    /**
+     * Returns the body answering a GET of the url
+     *
+     * @param url the request url
+     * @return the JSON body or null if the fleet has no such resource
+     */
+    byte[] respond(HttpUrl url) {
+        String key = variant(key(url.encodedPath()), url);
+        List<String> collection = collections.get(key);
+        if (collection != null) {
+            return page(url, collection);
+        }
+        return resources.get(key);
+    }
+
+    /**
+     * @param url the request url
+     * @return whether the url lists resources, so it is answered in pages
+     */
+    boolean lists(HttpUrl url) {
+        return collections.containsKey(variant(key(url.encodedPath()), url));
+    }
+
+    private static String variant(String path, HttpUrl url) {
+        if (url.queryParameter(EXPAND) != null) {
+            return path + "?" + EXPAND;
+        }
+        if (url.queryParameter(FILTER) != null) {
+            return path + "?" + FILTER;
+        }
+        return path;
+    }
+
+    private byte[] page(HttpUrl url, List<String> collection) {
+        String cacheKey = url.toString();
+        byte[] page = pages.get(cacheKey);
+        if (page != null) {
+            return page;
+        }
+        String skipToken = url.queryParameter(SKIP_TOKEN);
+        int from = skipToken == null ? 0 : Integer.parseInt(skipToken);
+        int to = Math.min(collection.size(), from + spec.pageSize);
+        StringBuilder json = new StringBuilder("{\"value\":[");
+        for (int i = from; i < to; i++) {
+            json.append(i > from ? "," : "").append(collection.get(i));
+        }
+        json.append(']');
+        if (to < collection.size()) {
+            String next = url.newBuilder().setQueryParameter(SKIP_TOKEN, String.valueOf(to)).build().toString();
+            json.append(",\"nextLink\":\"").append(next).append('"');
+        }
+        page = json.append('}').toString().getBytes(UTF8);
+        pages.put(cacheKey, page);
+        return page;
+    }
+
+    private static String key(String path) {
+        String key = path.toLowerCase(Locale.ENGLISH);
+        return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+    }
+
+    private static void sleep(int millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    // fixtures
+
+    /**
+     * Loads a fixture of the form {@code {"resources": {id: resource}, "collections": {path: [resource]},
+     * "runningAddresses": [address]}}. Ids and paths may end with {@code ?$expand} or {@code ?$filter} for the
+     * answer to a request with that query parameter.
+     */
+    private void load(JsonNode fixture) {
+        Iterator<Map.Entry<String, JsonNode>> resourceFields = fixture.path("resources").fields();
+        while (resourceFields.hasNext()) {
+            Map.Entry<String, JsonNode> resource = resourceFields.next();
+            resource(resource.getKey(), resource.getValue().toString());
+        }
+        Iterator<Map.Entry<String, JsonNode>> collectionFields = fixture.path("collections").fields();
+        while (collectionFields.hasNext()) {
+            Map.Entry<String, JsonNode> collection = collectionFields.next();
+            List<String> items = new ArrayList<String>();
+            for (JsonNode item : collection.getValue()) {
+                items.add(item.toString());
+            }
+            collections.put(key(collection.getKey()), items);
+        }
+        for (JsonNode address : fixture.path("runningAddresses")) {
+            runningAddresses.add(address.asText());
+        }
+    }
+
+    // generation
+
+    private void generate() {
+        String compute = groupId + "/providers/Microsoft.Compute";
+        String network = groupId + "/providers/Microsoft.Network";
+        List<String> vms = collection(compute + "/virtualMachines", false);
+        List<String> expandedVms = collection(compute + "/virtualMachines", true);
+        List<String> scaleSets = collection(compute + "/virtualMachineScaleSets", false);
+        List<String> nics = collection(network + "/networkInterfaces", false);
+        List<String> publicIps = collection(network + "/publicIPAddresses", false);
+        List<String> allResources = collection(groupId + "/resources", false);
+        List<String> taggedResources = new ArrayList<String>();
+        collections.put(key(groupId + "/resources") + "?" + FILTER, taggedResources);
+
+        int member = 0;
+        for (int i = 0; i < spec.virtualMachines; i++, member++) {
+            Member vm = member(member, i, !chosen(member, spec.untaggedShare));
+            String id = compute + "/virtualMachines/" + vm.name;
+            String nicIds = generateNetworkInterfaces(vm, network, nics, publicIps);
+            String instanceView = instanceView(vm);
+            vms.add(virtualMachine(id, vm, nicIds, null));
+            expandedVms.add(virtualMachine(id, vm, nicIds, instanceView));
+            resource(id, virtualMachine(id, vm, nicIds, null));
+            resource(id + "?" + EXPAND, virtualMachine(id, vm, nicIds, instanceView));
+            resource(id + "/instanceView", instanceView);
+            String resource = genericResource(id, vm.name, "Microsoft.Compute/virtualMachines", vm.tagged);
+            allResources.add(resource);
+            if (vm.tagged) {
+                taggedResources.add(resource);
+            }
+        }
+        for (int s = 0; s < spec.scaleSets; s++) {
+            int capacity = spec.scaleSetVirtualMachines / spec.scaleSets
+                    + (s < spec.scaleSetVirtualMachines % spec.scaleSets ? 1 : 0);
+            member = generateScaleSet(compute, s, capacity, member, scaleSets, allResources, taggedResources);
+        }
+    }
+
+    private void resource(String id, String json) {
+        resources.put(key(id), json.getBytes(UTF8));
+    }
+
+    private List<String> collection(String path, boolean expanded) {
+        List<String> collection = new ArrayList<String>();
+        collections.put(key(path) + (expanded ? "?" + EXPAND : ""), collection);
+        return collection;
+    }
+
+    private Member member(int member, int index, boolean tagged) {
+        Member vm = new Member();
+        vm.name = "vm-" + index;
+        vm.index = member;
+        vm.tagged = member == 0 || tagged;
+        vm.running = member == 0 || !chosen(member, spec.stoppedShare);
+        vm.privateIp = member == 0 && spec.localAddress != null ? spec.localAddress : address(10, spec.addressOffset + member);
+        vm.publicIp = chosen(member, spec.publicIpShare) ? address(20, spec.addressOffset + member) : null;
+        vm.faultDomain = member % spec.faultDomains;
+        if (vm.tagged && vm.running) {
+            runningAddresses.add(vm.privateIp);
+        }
+        return vm;
+    }
+
+    private int generateScaleSet(String compute, int s, int capacity, int firstMember, List<String> scaleSets,
+                                 List<String> allResources, List<String> taggedResources) {
+        String name = "vmss-" + s;
+        String id = compute + "/virtualMachineScaleSets/" + name;
+        boolean tagged = s == 0 && firstMember == 0 || !chosen(s, spec.untaggedShare);
+        String scaleSet = scaleSet(id, name, tagged, capacity, zones(s));
+        scaleSets.add(scaleSet);
+        resource(id, scaleSet);
+        String resource = genericResource(id, name, "Microsoft.Compute/virtualMachineScaleSets", tagged);
+        allResources.add(resource);
+        if (tagged) {
+            taggedResources.add(resource);
+        }
+
+        List<String> instances = collection(id + "/virtualMachines", false);
+        List<String> expandedInstances = collection(id + "/virtualMachines", true);
+        List<String> scaleSetNics = collection(id + "/networkInterfaces", false);
+        int member = firstMember;
+        for (int i = 0; i < capacity; i++, member++) {
+            Member vm = member(member, i, tagged);
+            String vmId = id + "/virtualMachines/" + i;
+            List<String> vmNics = collection(vmId + "/networkInterfaces", false);
+            StringBuilder nicIds = new StringBuilder();
+            for (int n = 0; n < spec.networkInterfaces; n++) {
+                String nicId = vmId + "/networkInterfaces/nic-" + n;
+                String nic = networkInterface(nicId, "nic-" + n, n == 0, n == 0 ? vm.privateIp
+                        : address(11 + n, spec.addressOffset + member), null, vmId);
+                resource(nicId, nic);
+                vmNics.add(nic);
+                scaleSetNics.add(nic);
+                nicIds.append(n > 0 ? "," : "").append(nicReference(nicId, n == 0));
+            }
+            String instanceView = instanceView(vm);
+            instances.add(scaleSetVirtualMachine(vmId, name, i, nicIds.toString(), null));
+            expandedInstances.add(scaleSetVirtualMachine(vmId, name, i, nicIds.toString(), instanceView));
+            resource(vmId, scaleSetVirtualMachine(vmId, name, i, nicIds.toString(), null));
+            resource(vmId + "?" + EXPAND, scaleSetVirtualMachine(vmId, name, i, nicIds.toString(), instanceView));
+            resource(vmId + "/instanceView", instanceView);
+        }
+        return member;
+    }
+
+    private String generateNetworkInterfaces(Member vm, String network, List<String> nics, List<String> publicIps) {
+        StringBuilder nicIds = new StringBuilder();
+        String publicIpId = null;
+        if (vm.publicIp != null) {
+            publicIpId = network + "/publicIPAddresses/" + vm.name + "-ip";
+            String publicIp = "{\"id\":\"" + publicIpId + "\",\"name\":\"" + vm.name + "-ip\",\"location\":\"" + LOCATION
+                    + "\",\"type\":\"Microsoft.Network/publicIPAddresses\",\"properties\":{\"ipAddress\":\""
+                    + vm.publicIp + "\",\"publicIPAllocationMethod\":\"Static\",\"publicIPAddressVersion\":\"IPv4\","
+                    + "\"provisioningState\":\"Succeeded\"}}";
+            resource(publicIpId, publicIp);
+            publicIps.add(publicIp);
+        }
+        for (int n = 0; n < spec.networkInterfaces; n++) {
+            String name = vm.name + "-nic-" + n;
+            String nicId = network + "/networkInterfaces/" + name;
+            String nic = networkInterface(nicId, name, n == 0, n == 0 ? vm.privateIp : address(11 + n, spec.addressOffset + vm.index),
+                    n == 0 ? publicIpId : null, null);
+            resource(nicId, nic);
+            nics.add(nic);
+            nicIds.append(n > 0 ? "," : "").append(nicReference(nicId, n == 0));
+        }
+        return nicIds.toString();
+    }
+
+    private String virtualMachine(String id, Member vm, String nicReferences, String instanceView) {
+        return "{\"id\":\"" + id + "\",\"name\":\"" + vm.name + "\",\"type\":\"Microsoft.Compute/virtualMachines\","
+                + "\"location\":\"" + LOCATION + "\",\"tags\":" + tags(vm.tagged) + zones(vm.index) + ",\"properties\":{"
+                + "\"vmId\":\"" + vm.index + "\",\"hardwareProfile\":{\"vmSize\":\"Standard_D2s_v3\"},"
+                + storageAndOsProfile(vm.name)
+                + ",\"networkProfile\":{\"networkInterfaces\":[" + nicReferences + "]},"
+                + "\"provisioningState\":\"Succeeded\""
+                + (instanceView == null ? "" : ",\"instanceView\":" + instanceView) + "}}";
+    }
+
+    private String scaleSet(String id, String name, boolean tagged, int capacity, String zones) {
+        return "{\"id\":\"" + id + "\",\"name\":\"" + name + "\",\"type\":\"Microsoft.Compute/virtualMachineScaleSets\","
+                + "\"location\":\"" + LOCATION + "\",\"tags\":" + tags(tagged) + zones + ",\"sku\":{\"name\":\"Standard_D2s_v3\","
+                + "\"tier\":\"Standard\",\"capacity\":" + capacity + "},\"properties\":{\"upgradePolicy\":{\"mode\":\"Manual\"},"
+                + "\"virtualMachineProfile\":{" + storageAndOsProfile(name) + ",\"networkProfile\":{"
+                + "\"networkInterfaceConfigurations\":[{\"name\":\"nic\",\"properties\":{\"primary\":true,"
+                + "\"ipConfigurations\":[{\"name\":\"ipconfig\",\"properties\":{\"subnet\":{\"id\":\"" + subnetId()
+                + "\"}}}]}}]}},\"provisioningState\":\"Succeeded\",\"overprovision\":false}}";
+    }
+
+    /**
+     * Standalone VMs and scale sets are spread over the zones round robin, a scale set is pinned to one zone
+     */
+    private String zones(int index) {
+        return spec.zones == 0 ? "" : ",\"zones\":[\"" + (1 + index % spec.zones) + "\"]";
+    }
+
+    private String scaleSetVirtualMachine(String id, String scaleSet, int instanceId, String nicReferences,
+                                          String instanceView) {
+        return "{\"id\":\"" + id + "\",\"instanceId\":\"" + instanceId + "\",\"name\":\"" + scaleSet + "_" + instanceId
+                + "\",\"type\":\"Microsoft.Compute/virtualMachineScaleSets/virtualMachines\",\"location\":\"" + LOCATION
+                + "\",\"properties\":{\"latestModelApplied\":true,\"hardwareProfile\":{\"vmSize\":\"Standard_D2s_v3\"},"
+                + storageAndOsProfile(scaleSet + "_" + instanceId)
+                + ",\"networkProfile\":{\"networkInterfaces\":[" + nicReferences + "]},"
+                + "\"provisioningState\":\"Succeeded\""
+                + (instanceView == null ? "" : ",\"instanceView\":" + instanceView) + "}}";
+    }
+
+    private String networkInterface(String id, String name, boolean primary, String privateIp, String publicIpId,
+                                    String virtualMachineId) {
+        return "{\"id\":\"" + id + "\",\"name\":\"" + name + "\",\"location\":\"" + LOCATION + "\","
+                + "\"type\":\"Microsoft.Network/networkInterfaces\",\"properties\":{\"primary\":" + primary + ","
+                + "\"provisioningState\":\"Succeeded\",\"ipConfigurations\":[{\"id\":\"" + id + "/ipConfigurations/ipconfig\","
+                + "\"name\":\"ipconfig\",\"properties\":{\"primary\":true,\"privateIPAddress\":\"" + privateIp + "\","
+                + "\"privateIPAllocationMethod\":\"Dynamic\",\"privateIPAddressVersion\":\"IPv4\","
+                + "\"subnet\":{\"id\":\"" + subnetId() + "\"}"
+                + (publicIpId == null ? "" : ",\"publicIPAddress\":{\"id\":\"" + publicIpId + "\"}") + "}}]"
+                + (virtualMachineId == null ? "" : ",\"virtualMachine\":{\"id\":\"" + virtualMachineId + "\"}") + "}}";
+    }
+
+    private static String nicReference(String id, boolean primary) {
+        return "{\"id\":\"" + id + "\",\"properties\":{\"primary\":" + primary + "}}";
+    }
+
+    private static String instanceView(Member vm) {
+        return "{\"platformUpdateDomain\":0,\"platformFaultDomain\":" + vm.faultDomain + ",\"statuses\":["
+                + "{\"code\":\"ProvisioningState/succeeded\",\"level\":\"Info\",\"displayStatus\":\"Provisioning succeeded\"},"
+                + "{\"code\":\"PowerState/" + (vm.running ? "running" : "deallocated") + "\",\"level\":\"Info\"}]}";
+    }
+
+    private String genericResource(String id, String name, String type, boolean tagged) {
+        return "{\"id\":\"" + id + "\",\"name\":\"" + name + "\",\"type\":\"" + type + "\",\"location\":\"" + LOCATION
+                + "\",\"tags\":" + tags(tagged) + "}";
+    }
+
+    private static String storageAndOsProfile(String computerName) {
+        return "\"storageProfile\":{\"osDisk\":{\"osType\":\"Linux\",\"name\":\"" + computerName + "-os\","
+                + "\"createOption\":\"FromImage\",\"caching\":\"ReadWrite\",\"managedDisk\":"
+                + "{\"storageAccountType\":\"Premium_LRS\"}},\"dataDisks\":[]},"
+                + "\"osProfile\":{\"computerName\":\"" + computerName + "\",\"adminUsername\":\"azure\","
+                + "\"linuxConfiguration\":{\"disablePasswordAuthentication\":true}}";
+    }
+
+    private String subnetId() {
+        return groupId + "/providers/Microsoft.Network/virtualNetworks/vnet/subnets/default";
+    }
+
+    private static String tags(boolean tagged) {
+        return tagged ? "{\"" + CLUSTER_ID + "\":\"" + PORT + "\"}" : "{\"environment\":\"test\"}";
+    }
+
+    private static String address(int first, int n) {
+        int host = n + 4;
+        return first + "." + ((host >> 16) & 0xff) + "." + ((host >> 8) & 0xff) + "." + (host & 0xff);
+    }
+
+    /**
+     * Spreads a share evenly over the members instead of picking them at random, so fleets are reproducible
+     */
+    private static boolean chosen(int index, double share) {
+        return (int) ((index + 1) * share) > (int) (index * share);
+    }
+
+    private static final class Member {
+        private String name;
+        private int index;
+        private boolean tagged;
+        private boolean running;
+        private String privateIp;
+        private String publicIp;
+        private int faultDomain;
+    }
+
+    /**
+     * The shape of a synthetic fleet
+     */
+    static final class Builder {
+
+        private String subscriptionId = SUBSCRIPTION_ID;
+        private String resourceGroup = RESOURCE_GROUP;
+        private int addressOffset;
+        private int virtualMachines = 1;
+        private int scaleSets;
+        private int scaleSetVirtualMachines;
+        private int networkInterfaces = 1;
+        private double publicIpShare;
+        private double stoppedShare;
+        private double untaggedShare;
+        private int faultDomains = 3;
+        private int zones;
+        private int pageSize = 100;
+        private int latencyMillis;
+        private String localAddress;
+        private JsonNode fixture;
+
+        private Builder() {
+        }
+
+        /**
+         * Loads the fleet from a fixture instead of generating it, the shape of the fleet is ignored then
+         *
+         * @param resourceName the class path resource of the JSON fixture
+         * @return this builder
+         * @throws IOException if the fixture can not be read
+         */
+        Builder fixture(String resourceName) throws IOException {
+            InputStream in = SyntheticFleet.class.getClassLoader().getResourceAsStream(resourceName);
+            if (in == null) {
+                throw new FileNotFoundException(resourceName);
+            }
+            try {
+                this.fixture = new ObjectMapper().readTree(in);
+            } finally {
+                in.close();
+            }
+            return this;
+        }
+
+        /**
+         * @param count the number of standalone VMs
+         * @return this builder
+         */
+        Builder virtualMachines(int count) {
+            this.virtualMachines = count;
+            return this;
+        }
+
+        /**
+         * @param count the number of scale sets
+         * @param instances the number of VMs spread evenly over the scale sets
+         * @return this builder
+         */
+        Builder scaleSets(int count, int instances) {
+            this.scaleSets = count;
+            this.scaleSetVirtualMachines = count == 0 ? 0 : instances;
+            return this;
+        }
+
+        /**
+         * @param count the number of network interfaces per VM, the first one is the primary one
+         * @return this builder
+         */
+        Builder networkInterfaces(int count) {
+            this.networkInterfaces = Math.max(1, count);
+            return this;
+        }
+
+        /**
+         * @param share the share of standalone VMs with a public IP address
+         * @return this builder
+         */
+        Builder publicIpShare(double share) {
+            this.publicIpShare = share;
+            return this;
+        }
+
+        /**
+         * @param share the share of VMs that are deallocated
+         * @return this builder
+         */
+        Builder stoppedShare(double share) {
+            this.stoppedShare = share;
+            return this;
+        }
+
+        /**
+         * @param share the share of VMs and scale sets without the cluster tag
+         * @return this builder
+         */
+        Builder untaggedShare(double share) {
+            this.untaggedShare = share;
+            return this;
+        }
+
+        /**
+         * @param count the number of fault domains the VMs are spread over
+         * @return this builder
+         */
+        Builder faultDomains(int count) {
+            this.faultDomains = Math.max(1, count);
+            return this;
+        }
+
+        /**
+         * @param count the number of availability zones the VMs and scale sets are spread over, 0 if not zonal
+         * @return this builder
+         */
+        Builder zones(int count) {
+            this.zones = Math.max(0, count);
+            return this;
+        }
+
+        /**
+         * @param size the number of resources per page of a listing
+         * @return this builder
+         */
+        Builder pageSize(int size) {
+            this.pageSize = Math.max(1, size);
+            return this;
+        }
+
+        /**
+         * @param millis the simulated round trip of every ARM call
+         * @return this builder
+         */
+        Builder latencyMillis(int millis) {
+            this.latencyMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param address the private address of the first VM, the local address to find the local member by
+         * @return this builder
+         */
+        Builder localAddress(String address) {
+            this.localAddress = address;
+            return this;
+        }
+
+        /**
+         * @param subscriptionId the subscription the fleet is listed in
+         * @param resourceGroup the resource group the fleet is listed in
+         * @param addressOffset the number of addresses to skip, so fleets of several groups do not overlap
+         * @return this builder
+         */
+        Builder resourceGroup(String subscriptionId, String resourceGroup, int addressOffset) {
+            this.subscriptionId = subscriptionId;
+            this.resourceGroup = resourceGroup;
+            this.addressOffset = addressOffset;
+            return this;
+        }
+
+        /**
+         * @return the fleet
+         */
+        SyntheticFleet build() {
+            return new SyntheticFleet(this);
+        }
+    }
+}
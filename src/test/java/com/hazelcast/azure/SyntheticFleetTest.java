@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class SyntheticFleetTest extends HazelcastTestSupport {
+
+    @Test
+    public void testDiscoversRunningTaggedMembers() {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(25)
+                .scaleSets(3, 40)
+                .stoppedShare(0.2)
+                .untaggedShare(0.1)
+                .pageSize(7)
+                .build();
+
+        assertEquals(addresses(fleet.runningAddresses()), discover(fleet, new HashMap<String, Comparable>()));
+    }
+
+    @Test
+    public void testDiscoversWithBatchedLookups() {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(20)
+                .scaleSets(2, 20)
+                .networkInterfaces(2)
+                .publicIpShare(0.5)
+                .stoppedShare(0.25)
+                .pageSize(6)
+                .build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.BATCH_NETWORK_LOOKUP.key(), true);
+        properties.put(AzureProperties.BULK_INSTANCE_VIEW.key(), true);
+
+        assertEquals(addresses(fleet.runningAddresses()), discover(fleet, properties));
+    }
+
+    @Test
+    public void testDiscoversTaggedResources() {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(10)
+                .scaleSets(4, 12)
+                .untaggedShare(0.25)
+                .build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.SERVER_SIDE_TAG_FILTER.key(), true);
+
+        assertEquals(addresses(fleet.runningAddresses()), discover(fleet, properties));
+    }
+
+    @Test
+    public void testDiscoversPublicAddresses() {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(4)
+                .publicIpShare(1)
+                .build();
+        AzureDiscoveryStrategy strategy = strategy(fleet, new HashMap<String, Comparable>());
+
+        for (DiscoveryNode node : strategy.discoverNodes()) {
+            assertEquals("20", node.getPublicAddress().getHost().split("\\.")[0]);
+        }
+        strategy.destroy();
+    }
+
+    @Test
+    public void testDiscoversLocalFaultDomain() {
+        String localAddress = new AzureDiscoveryStrategy(new HashMap<String, Comparable>()).getLocalHostAddress();
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(0)
+                .scaleSets(2, 10)
+                .localAddress(localAddress)
+                .build();
+        AzureDiscoveryStrategy strategy = strategy(fleet, new HashMap<String, Comparable>());
+
+        assertEquals("0", strategy.discoverLocalMetadata().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+        strategy.destroy();
+    }
+
+    @Test
+    public void testListingsArePaged() {
+        SyntheticFleet fleet = SyntheticFleet.builder()
+                .virtualMachines(0)
+                .scaleSets(1, 30)
+                .pageSize(10)
+                .build();
+        Map<String, Comparable> properties = new HashMap<String, Comparable>();
+        properties.put(AzureProperties.BATCH_NETWORK_LOOKUP.key(), true);
+        properties.put(AzureProperties.BULK_INSTANCE_VIEW.key(), true);
+
+        assertEquals(30, discover(fleet, properties).size());
+        assertTrue(fleet.requests() > 2 + 3);
+    }
+
+    @Test
+    public void testUnknownResourceIsNotFound() {
+        SyntheticFleet fleet = SyntheticFleet.builder().build();
+
+        assertNull(fleet.computeManager().virtualMachines().getByResourceGroup(SyntheticFleet.RESOURCE_GROUP, "missing"));
+    }
+
+    private static Set<String> discover(SyntheticFleet fleet, Map<String, Comparable> properties) {
+        AzureDiscoveryStrategy strategy = strategy(fleet, properties);
+        try {
+            Set<String> addresses = new HashSet<String>();
+            for (DiscoveryNode node : strategy.discoverNodes()) {
+                assertEquals(SyntheticFleet.PORT, node.getPrivateAddress().getPort());
+                addresses.add(node.getPrivateAddress().getHost());
+            }
+            return addresses;
+        } finally {
+            strategy.destroy();
+        }
+    }
+
+    private static AzureDiscoveryStrategy strategy(SyntheticFleet fleet, Map<String, Comparable> properties) {
+        properties.put(AzureProperties.CLUSTER_ID.key(), SyntheticFleet.CLUSTER_ID);
+        properties.put(AzureProperties.GROUP_NAME.key(), SyntheticFleet.RESOURCE_GROUP);
+        properties.put(AzureProperties.SUBSCRIPTION_ID.key(), SyntheticFleet.SUBSCRIPTION_ID);
+        AzureDiscoveryStrategy strategy = new AzureDiscoveryStrategy(properties, fleet.computeManager());
+        strategy.start();
+        return strategy;
+    }
+
+    private static Set<String> addresses(List<String> addresses) {
+        return new HashSet<String>(addresses);
+    }
+
+}
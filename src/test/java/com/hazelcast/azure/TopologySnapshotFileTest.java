@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016, Microsoft Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hazelcast.azure;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+import com.hazelcast.test.HazelcastParallelClassRunner;
+import com.hazelcast.test.HazelcastTestSupport;
+import com.hazelcast.test.annotation.QuickTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(HazelcastParallelClassRunner.class)
+@Category(QuickTest.class)
+public class TopologySnapshotFileTest extends HazelcastTestSupport {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = new File(folder.getRoot(), "topology.bin");
+        TopologySnapshotFile snapshotFile = new TopologySnapshotFile(file);
+        List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+        nodes.add(new SimpleDiscoveryNode(new Address("10.0.5.1", 5701), new Address("44.18.12.1", 5701),
+                Collections.<String, Object>singletonMap(PartitionGroupMetaData.PARTITION_GROUP_ZONE, "1")));
+        nodes.add(new SimpleDiscoveryNode(new Address("10.0.5.2", 5702)));
+        nodes.add(new SimpleDiscoveryNode(new Address("fd00::5", 5703)));
+
+        snapshotFile.write(nodes, "2");
+        TopologySnapshotFile.Snapshot snapshot = snapshotFile.read();
+
+        assertEquals("2", snapshot.localZone());
+        assertEquals(3, snapshot.nodes().size());
+        assertEquals(new Address("10.0.5.1", 5701), snapshot.nodes().get(0).getPrivateAddress());
+        assertEquals(new Address("44.18.12.1", 5701), snapshot.nodes().get(0).getPublicAddress());
+        assertEquals("1", snapshot.nodes().get(0).getProperties().get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+        assertEquals(new Address("10.0.5.2", 5702), snapshot.nodes().get(1).getPublicAddress());
+        assertEquals(0, snapshot.nodes().get(1).getProperties().size());
+        assertEquals(InetAddress.getByName("fd00::5"), snapshot.nodes().get(2).getPrivateAddress().getInetAddress());
+        assertEquals(5703, snapshot.nodes().get(2).getPrivateAddress().getPort());
+        assertFalse(new File(folder.getRoot(), "topology.bin.tmp").exists());
+    }
+
+    @Test
+    public void testKeepsAvailabilityZones() throws IOException {
+        TopologySnapshotFile snapshotFile = new TopologySnapshotFile(new File(folder.getRoot(), "topology.bin"));
+        snapshotFile.write(Collections.singletonList(
+                NodeLocation.node(new Address("10.0.5.1", 5701), null, "3", 1)), "1");
+
+        NodeLocation location = NodeLocation.of(snapshotFile.read().nodes().get(0));
+
+        assertEquals("3", location.zone());
+        assertEquals("1", location.faultDomain());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherVersions() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(TopologySnapshotFile.MAGIC);
+        out.writeByte(TopologySnapshotFile.VERSION + 1);
+        out.writeUTF("");
+        out.writeInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        TopologySnapshotFile.decode(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testOverwrite() throws IOException {
+        TopologySnapshotFile snapshotFile = new TopologySnapshotFile(new File(folder.getRoot(), "topology.bin"));
+        snapshotFile.write(Collections.<DiscoveryNode>singletonList(
+                new SimpleDiscoveryNode(new Address("10.0.5.1", 5701))), null);
+
+        snapshotFile.write(Collections.<DiscoveryNode>emptyList(), null);
+
+        assertEquals(0, snapshotFile.read().nodes().size());
+        assertNull(snapshotFile.read().localZone());
+    }
+
+    @Test
+    public void testMissingFile() {
+        assertNull(new TopologySnapshotFile(new File(folder.getRoot(), "missing.bin")).read());
+    }
+
+    @Test
+    public void testCorruptedFile() throws IOException {
+        File file = new File(folder.getRoot(), "topology.bin");
+        TopologySnapshotFile snapshotFile = new TopologySnapshotFile(file);
+        snapshotFile.write(Collections.<DiscoveryNode>singletonList(
+                new SimpleDiscoveryNode(new Address("10.0.5.1", 5701))), "1");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(10);
+            raf.write(raf.read() ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        assertNull(snapshotFile.read());
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        File file = new File(folder.getRoot(), "topology.bin");
+        TopologySnapshotFile snapshotFile = new TopologySnapshotFile(file);
+        snapshotFile.write(Collections.<DiscoveryNode>singletonList(
+                new SimpleDiscoveryNode(new Address("10.0.5.1", 5701))), "1");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        assertNull(snapshotFile.read());
+    }
+}